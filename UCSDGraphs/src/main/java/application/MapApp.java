@@ -337,10 +337,18 @@ public class MapApp extends Application
 	  RadioButton rbB = new RadioButton("BFS");
 	  rbB.setUserData("BFS");
 
+	  RadioButton rbC = new RadioButton("CH");
+	  rbC.setUserData("CH");
+
+	  RadioButton rbL = new RadioButton("Alternatives");
+	  rbL.setUserData("Alternatives");
+
 	  rbB.setToggleGroup(group);
 	  rbD.setToggleGroup(group);
 	  rbA.setToggleGroup(group);
-	  return new LinkedList<RadioButton>(Arrays.asList(rbB, rbD, rbA));
+	  rbC.setToggleGroup(group);
+	  rbL.setToggleGroup(group);
+	  return new LinkedList<RadioButton>(Arrays.asList(rbB, rbD, rbA, rbC, rbL));
 	}
 
 
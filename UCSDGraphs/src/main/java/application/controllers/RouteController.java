@@ -32,6 +32,8 @@ public class RouteController {
 	public static final int BFS = 3;
     public static final int A_STAR = 2;
     public static final int DIJ = 1;
+    public static final int CH = 4;
+    public static final int ALTERNATIVES = 5;
 	public static final int DISABLE = 0;
 	public static final int START = 1;
 	public static final int DESTINATION = 2;
@@ -141,6 +143,12 @@ public class RouteController {
             else if(group.getSelectedToggle().getUserData().equals("BFS")) {
             	selectedToggle = BFS;
             }
+            else if(group.getSelectedToggle().getUserData().equals("CH")) {
+            	selectedToggle = CH;
+            }
+            else if(group.getSelectedToggle().getUserData().equals("Alternatives")) {
+            	selectedToggle = ALTERNATIVES;
+            }
             else {
             	System.err.println("Invalid radio button selection");
             }
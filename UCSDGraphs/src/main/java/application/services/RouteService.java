@@ -26,14 +26,21 @@ import gmapsfx.javascript.object.LatLong;
 import gmapsfx.javascript.object.LatLongBounds;
 import gmapsfx.javascript.object.MVCArray;
 import gmapsfx.shapes.Polyline;
+import gmapsfx.shapes.PolylineOptions;
 import javafx.scene.control.Button;
+import roadgraph.Route;
+import roadgraph.RoutingProfile;
 
 public class RouteService {
+	// alternatives shown besides the fastest route
+	private static final int MAX_ALTERNATIVES = 2;
+
 	private GoogleMap map;
 
     // static variable
     private MarkerManager markerManager;
     private Polyline routeLine;
+    private List<Polyline> alternativeLines = new ArrayList<Polyline>();
     private RouteVisualization rv;
 
 	public RouteService(GoogleMapView mapComponent, MarkerManager manager) {
@@ -81,6 +88,7 @@ public class RouteService {
     public void hideRoute() {
     	if(routeLine != null) {
         	map.removeMapShape(routeLine);
+        	removeAlternativeLines();
         	if(markerManager.getVisualization() != null) {
         		markerManager.clearVisualization();
         	}
@@ -104,10 +112,12 @@ public class RouteService {
         	}
 
         	if(toggle == RouteController.DIJ || toggle == RouteController.A_STAR ||
-        			toggle == RouteController.BFS) {
+        			toggle == RouteController.BFS || toggle == RouteController.CH ||
+        			toggle == RouteController.ALTERNATIVES) {
         		markerManager.initVisualization();
             	Consumer<geography.GeographicPoint> nodeAccepter = markerManager.getVisualization()::acceptPoint;
             	List<geography.GeographicPoint> path = null;
+            	List<Route> alternatives = new ArrayList<Route>();
             	if (toggle == RouteController.BFS) {
             		path = markerManager.getDataSet().getGraph().bfs(start, end, nodeAccepter);
             	}
@@ -117,6 +127,19 @@ public class RouteService {
             	else if (toggle == RouteController.A_STAR) {
             		path = markerManager.getDataSet().getGraph().aStarSearch(start, end, nodeAccepter);
             	}
+            	else if (toggle == RouteController.CH) {
+            		path = markerManager.getDataSet().getGraph().chSearch(start, end, nodeAccepter);
+            	}
+            	else if (toggle == RouteController.ALTERNATIVES) {
+            		// the fastest route and its alternatives come from one
+            		// combined search
+            		List<Route> routes = markerManager.getDataSet().getGraph().alternativeRoutes(start, end,
+            				MAX_ALTERNATIVES, RoutingProfile.CAR, nodeAccepter);
+            		if (routes != null && !routes.isEmpty()) {
+            			path = routes.get(0).getPath();
+            			alternatives = routes.subList(1, routes.size());
+            		}
+            	}
 
             	if(path == null) {
                     // System.out.println("In displayRoute : PATH NOT FOUND");
@@ -132,7 +155,11 @@ public class RouteService {
 
 
                 markerManager.setSelectMode(false);
-                return displayRoute(mapPath);
+                boolean displayed = displayRoute(mapPath);
+                for (Route alternative : alternatives) {
+                	displayAlternative(constructMapPath(alternative.getPath()));
+                }
+                return displayed;
     		}
 
     		return false;
@@ -198,10 +225,31 @@ public class RouteService {
     }
 
 
+	/**
+	 * Draws an alternative route, fainter than the main one
+	 */
+	private void displayAlternative(List<LatLong> route) {
+		MVCArray path = new MVCArray();
+		for(LatLong point : route) {
+			path.push(point);
+		}
+		Polyline line = new Polyline(new PolylineOptions().path(path).strokeColor("#808080").strokeOpacity(0.7));
+		map.addMapShape(line);
+		alternativeLines.add(line);
+	}
+
+	private void removeAlternativeLines() {
+		for(Polyline line : alternativeLines) {
+			map.removeMapShape(line);
+		}
+		alternativeLines.clear();
+	}
+
 	private void removeRouteLine() {
         if(routeLine != null) {
     		map.removeMapShape(routeLine);
         }
+        removeAlternativeLines();
 	}
 
 //    private void setMarkerManager(MarkerManager manager) {
@@ -50,6 +50,20 @@ public class GeographicPoint extends Double {
 		return arc;
     }
     private double getDist(double lat1, double lon1, double lat2, double lon2)
+    {
+    	return distance(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * Calculates the geographic distance in km between two lat, lon pairs
+     * without needing a GeographicPoint for either of them.
+     * @param lat1
+     * @param lon1
+     * @param lat2
+     * @param lon2
+     * @return double ,the distance between two points on the earth surface.
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2)
     {
     	int R = 6373; // radius of the earth in kilometres
     	double lat1rad = Math.toRadians(lat1);
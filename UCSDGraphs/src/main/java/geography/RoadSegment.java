@@ -109,6 +109,13 @@ public class RoadSegment {
 	// get the length of the road segment
 	public double getLength() { return this.length; }
 	
+	// get the end points of the road segment
+	public GeographicPoint getPoint1() { return this.point1; }
+	public GeographicPoint getPoint2() { return this.point2; }
+	
+	// get the name of the road
+	public String getRoadName() { return this.roadName; }
+	
 	
 	// given one end, return the other.
 	public geography.GeographicPoint getOtherPoint(geography.GeographicPoint point) {
@@ -0,0 +1,357 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/**
+ * Alternatives to the shortest route, by the via-node method with
+ * plateaus.
+ *
+ * One forward shortest path tree from the start and one backward tree to
+ * the goal, both grown only as far as the longest acceptable route, give
+ * for every vertex v reached by both a via route: the tree path from the
+ * start to v followed by the tree path from v to the goal.  Edges that lie
+ * on both trees form plateaus, and every vertex of a plateau has the same
+ * via route, so only one vertex per plateau is looked at.
+ *
+ * A via route is admissible when it is
+ * <ul>
+ * <li>not much longer than the shortest (stretch),</li>
+ * <li>not mostly made of roads of routes already chosen (sharing),</li>
+ * <li>and locally optimal: every stretch of it a little shorter than a
+ * quarter of the shortest route is itself a shortest path, tested around
+ * the via vertex only.</li>
+ * </ul>
+ * Candidates are tried in the order of twice their cost plus their
+ * sharing minus their plateau length, so short routes with long plateaus
+ * come first.
+ *
+ */
+final class AlternativeRoutes {
+
+	/** Alternatives may be this much longer than the shortest route */
+	static final double MAX_STRETCH = 0.25;
+
+	/** At most this part of the shortest route's cost may be shared */
+	static final double MAX_SHARING = 0.8;
+
+	/** Local optimality is tested over this part of the shortest route */
+	static final double LOCAL_OPTIMALITY = 0.25;
+
+	private AlternativeRoutes() {
+	}
+
+	/**
+	 * Find the shortest route from s to t and up to max alternatives
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge
+	 * @param s
+	 *            The start vertex
+	 * @param t
+	 *            The goal vertex
+	 * @param max
+	 *            The most alternatives wanted
+	 * @param nodeSearched
+	 *            Called with every vertex either tree settles
+	 * @return The shortest route followed by the alternatives, best first;
+	 *         empty if t cannot be reached from s, and only the empty route
+	 *         if s is t
+	 */
+	static List<Route> find(FrozenMapGraph graph, float[] weights, int s, int t, int max,
+			Consumer<GeographicPoint> nodeSearched) {
+		List<Route> routes = new ArrayList<Route>();
+		if (s == t) {
+			routes.add(new Route(graph, s, new int[0], 0));
+			return routes;
+		}
+		Tree forward = new Tree(graph, weights, s, t, true, nodeSearched);
+		if (forward.dist[t] == Double.POSITIVE_INFINITY) {
+			return routes;
+		}
+		Tree backward = new Tree(graph, weights, t, s, false, nodeSearched);
+		double shortest = forward.dist[t];
+		double bound = (1 + MAX_STRETCH) * shortest;
+
+		int n = graph.numVertices;
+		// plateau length before (up) and after (down) every vertex, and the
+		// first vertex of its plateau
+		double[] up = new double[n];
+		double[] down = new double[n];
+		int[] head = new int[n];
+		for (int i = 0; i < forward.order.size; i++) {
+			int v = forward.order.data[i];
+			int e = forward.edge[v];
+			head[v] = v;
+			if (e >= 0 && isPlateau(graph, forward, backward, e)) {
+				up[v] = up[graph.source[e]] + weights[e];
+				head[v] = head[graph.source[e]];
+			}
+		}
+		for (int i = 0; i < backward.order.size; i++) {
+			int v = backward.order.data[i];
+			int e = backward.edge[v];
+			if (e >= 0 && isPlateau(graph, forward, backward, e)) {
+				down[v] = down[graph.target[e]] + weights[e];
+			}
+		}
+
+		// shared cost with the shortest route, along the tree paths
+		boolean[] taken = new boolean[graph.numEdges];
+		int[] first = forward.pathTo(t);
+		for (int e : first) {
+			taken[e] = true;
+		}
+		routes.add(new Route(graph, s, first, shortest));
+		double[] sharedBefore = new double[n];
+		double[] sharedAfter = new double[n];
+		for (int i = 0; i < forward.order.size; i++) {
+			int v = forward.order.data[i];
+			int e = forward.edge[v];
+			if (e >= 0) {
+				sharedBefore[v] = sharedBefore[graph.source[e]] + (taken[e] ? weights[e] : 0);
+			}
+		}
+		for (int i = 0; i < backward.order.size; i++) {
+			int v = backward.order.data[i];
+			int e = backward.edge[v];
+			if (e >= 0) {
+				sharedAfter[v] = sharedAfter[graph.target[e]] + (taken[e] ? weights[e] : 0);
+			}
+		}
+
+		IntList candidates = new IntList();
+		for (int i = 0; i < forward.order.size; i++) {
+			int v = forward.order.data[i];
+			double cost = forward.dist[v] + backward.dist[v];
+			if (head[v] == v && cost <= bound && sharedBefore[v] + sharedAfter[v] <= MAX_SHARING * shortest) {
+				candidates.add(v);
+			}
+		}
+		Integer[] order = new Integer[candidates.size];
+		double[] objective = new double[n];
+		for (int i = 0; i < candidates.size; i++) {
+			int v = candidates.data[i];
+			order[i] = v;
+			objective[v] = 2 * (forward.dist[v] + backward.dist[v]) + sharedBefore[v] + sharedAfter[v]
+					- (up[v] + down[v]);
+		}
+		Arrays.sort(order, Comparator.comparingDouble((Integer v) -> objective[v]));
+
+		double window = LOCAL_OPTIMALITY * shortest;
+		boolean[] onRoute = new boolean[n];
+		for (int i = 0; i < order.length && routes.size() <= max; i++) {
+			int v = order[i];
+			int[] edges = viaPath(forward, backward, v);
+			if (!isSimple(graph, s, edges, onRoute)) {
+				continue;
+			}
+			double cost = 0;
+			double shared = 0;
+			for (int e : edges) {
+				cost += weights[e];
+				if (taken[e]) {
+					shared += weights[e];
+				}
+			}
+			if (shared > MAX_SHARING * shortest || !isLocallyOptimal(graph, weights, edges, forward.dist[v], window)) {
+				continue;
+			}
+			// zero cost edges can lead two via vertices to the same route
+			Route route = new Route(graph, s, edges, cost);
+			if (routes.contains(route)) {
+				continue;
+			}
+			for (int e : edges) {
+				taken[e] = true;
+			}
+			routes.add(route);
+		}
+		return routes;
+	}
+
+	// An edge both trees use
+	private static boolean isPlateau(FrozenMapGraph graph, Tree forward, Tree backward, int e) {
+		return forward.edge[graph.target[e]] == e && backward.edge[graph.source[e]] == e;
+	}
+
+	// The forward tree path to v, then the backward tree path from v
+	private static int[] viaPath(Tree forward, Tree backward, int v) {
+		int[] before = forward.pathTo(v);
+		int[] after = backward.pathTo(v);
+		int[] edges = Arrays.copyOf(before, before.length + after.length);
+		System.arraycopy(after, 0, edges, before.length, after.length);
+		return edges;
+	}
+
+	// Whether the route visits no vertex twice; leaves marks all clear
+	private static boolean isSimple(FrozenMapGraph graph, int s, int[] edges, boolean[] mark) {
+		boolean simple = true;
+		mark[s] = true;
+		int last = 0;
+		for (; last < edges.length; last++) {
+			int w = graph.target[edges[last]];
+			if (mark[w]) {
+				simple = false;
+				break;
+			}
+			mark[w] = true;
+		}
+		mark[s] = false;
+		for (int i = 0; i < last; i++) {
+			mark[graph.target[edges[i]]] = false;
+		}
+		return simple;
+	}
+
+	// The T-test: the part of the route from window before the via vertex
+	// (at offset via) to window after it must be a shortest path
+	private static boolean isLocallyOptimal(FrozenMapGraph graph, float[] weights, int[] edges, double via,
+			double window) {
+		double offset = 0;
+		int from = 0;
+		int to = edges.length;
+		double[] prefix = new double[edges.length + 1];
+		for (int i = 0; i < edges.length; i++) {
+			prefix[i] = offset;
+			offset += weights[edges[i]];
+		}
+		prefix[edges.length] = offset;
+		while (from < edges.length && via - prefix[from + 1] >= window) {
+			from++;
+		}
+		while (to > 0 && prefix[to - 1] - via >= window) {
+			to--;
+		}
+		if (to <= from) {
+			return true;
+		}
+		int x = graph.source[edges[from]];
+		int y = graph.target[edges[to - 1]];
+		double length = prefix[to] - prefix[from];
+		return distance(graph, weights, x, y, length) >= length - 1e-9 * Math.max(1, length);
+	}
+
+	// Dijkstra from x until y is settled or bound is passed
+	private static double distance(FrozenMapGraph graph, float[] weights, int x, int y, double bound) {
+		SearchContext ctx = SearchContext.acquire(graph.numVertices);
+		try {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			ctx.update(x, 0, x, -1);
+			queue.insertOrDecrease(x, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				double dv = ctx.distance(v);
+				if (v == y || dv > bound) {
+					return dv;
+				}
+				for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+					int w = graph.target[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						queue.insertOrDecrease(w, d);
+					}
+				}
+			}
+			return Double.POSITIVE_INFINITY;
+		} finally {
+			ctx.release();
+		}
+	}
+
+	/**
+	 * A shortest path tree, forward from its root over out edges or
+	 * backward to it over in edges, grown until the other end is settled
+	 * and then on as far as MAX_STRETCH allows
+	 */
+	private static final class Tree {
+		private final FrozenMapGraph graph;
+		private final boolean forward;
+		final int root;
+		final double[] dist;
+		final int[] edge;
+		final IntList order = new IntList();
+
+		Tree(FrozenMapGraph graph, float[] weights, int root, int other, boolean forward,
+				Consumer<GeographicPoint> nodeSearched) {
+			this.graph = graph;
+			this.forward = forward;
+			this.root = root;
+			int n = graph.numVertices;
+			dist = new double[n];
+			edge = new int[n];
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(edge, -1);
+			SearchContext ctx = SearchContext.acquire(n);
+			try {
+				VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+				ctx.update(root, 0, root, -1);
+				queue.insertOrDecrease(root, 0);
+				double bound = Double.POSITIVE_INFINITY;
+				while (!queue.isEmpty()) {
+					int v = queue.poll();
+					if (ctx.isSettled(v)) {
+						continue;
+					}
+					double dv = ctx.distance(v);
+					if (dv > bound) {
+						break;
+					}
+					ctx.settle(v);
+					nodeSearched.accept(graph.getLocation(v));
+					dist[v] = dv;
+					edge[v] = ctx.parentEdge(v);
+					order.add(v);
+					if (v == other) {
+						bound = (1 + MAX_STRETCH) * dv;
+					}
+					int end = forward ? graph.firstEdge[v + 1] : graph.firstInEdge[v + 1];
+					for (int i = forward ? graph.firstEdge[v] : graph.firstInEdge[v]; i < end; i++) {
+						int e = forward ? i : graph.inEdge[i];
+						int w = forward ? graph.target[e] : graph.source[e];
+						double d = dv + weights[e];
+						if (d < ctx.distance(w)) {
+							ctx.update(w, d, v, e);
+							queue.insertOrDecrease(w, d);
+						}
+					}
+				}
+			} finally {
+				ctx.release();
+			}
+		}
+
+		/**
+		 * The tree path between the root and v, as edges in driving
+		 * order: from the root to v in a forward tree, from v to the root
+		 * in a backward one
+		 */
+		int[] pathTo(int v) {
+			IntList edges = new IntList();
+			while (v != root) {
+				int e = edge[v];
+				edges.add(e);
+				v = forward ? graph.source[e] : graph.target[e];
+			}
+			if (forward) {
+				edges.reverse();
+			}
+			return edges.toArray();
+		}
+	}
+}
@@ -0,0 +1,368 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Arc flags for point-to-point queries on a static graph.
+ *
+ * The vertices are split into at most 64 cells, and every edge gets one
+ * long with bit c set if the edge lies on some shortest path into cell c.
+ * A search for a goal in cell c can then skip every edge whose bit c is
+ * clear, which keeps it close to the shortest path once it is far from
+ * the goal.
+ *
+ * The flags of cell c come from one backward Dijkstra search from every
+ * boundary vertex of c (a vertex of c with an edge coming in from another
+ * cell): an edge is on a shortest path to the boundary vertex when its
+ * length closes the gap between the distances of its ends.  Edges inside
+ * c always get bit c.  The backward searches are independent and run in
+ * parallel.
+ *
+ * Building costs a full search per boundary vertex, so the flags can be
+ * saved next to the map file and loaded on the next start, like
+ * Landmarks.
+ *
+ */
+public class ArcFlags {
+
+	/** The most cells, one per bit of a long */
+	public static final int MAX_CELLS = 64;
+
+	/** Extension of the file the flags are saved to, next to the map */
+	public static final String FILE_EXTENSION = ".arcflags";
+
+	private static final int MAGIC = 0x41464c47; // "AFLG"
+	private static final int VERSION = 1;
+
+	// slack when testing whether an edge is on a shortest path, so paths
+	// that tie up to rounding keep their flags
+	private static final double TOLERANCE = 1e-9;
+
+	private final int numVertices;
+	private final long fingerprint;
+	private final int cellCount;
+	private final int[] cell;
+	private final long[] flags;
+
+	// the last graph and costs isFor() accepted, to skip the checksum
+	private volatile FrozenMapGraph checkedGraph;
+	private volatile float[] checkedWeights;
+
+	// per target cell, the edges a search into it may skip; built on first
+	// use and replaced when the flags are used with another graph object
+	private volatile EdgeFilter[] pruning;
+
+	private ArcFlags(int numVertices, long fingerprint, int cellCount, int[] cell, long[] flags) {
+		this.numVertices = numVertices;
+		this.fingerprint = fingerprint;
+		this.cellCount = cellCount;
+		this.cell = cell;
+		this.flags = flags;
+	}
+
+	/**
+	 * Compute arc flags for the edge lengths of a graph, on cells from
+	 * recursive bisection of the vertex locations
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param cells
+	 *            How many cells, at most MAX_CELLS
+	 * @return The arc flags
+	 */
+	public static ArcFlags build(FrozenMapGraph graph, int cells) {
+		return build(graph, graph.weight, bisect(graph, cells), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compute arc flags for the edge lengths of a graph, on the cells of a
+	 * partition
+	 *
+	 * @param partition
+	 *            A partition of the graph into at most MAX_CELLS cells
+	 * @return The arc flags
+	 */
+	public static ArcFlags build(GraphPartition partition) {
+		if (partition.getCellCount() > MAX_CELLS) {
+			throw new IllegalArgumentException("Cannot flag " + partition.getCellCount() + " cells");
+		}
+		FrozenMapGraph graph = partition.getGraph();
+		return build(graph, graph.weight, partition.toArray(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compute arc flags for arbitrary edge costs and cells
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge of the graph
+	 * @param cell
+	 *            The cell of every vertex, from 0 to at most MAX_CELLS - 1
+	 * @param pool
+	 *            The pool the boundary searches run on
+	 * @return The arc flags
+	 */
+	static ArcFlags build(FrozenMapGraph graph, float[] weights, int[] cell, ForkJoinPool pool) {
+		int n = graph.numVertices;
+		int cells = 0;
+		for (int v = 0; v < n; v++) {
+			if (cell[v] < 0 || cell[v] >= MAX_CELLS) {
+				throw new IllegalArgumentException("Cell " + cell[v] + " of vertex " + v + " out of range");
+			}
+			cells = Math.max(cells, cell[v] + 1);
+		}
+
+		long[] initial = new long[graph.numEdges];
+		IntList boundary = new IntList();
+		for (int v = 0; v < n; v++) {
+			boolean entered = false;
+			for (int i = graph.firstInEdge[v]; i < graph.firstInEdge[v + 1]; i++) {
+				int e = graph.inEdge[i];
+				if (cell[graph.source[e]] == cell[v]) {
+					initial[e] |= 1L << cell[v];
+				} else {
+					entered = true;
+				}
+			}
+			if (entered) {
+				boundary.add(v);
+			}
+		}
+
+		AtomicLongArray flags = new AtomicLongArray(initial);
+		Parallel.forEach(pool, boundary.size, 1, (i) -> flagPathsTo(graph, weights, boundary.data[i],
+				1L << cell[boundary.data[i]], flags));
+
+		long[] result = new long[graph.numEdges];
+		for (int e = 0; e < result.length; e++) {
+			result[e] = flags.get(e);
+		}
+		return new ArcFlags(n, graph.fingerprint(weights), cells, cell.clone(), result);
+	}
+
+	// Backward Dijkstra from b; set bit on every edge of a shortest path
+	// to b
+	private static void flagPathsTo(FrozenMapGraph graph, float[] weights, int b, long bit,
+			AtomicLongArray flags) {
+		SearchContext ctx = SearchContext.acquire(graph.numVertices);
+		try {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			IntList settled = new IntList();
+			ctx.update(b, 0, b, -1);
+			queue.insertOrDecrease(b, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				settled.add(v);
+				double dv = ctx.distance(v);
+				for (int i = graph.firstInEdge[v]; i < graph.firstInEdge[v + 1]; i++) {
+					int e = graph.inEdge[i];
+					int u = graph.source[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(u)) {
+						ctx.update(u, d, v, e);
+						queue.insertOrDecrease(u, d);
+					}
+				}
+			}
+			for (int i = 0; i < settled.size; i++) {
+				int u = settled.data[i];
+				double du = ctx.distance(u);
+				for (int e = graph.firstEdge[u]; e < graph.firstEdge[u + 1]; e++) {
+					if (ctx.distance(graph.target[e]) + weights[e] <= du + TOLERANCE
+							&& (flags.get(e) & bit) == 0) {
+						flags.accumulateAndGet(e, bit, (x, y) -> x | y);
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+	}
+
+	/**
+	 * Split the vertices into cells of (nearly) equal size by recursive
+	 * coordinate bisection
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param cells
+	 *            How many cells, at most MAX_CELLS
+	 * @return The cell of every vertex
+	 */
+	static int[] bisect(FrozenMapGraph graph, int cells) {
+		if (cells < 1 || cells > MAX_CELLS) {
+			throw new IllegalArgumentException("Cannot split into " + cells + " cells");
+		}
+		return Bisection.split(graph, Math.min(cells, Math.max(1, graph.numVertices)));
+	}
+
+	/** Return the number of cells */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/** Return the cell of vertex v */
+	public int getCell(int v) {
+		return cell[v];
+	}
+
+	/** Return whether edge e lies on a shortest path into the given cell */
+	public boolean isFlagged(int e, int targetCell) {
+		return (flags[e] & (1L << targetCell)) != 0;
+	}
+
+	/** Return whether these flags were built for the given graph and costs */
+	boolean isFor(FrozenMapGraph graph, float[] weights) {
+		if (graph == checkedGraph && weights == checkedWeights) {
+			return true;
+		}
+		if (graph.numVertices != numVertices || graph.numEdges != flags.length
+				|| graph.fingerprint(weights) != fingerprint) {
+			return false;
+		}
+		checkedWeights = weights;
+		checkedGraph = graph;
+		return true;
+	}
+
+	/**
+	 * The edges a search towards a vertex of the given cell may skip, as a
+	 * filter on the given graph.  Built once per cell.
+	 */
+	EdgeFilter pruning(FrozenMapGraph graph, int targetCell) {
+		EdgeFilter[] cached = pruning;
+		if (cached == null || (cached[targetCell] != null && cached[targetCell].getGraph() != graph)) {
+			cached = new EdgeFilter[cellCount];
+			pruning = cached;
+		}
+		EdgeFilter filter = cached[targetCell];
+		if (filter == null) {
+			long bit = 1L << targetCell;
+			EdgeFilter.Builder builder = new EdgeFilter.Builder(graph);
+			for (int e = 0; e < flags.length; e++) {
+				if ((flags[e] & bit) == 0) {
+					builder.close(e);
+				}
+			}
+			filter = builder.build();
+			cached[targetCell] = filter;
+		}
+		return filter;
+	}
+
+	/**
+	 * Write the flags to a file
+	 *
+	 * @param fileName
+	 *            The file to write
+	 * @throws IOException
+	 */
+	public void save(String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numVertices);
+			out.writeInt(flags.length);
+			out.writeLong(fingerprint);
+			out.writeInt(cellCount);
+			for (int v = 0; v < numVertices; v++) {
+				out.writeByte(cell[v]);
+			}
+			for (int e = 0; e < flags.length; e++) {
+				out.writeLong(flags[e]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read flags written by save()
+	 *
+	 * @param fileName
+	 *            The file to read
+	 * @return The arc flags
+	 * @throws IOException
+	 *             If the file cannot be read or is not an arc flag file
+	 */
+	public static ArcFlags load(String fileName) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(fileName + " is not an arc flag file of version " + VERSION);
+			}
+			int n = in.readInt();
+			int m = in.readInt();
+			long fingerprint = in.readLong();
+			int cells = in.readInt();
+			if (n < 0 || m < 0 || cells < 1 || cells > MAX_CELLS) {
+				throw new IOException("Corrupt arc flag file " + fileName);
+			}
+			int[] cell = new int[n];
+			for (int v = 0; v < n; v++) {
+				cell[v] = in.readUnsignedByte();
+				if (cell[v] >= cells) {
+					throw new IOException("Corrupt arc flag file " + fileName);
+				}
+			}
+			long[] flags = new long[m];
+			for (int e = 0; e < m; e++) {
+				flags[e] = in.readLong();
+			}
+			return new ArcFlags(n, fingerprint, cells, cell, flags);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Load the flags saved next to a map file if they still match the
+	 * graph, otherwise build new ones and save them there.
+	 *
+	 * @param mapFile
+	 *            The map file the graph was loaded from
+	 * @param graph
+	 *            The graph
+	 * @param cells
+	 *            How many cells to use if the flags have to be built
+	 * @return The arc flags
+	 */
+	public static ArcFlags loadOrBuild(String mapFile, FrozenMapGraph graph, int cells) {
+		String fileName = mapFile + FILE_EXTENSION;
+		if (new File(fileName).exists()) {
+			try {
+				ArcFlags saved = load(fileName);
+				if (saved.isFor(graph, graph.weight)) {
+					return saved;
+				}
+			} catch (IOException e) {
+				System.err.println("Problem loading arc flag file: " + fileName);
+			}
+		}
+		ArcFlags flags = build(graph, cells);
+		try {
+			flags.save(fileName);
+		} catch (IOException e) {
+			System.err.println("Problem saving arc flag file: " + fileName);
+		}
+		return flags;
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Recursive coordinate bisection: cells of (nearly) equal size, found by
+ * cutting the longer side of the bounding box of the vertex locations at
+ * the median, again and again.
+ *
+ * When the number of cells is a power of two, the cell ids spell out the
+ * cuts: cell id c >> k is the cell the vertex would be in after all but
+ * the last k rounds of cuts, which gives nested partitions for free.
+ *
+ */
+final class Bisection {
+
+	private Bisection() {
+	}
+
+	/**
+	 * Split the vertices of a graph into cells
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param cells
+	 *            How many cells; some are empty if there are fewer vertices
+	 * @return The cell of every vertex
+	 */
+	static int[] split(FrozenMapGraph graph, int cells) {
+		Integer[] vertices = new Integer[graph.numVertices];
+		for (int v = 0; v < vertices.length; v++) {
+			vertices[v] = v;
+		}
+		int[] cell = new int[graph.numVertices];
+		split(graph, vertices, 0, vertices.length, 0, cells, cell);
+		return cell;
+	}
+
+	private static void split(FrozenMapGraph graph, Integer[] vertices, int from, int to, int firstCell,
+			int cells, int[] cell) {
+		if (cells == 1) {
+			for (int i = from; i < to; i++) {
+				cell[vertices[i]] = firstCell;
+			}
+			return;
+		}
+		double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			int v = vertices[i];
+			minLat = Math.min(minLat, graph.lat[v]);
+			maxLat = Math.max(maxLat, graph.lat[v]);
+			minLon = Math.min(minLon, graph.lon[v]);
+			maxLon = Math.max(maxLon, graph.lon[v]);
+		}
+		double[] key = maxLat - minLat >= maxLon - minLon ? graph.lat : graph.lon;
+		Arrays.sort(vertices, from, to, (a, b) -> Double.compare(key[a], key[b]));
+		int left = cells / 2;
+		int mid = from + (int) ((long) (to - from) * left / cells);
+		split(graph, vertices, from, mid, firstCell, left, cell);
+		split(graph, vertices, mid, to, firstCell + left, cells - left, cell);
+	}
+}
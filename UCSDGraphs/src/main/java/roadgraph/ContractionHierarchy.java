@@ -0,0 +1,717 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/**
+ * Contraction hierarchy over a FrozenMapGraph.
+ *
+ * Preprocessing removes ("contracts") the vertices one at a time, least
+ * important first.  Whenever removing v would lengthen a shortest path
+ * u -> v -> w, a shortcut edge u -> w remembering v as its middle vertex
+ * is added.  A query then runs a bidirectional Dijkstra that only ever
+ * follows edges towards more important vertices, which settles a few
+ * dozen vertices where plain Dijkstra settles thousands, and unpacks the
+ * shortcuts on the path it finds.
+ *
+ * Vertex importance is the edge difference (shortcuts added minus edges
+ * removed) plus the number of neighbours already contracted.  Each round
+ * contracts every vertex whose importance is smaller than that of all its
+ * remaining neighbours.  Those vertices are independent, so their witness
+ * searches run in parallel on a ForkJoinPool.
+ *
+ * A hierarchy is immutable once built and safe to query from several
+ * threads.
+ *
+ */
+public class ContractionHierarchy {
+
+	// Witness searches give up after this many edges or settled vertices
+	// and add the shortcut; a superfluous shortcut is harmless, a missing
+	// one is not.
+	static final int WITNESS_HOP_LIMIT = 5;
+	static final int WITNESS_SETTLE_LIMIT = 500;
+
+	private final FrozenMapGraph graph;
+	private final float[] weights;
+	private final int numVertices;
+
+	// rank[v]: v was the rank[v]-th vertex contracted
+	final int[] rank;
+
+	// All arcs: the graph's edges first, under their edge id, then the
+	// shortcuts.  A shortcut's children are the two arcs it replaces.
+	final int[] arcFrom;
+	final int[] arcTo;
+	final double[] arcWeight;
+	final int[] arcFirstChild;
+	final int[] arcSecondChild;
+
+	// Arcs v -> w with rank[w] > rank[v], by v
+	final int[] firstUp;
+	final int[] upArc;
+	final int[] upHead;
+	final double[] upWeight;
+
+	// Arcs u -> v with rank[u] > rank[v], by v, for the backward search
+	final int[] firstDown;
+	final int[] downArc;
+	final int[] downTail;
+	final double[] downWeight;
+
+	private ContractionHierarchy(FrozenMapGraph graph, float[] weights, Builder builder) {
+		this.graph = graph;
+		this.weights = weights;
+		this.numVertices = graph.numVertices;
+		this.rank = builder.rank;
+		int arcs = builder.arcCount;
+		this.arcFrom = Arrays.copyOf(builder.arcFrom, arcs);
+		this.arcTo = Arrays.copyOf(builder.arcTo, arcs);
+		this.arcWeight = Arrays.copyOf(builder.arcWeight, arcs);
+		this.arcFirstChild = Arrays.copyOf(builder.arcFirstChild, arcs);
+		this.arcSecondChild = Arrays.copyOf(builder.arcSecondChild, arcs);
+
+		firstUp = new int[numVertices + 1];
+		firstDown = new int[numVertices + 1];
+		for (int a = 0; a < arcs; a++) {
+			if (arcFrom[a] == arcTo[a]) {
+				continue;
+			}
+			if (rank[arcTo[a]] > rank[arcFrom[a]]) {
+				firstUp[arcFrom[a] + 1]++;
+			} else {
+				firstDown[arcTo[a] + 1]++;
+			}
+		}
+		for (int v = 0; v < numVertices; v++) {
+			firstUp[v + 1] += firstUp[v];
+			firstDown[v + 1] += firstDown[v];
+		}
+		upArc = new int[firstUp[numVertices]];
+		upHead = new int[upArc.length];
+		upWeight = new double[upArc.length];
+		downArc = new int[firstDown[numVertices]];
+		downTail = new int[downArc.length];
+		downWeight = new double[downArc.length];
+		int[] nextUp = Arrays.copyOf(firstUp, numVertices);
+		int[] nextDown = Arrays.copyOf(firstDown, numVertices);
+		for (int a = 0; a < arcs; a++) {
+			int u = arcFrom[a];
+			int w = arcTo[a];
+			if (u == w) {
+				continue;
+			}
+			if (rank[w] > rank[u]) {
+				int i = nextUp[u]++;
+				upArc[i] = a;
+				upHead[i] = w;
+				upWeight[i] = arcWeight[a];
+			} else {
+				int i = nextDown[w]++;
+				downArc[i] = a;
+				downTail[i] = u;
+				downWeight[i] = arcWeight[a];
+			}
+		}
+	}
+
+	/**
+	 * Build the hierarchy for the edge lengths of a graph, contracting on
+	 * the common pool.
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @return The hierarchy
+	 */
+	public static ContractionHierarchy build(FrozenMapGraph graph) {
+		return build(graph, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Build the hierarchy for the edge lengths of a graph
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param pool
+	 *            The pool the witness searches run on
+	 * @return The hierarchy
+	 */
+	public static ContractionHierarchy build(FrozenMapGraph graph, ForkJoinPool pool) {
+		return build(graph, graph.weight, pool);
+	}
+
+	/**
+	 * Build the hierarchy for arbitrary edge costs
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge of the graph
+	 * @param pool
+	 *            The pool the witness searches run on
+	 * @return The hierarchy
+	 */
+	static ContractionHierarchy build(FrozenMapGraph graph, float[] weights, ForkJoinPool pool) {
+		Builder builder = new Builder(graph, weights);
+		builder.contract(pool);
+		return new ContractionHierarchy(graph, weights, builder);
+	}
+
+	/** Return the graph this hierarchy was built on */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	/** Return the edge costs this hierarchy was built for */
+	float[] getWeights() {
+		return weights;
+	}
+
+	/** Return whether this hierarchy was built on the given graph and costs */
+	boolean isFor(FrozenMapGraph graph, float[] weights) {
+		return this.graph == graph && this.weights == weights;
+	}
+
+	/** Return the position of vertex v in the contraction order */
+	public int getRank(int v) {
+		return rank[v];
+	}
+
+	/** Return the number of shortcut edges preprocessing added */
+	public int getNumShortcuts() {
+		return arcFrom.length - graph.numEdges;
+	}
+
+	/**
+	 * Find the path from start to goal through the hierarchy
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> shortestPath(GeographicPoint start, GeographicPoint goal) {
+		return shortestPath(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal through the hierarchy.  The forward
+	 * search from start and the backward search from goal both climb to
+	 * more important vertices only.  They alternate until each has run out
+	 * of keys below mu, the best distance through a vertex both reached.
+	 * The shortcuts on the resulting path are then unpacked into the road
+	 * intersections they stand for.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex settled
+	 *            by either search.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> shortestPath(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		int s = graph.findVertex(start, "Start");
+		int t = graph.findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext forward = SearchContext.acquire(numVertices);
+		SearchContext backward = SearchContext.acquire(numVertices);
+		try {
+			int meet = search(s, t, forward, backward, nodeSearched);
+			if (meet < 0) {
+				System.out.println("No path found from " + start + " to " + goal);
+				return null;
+			}
+			List<GeographicPoint> path = new ArrayList<GeographicPoint>();
+			for (int v : unpack(s, t, meet, forward, backward)) {
+				path.add(graph.getLocation(v));
+			}
+			return path;
+		} finally {
+			backward.release();
+			forward.release();
+		}
+	}
+
+	/**
+	 * Return the shortest distance from s to t, or infinity if t cannot be
+	 * reached
+	 */
+	public double distance(int s, int t) {
+		SearchContext forward = SearchContext.acquire(numVertices);
+		SearchContext backward = SearchContext.acquire(numVertices);
+		try {
+			int meet = search(s, t, forward, backward, null);
+			return meet < 0 ? Double.POSITIVE_INFINITY : forward.distance(meet) + backward.distance(meet);
+		} finally {
+			backward.release();
+			forward.release();
+		}
+	}
+
+	// The upward bidirectional search.  Returns the vertex on the shortest
+	// path where the two searches meet, or -1.
+	private int search(int s, int t, SearchContext forward, SearchContext backward,
+			Consumer<GeographicPoint> nodeSearched) {
+		VertexQueue forwardQueue = forward.queue(QueueType.DEFAULT);
+		VertexQueue backwardQueue = backward.queue(QueueType.DEFAULT);
+		forward.update(s, 0, s, -1);
+		forwardQueue.insertOrDecrease(s, 0);
+		backward.update(t, 0, t, -1);
+		backwardQueue.insertOrDecrease(t, 0);
+
+		double mu = Double.POSITIVE_INFINITY;
+		int meet = -1;
+		boolean forwardTurn = true;
+		while (true) {
+			boolean forwardDone = forwardQueue.isEmpty() || forwardQueue.peekKey() >= mu;
+			boolean backwardDone = backwardQueue.isEmpty() || backwardQueue.peekKey() >= mu;
+			if (forwardDone && backwardDone) {
+				break;
+			}
+			if (forwardDone) {
+				forwardTurn = false;
+			} else if (backwardDone) {
+				forwardTurn = true;
+			}
+			if (forwardTurn) {
+				int v = forwardQueue.poll();
+				forward.settle(v);
+				if (nodeSearched != null) {
+					nodeSearched.accept(graph.getLocation(v));
+				}
+				double dv = forward.distance(v);
+				if (dv + backward.distance(v) < mu) {
+					mu = dv + backward.distance(v);
+					meet = v;
+				}
+				for (int i = firstUp[v]; i < firstUp[v + 1]; i++) {
+					int w = upHead[i];
+					double d = dv + upWeight[i];
+					if (d < forward.distance(w)) {
+						forward.update(w, d, v, upArc[i]);
+						forwardQueue.insertOrDecrease(w, d);
+					}
+				}
+			} else {
+				int v = backwardQueue.poll();
+				backward.settle(v);
+				if (nodeSearched != null) {
+					nodeSearched.accept(graph.getLocation(v));
+				}
+				double dv = backward.distance(v);
+				if (dv + forward.distance(v) < mu) {
+					mu = dv + forward.distance(v);
+					meet = v;
+				}
+				for (int i = firstDown[v]; i < firstDown[v + 1]; i++) {
+					int u = downTail[i];
+					double d = dv + downWeight[i];
+					if (d < backward.distance(u)) {
+						backward.update(u, d, v, downArc[i]);
+						backwardQueue.insertOrDecrease(u, d);
+					}
+				}
+			}
+			forwardTurn = !forwardTurn;
+		}
+		return meet;
+	}
+
+	/**
+	 * Run a full upward search from root: forward over upward arcs, or
+	 * backward over the arcs coming down into each vertex.  Distances are
+	 * left in ctx and the settled vertices in ctx.buffer().
+	 *
+	 * @return The number of vertices settled
+	 */
+	int upwardSearch(int root, boolean backward, SearchContext ctx) {
+		VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+		int[] settled = ctx.buffer();
+		int count = 0;
+		ctx.update(root, 0, root, -1);
+		queue.insertOrDecrease(root, 0);
+		int[] first = backward ? firstDown : firstUp;
+		int[] head = backward ? downTail : upHead;
+		double[] cost = backward ? downWeight : upWeight;
+		while (!queue.isEmpty()) {
+			int v = queue.poll();
+			ctx.settle(v);
+			settled[count++] = v;
+			double dv = ctx.distance(v);
+			for (int i = first[v]; i < first[v + 1]; i++) {
+				int w = head[i];
+				double d = dv + cost[i];
+				if (d < ctx.distance(w)) {
+					ctx.update(w, d, v, -1);
+					queue.insertOrDecrease(w, d);
+				}
+			}
+		}
+		return count;
+	}
+
+	// The vertex ids of the path s .. meet .. t, shortcuts unpacked
+	private int[] unpack(int s, int t, int meet, SearchContext forward, SearchContext backward) {
+		IntList arcs = new IntList();
+		for (int v = meet; v != s; v = forward.parent(v)) {
+			arcs.add(forward.parentEdge(v));
+		}
+		arcs.reverse();
+		for (int v = meet; v != t; v = backward.parent(v)) {
+			arcs.add(backward.parentEdge(v));
+		}
+		IntList path = new IntList();
+		path.add(s);
+		for (int i = 0; i < arcs.size; i++) {
+			unpackArc(arcs.data[i], path);
+		}
+		return Arrays.copyOf(path.data, path.size);
+	}
+
+	/**
+	 * Append the vertices an arc stands for, except its first one, to path
+	 */
+	void unpackArc(int arc, IntList path) {
+		IntList stack = new IntList();
+		stack.add(arc);
+		while (stack.size > 0) {
+			int a = stack.data[--stack.size];
+			if (arcFirstChild[a] < 0) {
+				path.add(arcTo[a]);
+			} else {
+				stack.add(arcSecondChild[a]);
+				stack.add(arcFirstChild[a]);
+			}
+		}
+	}
+
+	// The mutable state of the contraction
+	private static final class Builder {
+		private final int n;
+		private final int[] rank;
+
+		private int arcCount;
+		private int[] arcFrom;
+		private int[] arcTo;
+		private double[] arcWeight;
+		private int[] arcFirstChild;
+		private int[] arcSecondChild;
+
+		// live arcs out of and into every vertex not yet contracted
+		private final IntList[] outArcs;
+		private final IntList[] inArcs;
+
+		// contracted[v]: v is gone; batch[v]: v is being contracted this round
+		private final boolean[] contracted;
+		private final boolean[] batch;
+		private final int[] contractedNeighbors;
+		// the last contracted vertex counted in contractedNeighbors
+		private final int[] lastCounted;
+		private final int[] priority;
+
+		Builder(FrozenMapGraph graph, float[] weights) {
+			n = graph.numVertices;
+			int m = graph.numEdges;
+			rank = new int[n];
+			arcCount = m;
+			int capacity = Math.max(16, 2 * m);
+			arcFrom = Arrays.copyOf(graph.source, capacity);
+			arcTo = Arrays.copyOf(graph.target, capacity);
+			arcWeight = new double[capacity];
+			arcFirstChild = new int[capacity];
+			arcSecondChild = new int[capacity];
+			Arrays.fill(arcFirstChild, -1);
+			Arrays.fill(arcSecondChild, -1);
+			outArcs = new IntList[n];
+			inArcs = new IntList[n];
+			for (int v = 0; v < n; v++) {
+				outArcs[v] = new IntList();
+				inArcs[v] = new IntList();
+			}
+			for (int e = 0; e < m; e++) {
+				arcWeight[e] = weights[e];
+				if (arcFrom[e] != arcTo[e]) {
+					outArcs[arcFrom[e]].add(e);
+					inArcs[arcTo[e]].add(e);
+				}
+			}
+			contracted = new boolean[n];
+			batch = new boolean[n];
+			contractedNeighbors = new int[n];
+			lastCounted = new int[n];
+			Arrays.fill(lastCounted, -1);
+			priority = new int[n];
+		}
+
+		void contract(ForkJoinPool pool) {
+			int[] remaining = new int[n];
+			for (int v = 0; v < n; v++) {
+				remaining[v] = v;
+			}
+			int remainingCount = n;
+			Parallel.forEach(pool, n, (v) -> priority[v] = computePriority(v));
+
+			int nextRank = 0;
+			boolean[] dirty = new boolean[n];
+			while (remainingCount > 0) {
+				// an independent set: every vertex less important than all of
+				// its remaining neighbours
+				int[] selected = new int[remainingCount];
+				int selectedCount = 0;
+				for (int i = 0; i < remainingCount; i++) {
+					int v = remaining[i];
+					if (isLocalMinimum(v)) {
+						selected[selectedCount++] = v;
+					}
+				}
+				for (int i = 0; i < selectedCount; i++) {
+					batch[selected[i]] = true;
+				}
+
+				final int[] round = selected;
+				IntList[] shortcuts = new IntList[selectedCount];
+				Parallel.forEach(pool, selectedCount, (i) -> {
+					shortcuts[i] = new IntList();
+					findShortcuts(round[i], shortcuts[i]);
+				});
+
+				IntList touched = new IntList();
+				for (int i = 0; i < selectedCount; i++) {
+					int v = selected[i];
+					IntList pairs = shortcuts[i];
+					for (int j = 0; j < pairs.size; j += 2) {
+						addShortcut(pairs.data[j], pairs.data[j + 1]);
+					}
+					contracted[v] = true;
+					batch[v] = false;
+					rank[v] = nextRank++;
+					touchNeighbors(v, outArcs[v], arcTo, dirty, touched);
+					touchNeighbors(v, inArcs[v], arcFrom, dirty, touched);
+					outArcs[v] = null;
+					inArcs[v] = null;
+				}
+
+				final IntList update = touched;
+				Parallel.forEach(pool, update.size, (i) -> {
+					int x = update.data[i];
+					prune(outArcs[x], arcTo);
+					prune(inArcs[x], arcFrom);
+				});
+				Parallel.forEach(pool, update.size, (i) -> priority[update.data[i]] = computePriority(update.data[i]));
+				for (int i = 0; i < touched.size; i++) {
+					dirty[touched.data[i]] = false;
+				}
+
+				int kept = 0;
+				for (int i = 0; i < remainingCount; i++) {
+					if (!contracted[remaining[i]]) {
+						remaining[kept++] = remaining[i];
+					}
+				}
+				remainingCount = kept;
+			}
+		}
+
+		// Count v as contracted for its live neighbours and collect them,
+		// once each, into touched
+		private void touchNeighbors(int v, IntList arcs, int[] endpoint, boolean[] dirty, IntList touched) {
+			for (int i = 0; i < arcs.size; i++) {
+				int x = endpoint[arcs.data[i]];
+				if (contracted[x] || batch[x]) {
+					continue;
+				}
+				if (lastCounted[x] != v) {
+					lastCounted[x] = v;
+					contractedNeighbors[x]++;
+				}
+				if (!dirty[x]) {
+					dirty[x] = true;
+					touched.add(x);
+				}
+			}
+		}
+
+		// Drop the arcs whose other end has been contracted
+		private void prune(IntList arcs, int[] endpoint) {
+			int kept = 0;
+			for (int i = 0; i < arcs.size; i++) {
+				if (!contracted[endpoint[arcs.data[i]]]) {
+					arcs.data[kept++] = arcs.data[i];
+				}
+			}
+			arcs.size = kept;
+		}
+
+		private boolean isLocalMinimum(int v) {
+			return !beatenBy(v, outArcs[v], arcTo) && !beatenBy(v, inArcs[v], arcFrom);
+		}
+
+		private boolean beatenBy(int v, IntList arcs, int[] endpoint) {
+			for (int i = 0; i < arcs.size; i++) {
+				int x = endpoint[arcs.data[i]];
+				if (x != v && !contracted[x]
+						&& (priority[x] < priority[v] || (priority[x] == priority[v] && x < v))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		// Edge difference plus contracted neighbours
+		private int computePriority(int v) {
+			IntList shortcuts = new IntList();
+			findShortcuts(v, shortcuts);
+			int removed = live(outArcs[v], arcTo) + live(inArcs[v], arcFrom);
+			return shortcuts.size / 2 - removed + contractedNeighbors[v];
+		}
+
+		private int live(IntList arcs, int[] endpoint) {
+			int count = 0;
+			for (int i = 0; i < arcs.size; i++) {
+				if (!gone(endpoint[arcs.data[i]])) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		private boolean gone(int v) {
+			return contracted[v] || batch[v];
+		}
+
+		// Append (in arc, out arc) for every shortcut contracting v needs.
+		// Witness paths avoid v and everything contracted in this round, so
+		// they stay valid once the whole round is gone.
+		private void findShortcuts(int v, IntList shortcuts) {
+			IntList in = inArcs[v];
+			IntList out = outArcs[v];
+			double maxOut = 0;
+			for (int j = 0; j < out.size; j++) {
+				int b = out.data[j];
+				if (arcTo[b] != v && !gone(arcTo[b])) {
+					maxOut = Math.max(maxOut, arcWeight[b]);
+				}
+			}
+			SearchContext ctx = SearchContext.acquire(n);
+			try {
+				for (int i = 0; i < in.size; i++) {
+					int a = in.data[i];
+					int u = arcFrom[a];
+					if (u == v || gone(u) || !isShortest(a, in, arcFrom)) {
+						continue;
+					}
+					ctx.begin(n);
+					witnessSearch(ctx, u, v, arcWeight[a] + maxOut);
+					for (int j = 0; j < out.size; j++) {
+						int b = out.data[j];
+						int w = arcTo[b];
+						if (w == v || w == u || gone(w) || !isShortest(b, out, arcTo)) {
+							continue;
+						}
+						if (ctx.distance(w) > arcWeight[a] + arcWeight[b]) {
+							shortcuts.add(a);
+							shortcuts.add(b);
+						}
+					}
+				}
+			} finally {
+				ctx.release();
+			}
+		}
+
+		// Whether arc is the shortest of the parallel arcs in the list
+		// (ties go to the lowest arc id)
+		private boolean isShortest(int arc, IntList arcs, int[] endpoint) {
+			for (int i = 0; i < arcs.size; i++) {
+				int other = arcs.data[i];
+				if (other != arc && endpoint[other] == endpoint[arc] && (arcWeight[other] < arcWeight[arc]
+						|| (arcWeight[other] == arcWeight[arc] && other < arc))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// Hop- and size-limited Dijkstra from u that never enters avoid or a
+		// removed vertex, and stops once the queue passes limit
+		private void witnessSearch(SearchContext ctx, int u, int avoid, double limit) {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			int[] hops = ctx.buffer();
+			ctx.update(u, 0, -1, -1);
+			hops[u] = 0;
+			queue.insertOrDecrease(u, 0);
+			int settled = 0;
+			while (!queue.isEmpty() && queue.peekKey() <= limit && settled < WITNESS_SETTLE_LIMIT) {
+				int x = queue.poll();
+				settled++;
+				if (hops[x] >= WITNESS_HOP_LIMIT) {
+					continue;
+				}
+				double dx = ctx.distance(x);
+				IntList out = outArcs[x];
+				for (int i = 0; i < out.size; i++) {
+					int b = out.data[i];
+					int y = arcTo[b];
+					if (y == avoid || gone(y)) {
+						continue;
+					}
+					double d = dx + arcWeight[b];
+					if (d < ctx.distance(y)) {
+						ctx.update(y, d, x, b);
+						hops[y] = hops[x] + 1;
+						queue.insertOrDecrease(y, d);
+					}
+				}
+			}
+		}
+
+		// Add the shortcut for in arc a followed by out arc b, unless an arc
+		// at least as short already links the same vertices
+		private void addShortcut(int a, int b) {
+			int u = arcFrom[a];
+			int w = arcTo[b];
+			double length = arcWeight[a] + arcWeight[b];
+			IntList out = outArcs[u];
+			for (int i = 0; i < out.size; i++) {
+				int other = out.data[i];
+				if (arcTo[other] == w && arcWeight[other] <= length) {
+					return;
+				}
+			}
+			if (arcCount == arcFrom.length) {
+				int capacity = arcCount * 2;
+				arcFrom = Arrays.copyOf(arcFrom, capacity);
+				arcTo = Arrays.copyOf(arcTo, capacity);
+				arcWeight = Arrays.copyOf(arcWeight, capacity);
+				arcFirstChild = Arrays.copyOf(arcFirstChild, capacity);
+				arcSecondChild = Arrays.copyOf(arcSecondChild, capacity);
+			}
+			int arc = arcCount++;
+			arcFrom[arc] = u;
+			arcTo[arc] = w;
+			arcWeight[arc] = length;
+			arcFirstChild[arc] = a;
+			arcSecondChild[arc] = b;
+			outArcs[u].add(arc);
+			inArcs[w].add(arc);
+		}
+	}
+}
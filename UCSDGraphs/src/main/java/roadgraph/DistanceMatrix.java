@@ -0,0 +1,172 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Many-to-many shortest path costs.
+ *
+ * Without preprocessing, every source gets one Dijkstra search that stops
+ * as soon as it has settled all the targets.  With a contraction
+ * hierarchy the bucket method is used instead: one backward upward search
+ * per target leaves (target, distance) entries in a bucket at every
+ * vertex it settles, and one forward upward search per source combines
+ * its distances with the buckets it passes.  Either way the sources are
+ * handled in parallel.
+ *
+ * Unreachable pairs are infinite.
+ *
+ */
+final class DistanceMatrix {
+
+	private DistanceMatrix() {
+	}
+
+	/**
+	 * One-to-many Dijkstra from every source, with early termination
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge
+	 * @param sources
+	 *            Source vertex ids
+	 * @param targets
+	 *            Target vertex ids
+	 * @param pool
+	 *            The pool the searches run on
+	 * @return matrix[i][j] = cost from sources[i] to targets[j]
+	 */
+	static double[][] oneToMany(FrozenMapGraph graph, float[] weights, int[] sources, int[] targets,
+			ForkJoinPool pool) {
+		int n = graph.numVertices;
+		boolean[] isTarget = new boolean[n];
+		int distinctTargets = 0;
+		for (int t : targets) {
+			if (!isTarget[t]) {
+				isTarget[t] = true;
+				distinctTargets++;
+			}
+		}
+		final int targetCount = distinctTargets;
+		double[][] matrix = new double[sources.length][];
+		Parallel.forEach(pool, sources.length, (i) -> {
+			SearchContext ctx = SearchContext.acquire(n);
+			try {
+				VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+				ctx.update(sources[i], 0, sources[i], -1);
+				queue.insertOrDecrease(sources[i], 0);
+				int remaining = targetCount;
+				while (remaining > 0 && !queue.isEmpty()) {
+					int v = queue.poll();
+					ctx.settle(v);
+					if (isTarget[v]) {
+						remaining--;
+					}
+					double dv = ctx.distance(v);
+					for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+						int w = graph.target[e];
+						double d = dv + weights[e];
+						if (d < ctx.distance(w)) {
+							ctx.update(w, d, v, e);
+							queue.insertOrDecrease(w, d);
+						}
+					}
+				}
+				double[] row = new double[targets.length];
+				for (int j = 0; j < targets.length; j++) {
+					row[j] = ctx.isSettled(targets[j]) ? ctx.distance(targets[j]) : Double.POSITIVE_INFINITY;
+				}
+				matrix[i] = row;
+			} finally {
+				ctx.release();
+			}
+		});
+		return matrix;
+	}
+
+	/**
+	 * Bucket-based many-to-many search on a contraction hierarchy
+	 * 
+	 * @param hierarchy
+	 *            The hierarchy, built for the costs wanted
+	 * @param sources
+	 *            Source vertex ids
+	 * @param targets
+	 *            Target vertex ids
+	 * @param pool
+	 *            The pool the searches run on
+	 * @return matrix[i][j] = cost from sources[i] to targets[j]
+	 */
+	static double[][] buckets(ContractionHierarchy hierarchy, int[] sources, int[] targets, ForkJoinPool pool) {
+		int n = hierarchy.rank.length;
+
+		// backward search spaces of the targets
+		int[][] spaceVertex = new int[targets.length][];
+		double[][] spaceDist = new double[targets.length][];
+		Parallel.forEach(pool, targets.length, (j) -> {
+			SearchContext ctx = SearchContext.acquire(n);
+			try {
+				int count = hierarchy.upwardSearch(targets[j], true, ctx);
+				int[] vertices = Arrays.copyOf(ctx.buffer(), count);
+				double[] dist = new double[count];
+				for (int k = 0; k < count; k++) {
+					dist[k] = ctx.distance(vertices[k]);
+				}
+				spaceVertex[j] = vertices;
+				spaceDist[j] = dist;
+			} finally {
+				ctx.release();
+			}
+		});
+
+		// buckets, laid out by vertex
+		int[] firstEntry = new int[n + 1];
+		for (int[] vertices : spaceVertex) {
+			for (int v : vertices) {
+				firstEntry[v + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			firstEntry[v + 1] += firstEntry[v];
+		}
+		int[] entryTarget = new int[firstEntry[n]];
+		double[] entryDist = new double[firstEntry[n]];
+		int[] next = Arrays.copyOf(firstEntry, n);
+		for (int j = 0; j < targets.length; j++) {
+			for (int k = 0; k < spaceVertex[j].length; k++) {
+				int slot = next[spaceVertex[j][k]]++;
+				entryTarget[slot] = j;
+				entryDist[slot] = spaceDist[j][k];
+			}
+		}
+
+		double[][] matrix = new double[sources.length][];
+		Parallel.forEach(pool, sources.length, (i) -> {
+			double[] row = new double[targets.length];
+			Arrays.fill(row, Double.POSITIVE_INFINITY);
+			SearchContext ctx = SearchContext.acquire(n);
+			try {
+				int count = hierarchy.upwardSearch(sources[i], false, ctx);
+				int[] settled = ctx.buffer();
+				for (int k = 0; k < count; k++) {
+					int v = settled[k];
+					double dv = ctx.distance(v);
+					for (int slot = firstEntry[v]; slot < firstEntry[v + 1]; slot++) {
+						double d = dv + entryDist[slot];
+						if (d < row[entryTarget[slot]]) {
+							row[entryTarget[slot]] = d;
+						}
+					}
+				}
+			} finally {
+				ctx.release();
+			}
+			matrix[i] = row;
+		});
+		return matrix;
+	}
+}
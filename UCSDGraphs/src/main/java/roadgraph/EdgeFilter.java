@@ -0,0 +1,191 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+
+/**
+ * A set of closed edges of a FrozenMapGraph, for routing around road
+ * closures without rebuilding the graph.
+ *
+ * The closed edges are a bitset over edge ids, one bit per edge, so
+ * testing an edge during relaxation is a single bit test.  Filters are
+ * immutable: build one with a Builder, and share it between any number of
+ * queries and threads.  union() layers per-query closures on top of
+ * global ones without changing either.
+ *
+ */
+public final class EdgeFilter {
+
+	private final FrozenMapGraph graph;
+	private final long[] closed;
+	private final int count;
+
+	private EdgeFilter(FrozenMapGraph graph, long[] closed) {
+		this.graph = graph;
+		this.closed = closed;
+		int bits = 0;
+		for (long word : closed) {
+			bits += Long.bitCount(word);
+		}
+		this.count = bits;
+	}
+
+	/** Return whether an edge is closed */
+	public boolean isClosed(int edge) {
+		return (closed[edge >>> 6] & (1L << edge)) != 0;
+	}
+
+	/** Return the number of closed edges */
+	public int size() {
+		return count;
+	}
+
+	/** Return the graph whose edges this filter closes */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Return a filter that closes every edge closed by this one or by
+	 * other
+	 * 
+	 * @param other
+	 *            Another filter on the same graph
+	 * @return The combined filter
+	 */
+	public EdgeFilter union(EdgeFilter other) {
+		if (other.graph != graph) {
+			throw new IllegalArgumentException("Edge filters are for different graphs");
+		}
+		long[] words = closed.clone();
+		for (int i = 0; i < words.length; i++) {
+			words[i] |= other.closed[i];
+		}
+		return new EdgeFilter(graph, words);
+	}
+
+	/**
+	 * Collects the edges to close
+	 */
+	public static final class Builder {
+		private final FrozenMapGraph graph;
+		private final long[] closed;
+
+		/**
+		 * Start with every edge of a graph open
+		 * 
+		 * @param graph
+		 *            The graph
+		 */
+		public Builder(FrozenMapGraph graph) {
+			this.graph = graph;
+			this.closed = new long[(graph.numEdges + 63) >>> 6];
+		}
+
+		/**
+		 * Close an edge
+		 * 
+		 * @param edge
+		 *            The edge id
+		 * @return This builder
+		 */
+		public Builder close(int edge) {
+			if (edge < 0 || edge >= graph.numEdges) {
+				throw new IllegalArgumentException("No edge " + edge);
+			}
+			closed[edge >>> 6] |= 1L << edge;
+			return this;
+		}
+
+		/**
+		 * Close the roads from one intersection to another, in that
+		 * direction only
+		 * 
+		 * @param from
+		 *            Where the roads start
+		 * @param to
+		 *            Where they end
+		 * @return This builder
+		 * @throws IllegalArgumentException
+		 *             If there is no such road
+		 */
+		public Builder close(GeographicPoint from, GeographicPoint to) {
+			int u = graph.getVertexId(from);
+			int v = graph.getVertexId(to);
+			int found = 0;
+			if (u >= 0 && v >= 0) {
+				for (int e = graph.firstEdge[u]; e < graph.firstEdge[u + 1]; e++) {
+					if (graph.target[e] == v) {
+						close(e);
+						found++;
+					}
+				}
+			}
+			if (found == 0) {
+				throw new IllegalArgumentException("No road from " + from + " to " + to);
+			}
+			return this;
+		}
+
+		/**
+		 * Close a road segment, as drawn by the application, in both
+		 * directions.  Other roads between the same intersections stay
+		 * open.
+		 * 
+		 * @param segment
+		 *            The segment
+		 * @return This builder
+		 * @throws IllegalArgumentException
+		 *             If the graph has no edge along the segment
+		 */
+		public Builder close(RoadSegment segment) {
+			int found = closeAlong(segment.getPoint1(), segment.getPoint2(), segment)
+					+ closeAlong(segment.getPoint2(), segment.getPoint1(), segment);
+			if (found == 0) {
+				throw new IllegalArgumentException("No road along " + segment);
+			}
+			return this;
+		}
+
+		/**
+		 * Close road segments, in both directions
+		 * 
+		 * @param segments
+		 *            The segments
+		 * @return This builder
+		 */
+		public Builder closeAll(Collection<RoadSegment> segments) {
+			for (RoadSegment segment : segments) {
+				close(segment);
+			}
+			return this;
+		}
+
+		private int closeAlong(GeographicPoint from, GeographicPoint to, RoadSegment segment) {
+			int u = graph.getVertexId(from);
+			int v = graph.getVertexId(to);
+			int found = 0;
+			if (u >= 0 && v >= 0) {
+				for (int e = graph.firstEdge[u]; e < graph.firstEdge[u + 1]; e++) {
+					if (graph.target[e] == v && graph.weight[e] == (float) segment.getLength()
+							&& graph.getRoadName(e).equals(segment.getRoadName())) {
+						close(e);
+						found++;
+					}
+				}
+			}
+			return found;
+		}
+
+		/** Return the filter, leaving this builder free to go on */
+		public EdgeFilter build() {
+			return new EdgeFilter(graph, Arrays.copyOf(closed, closed.length));
+		}
+	}
+}
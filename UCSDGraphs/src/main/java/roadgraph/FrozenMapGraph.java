@@ -0,0 +1,1467 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import geography.GeographicPoint;
+
+/**
+ * An immutable copy of a MapGraph stored in compressed sparse row form.
+ *
+ * Vertices are numbered 0..numVertices-1 and the edges leaving vertex v
+ * are the edge ids firstEdge[v] .. firstEdge[v+1]-1.  Everything is held
+ * in primitive arrays, so a search walks a few int and float arrays
+ * instead of chasing MapNode, HashSet and MapEdge objects.
+ *
+ * Vertex ids follow the order the vertices were added to the MapGraph,
+ * and the edges of a vertex the order they were added to it.  A map file
+ * loaded the same way therefore gets the same ids in every run, which is
+ * what keeps files indexed by them (landmarks, arc flags, hub labels)
+ * valid from one start to the next.
+ *
+ * Instances are created with MapGraph.freeze().  Searches keep their
+ * state in a pooled SearchContext, so any number of threads may query
+ * the same instance concurrently.
+ *
+ */
+public class FrozenMapGraph {
+
+	/** Number of vertices (intersections) */
+	final int numVertices;
+
+	/** Number of directed edges (road segments) */
+	final int numEdges;
+
+	/** Out edges of vertex v are firstEdge[v] up to firstEdge[v+1] - 1 */
+	final int[] firstEdge;
+
+	/** Head vertex of every edge */
+	final int[] target;
+
+	/** Tail vertex of every edge */
+	final int[] source;
+
+	/**
+	 * Reverse adjacency: the edges entering vertex v are
+	 * inEdge[firstInEdge[v]] up to inEdge[firstInEdge[v+1] - 1]
+	 */
+	final int[] firstInEdge;
+	final int[] inEdge;
+
+	/** Length of every edge, in km */
+	final float[] weight;
+
+	/** Location of every vertex */
+	final double[] lat;
+	final double[] lon;
+
+	/** Road name and road type of every edge, as indexes into the tables */
+	final int[] edgeName;
+	final int[] edgeType;
+	final String[] roadNames;
+	final String[] roadTypes;
+
+	/** The class of every entry of roadTypes */
+	final RoadType[] roadClasses;
+
+	// open addressing table from a location to its vertex id, -1 when empty
+	final int[] idTable;
+
+	// k-d tree over the vertex locations, for snapping
+	private final SpatialIndex spatialIndex;
+
+	// straight line distance bound used by aStarSearch
+	private final Heuristic distanceHeuristic = new GreatCircleHeuristic(this);
+
+	// edge costs derived from weight, e.g. travel times, by what they mean
+	private final Map<Object, float[]> derivedWeights = new ConcurrentHashMap<Object, float[]>();
+
+	FrozenMapGraph(Collection<MapNode> nodes, int edgeCount) {
+		numVertices = nodes.size();
+		numEdges = edgeCount;
+		MapNode[] byId = new MapNode[numVertices];
+		for (MapNode node : nodes) {
+			byId[node.getId()] = node;
+		}
+
+		lat = new double[numVertices];
+		lon = new double[numVertices];
+		firstEdge = new int[numVertices + 1];
+		target = new int[numEdges];
+		source = new int[numEdges];
+		weight = new float[numEdges];
+		edgeName = new int[numEdges];
+		edgeType = new int[numEdges];
+
+		HashMap<String, Integer> names = new HashMap<String, Integer>();
+		HashMap<String, Integer> types = new HashMap<String, Integer>();
+		int e = 0;
+		for (int v = 0; v < numVertices; v++) {
+			MapNode node = byId[v];
+			lat[v] = node.getLocation().getX();
+			lon[v] = node.getLocation().getY();
+			firstEdge[v] = e;
+			for (MapEdge edge : node.getEdges()) {
+				source[e] = v;
+				target[e] = edge.getEndNode().getId();
+				weight[e] = (float) edge.getLength();
+				edgeName[e] = intern(names, edge.getRoadName());
+				edgeType[e] = intern(types, edge.getRoadType());
+				e++;
+			}
+		}
+		firstEdge[numVertices] = e;
+
+		// bucket the edges by their head vertex for the reverse adjacency
+		firstInEdge = new int[numVertices + 1];
+		for (int i = 0; i < numEdges; i++) {
+			firstInEdge[target[i] + 1]++;
+		}
+		for (int v = 0; v < numVertices; v++) {
+			firstInEdge[v + 1] += firstInEdge[v];
+		}
+		inEdge = new int[numEdges];
+		int[] fill = Arrays.copyOf(firstInEdge, numVertices);
+		for (int i = 0; i < numEdges; i++) {
+			inEdge[fill[target[i]]++] = i;
+		}
+		roadNames = table(names);
+		roadTypes = table(types);
+		roadClasses = new RoadType[roadTypes.length];
+		for (int i = 0; i < roadTypes.length; i++) {
+			roadClasses[i] = RoadType.of(roadTypes[i]);
+		}
+
+		idTable = new int[tableSize(numVertices)];
+		Arrays.fill(idTable, -1);
+		for (int v = 0; v < numVertices; v++) {
+			int slot = slot(lat[v], lon[v], idTable.length);
+			while (idTable[slot] != -1) {
+				slot = (slot + 1) & (idTable.length - 1);
+			}
+			idTable[slot] = v;
+		}
+		spatialIndex = new SpatialIndex(lat, lon);
+	}
+
+	private static int intern(HashMap<String, Integer> table, String s) {
+		Integer index = table.get(s);
+		if (index == null) {
+			index = table.size();
+			table.put(s, index);
+		}
+		return index;
+	}
+
+	private static String[] table(HashMap<String, Integer> interned) {
+		String[] table = new String[interned.size()];
+		for (Map.Entry<String, Integer> entry : interned.entrySet()) {
+			table[entry.getValue()] = entry.getKey();
+		}
+		return table;
+	}
+
+	private static int tableSize(int n) {
+		int size = 2;
+		while (size < 2 * n) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	// Same notion of equality as GeographicPoint.equals, which compares
+	// the bits of both coordinates.
+	static int slot(double latitude, double longitude, int tableLength) {
+		long h = Double.doubleToLongBits(latitude) * 31 + Double.doubleToLongBits(longitude);
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		return (int) h & (tableLength - 1);
+	}
+
+	/**
+	 * Get the number of vertices (road intersections) in the graph
+	 *
+	 * @return The number of vertices in the graph.
+	 */
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * Get the number of road segments in the graph
+	 *
+	 * @return The number of edges in the graph.
+	 */
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * Return the k-d tree over the vertex locations
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Find the vertex at a location or, if the location is not exactly an
+	 * intersection, the vertex nearest to it
+	 *
+	 * @param location
+	 *            The location, e.g. from a GPS fix
+	 * @return The vertex id, or -1 if the graph is empty
+	 */
+	public int snapToVertex(GeographicPoint location) {
+		int v = getVertexId(location);
+		return v >= 0 ? v : spatialIndex.nearestVertex(location.getX(), location.getY());
+	}
+
+	/**
+	 * Look up the vertex id of an intersection
+	 *
+	 * @param location
+	 *            The location of the intersection
+	 * @return The vertex id, or -1 if there is no vertex at that location
+	 */
+	public int getVertexId(GeographicPoint location) {
+		double x = location.getX();
+		double y = location.getY();
+		int slot = slot(x, y, idTable.length);
+		int v;
+		while ((v = idTable[slot]) != -1) {
+			if (Double.doubleToLongBits(lat[v]) == Double.doubleToLongBits(x)
+					&& Double.doubleToLongBits(lon[v]) == Double.doubleToLongBits(y)) {
+				return v;
+			}
+			slot = (slot + 1) & (idTable.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the location of a vertex
+	 *
+	 * @param v
+	 *            The vertex id
+	 * @return The location of the intersection
+	 */
+	public GeographicPoint getLocation(int v) {
+		return new GeographicPoint(lat[v], lon[v]);
+	}
+
+	/** Return the road name of an edge */
+	public String getRoadName(int edge) {
+		return roadNames[edgeName[edge]];
+	}
+
+	/** Return the road type of an edge */
+	public String getRoadType(int edge) {
+		return roadTypes[edgeType[edge]];
+	}
+
+	/** Return the class of the road type of an edge */
+	public RoadType getRoadClass(int edge) {
+		return roadClasses[edgeType[edge]];
+	}
+
+	/**
+	 * Find the path from start to goal using Breadth First Search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal) {
+		return bfs(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using Breadth First Search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex that is
+	 *            taken out of the queue.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return bfs(start, goal, null, nodeSearched);
+	}
+
+	/**
+	 * Find the path from start to goal using Breadth First Search, without
+	 * using closed roads
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param closed
+	 *            The closed edges of this graph, or null for none
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex that is
+	 *            taken out of the queue.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal, EdgeFilter closed,
+			Consumer<GeographicPoint> nodeSearched) {
+		checkFilter(closed);
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			int[] queue = ctx.buffer();
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = s;
+			ctx.update(s, 0, s, -1);
+			while (head < tail) {
+				int v = queue[head++];
+				nodeSearched.accept(getLocation(v));
+				if (v == t) {
+					return reconstructPath(ctx, s, t);
+				}
+				for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+					if (closed != null && closed.isClosed(e)) {
+						continue;
+					}
+					int w = target[e];
+					if (!ctx.isReached(w)) {
+						ctx.update(w, ctx.distance(v) + 1, v, e);
+						queue[tail++] = w;
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		System.out.println("No path found from " + start + " to " + goal);
+		return null;
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal) {
+		return dijkstra(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return dijkstra(start, goal, nodeSearched, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @param queueType
+	 *            The priority queue implementation to search with
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, QueueType queueType) {
+		return shortestPath(start, goal, nodeSearched, null, weight, null, queueType);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) {
+		return aStarSearch(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search, with the great
+	 * circle distance to the goal as the heuristic.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return aStarSearch(start, goal, nodeSearched, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @param queueType
+	 *            The priority queue implementation to search with
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, QueueType queueType) {
+		return shortestPath(start, goal, nodeSearched, null, weight, distanceHeuristic, queueType);
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * using Dijkstra's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, RoutingProfile profile,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, null, profile.weights(this), null, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * using A-Star search with the straight line distance at the profile's
+	 * top speed as the heuristic
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, RoutingProfile profile,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, null, profile.weights(this), profile.heuristic(this),
+				QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the k fastest loopless routes from start to goal under a routing
+	 * profile, with Yen's algorithm.  The spur searches of each round run
+	 * in parallel on the common pool.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param k
+	 *            The number of routes wanted
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @return The routes, fastest first, fewer than k if there are no
+	 *         more; or null if start or goal does not exist.
+	 */
+	public List<Route> kShortestPaths(GeographicPoint start, GeographicPoint goal, int k, RoutingProfile profile) {
+		return kShortestPaths(start, goal, k, profile, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Find the k fastest loopless routes from start to goal under a routing
+	 * profile, with Yen's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param k
+	 *            The number of routes wanted
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param pool
+	 *            The pool the spur searches run on
+	 * @return The routes, fastest first, fewer than k if there are no
+	 *         more; or null if start or goal does not exist.
+	 */
+	public List<Route> kShortestPaths(GeographicPoint start, GeographicPoint goal, int k, RoutingProfile profile,
+			ForkJoinPool pool) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be at least 1, not " + k);
+		}
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+		List<Route> routes = KShortestPaths.yen(this, profile.weights(this), s, t, k, pool);
+		if (routes.isEmpty()) {
+			System.out.println("No path found from " + start + " to " + goal);
+		}
+		return routes;
+	}
+
+	/**
+	 * Find the fastest route from start to goal under a routing profile,
+	 * and a few meaningfully different alternatives to it.  All of them
+	 * come from one forward and one backward search; see
+	 * AlternativeRoutes for what makes an alternative acceptable.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param maxAlternatives
+	 *            The most alternatives wanted
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The fastest route followed by the alternatives, best first;
+	 *         empty if there is no route, or null if start or goal does not
+	 *         exist.
+	 */
+	public List<Route> alternativeRoutes(GeographicPoint start, GeographicPoint goal, int maxAlternatives,
+			RoutingProfile profile, Consumer<GeographicPoint> nodeSearched) {
+		if (maxAlternatives < 0) {
+			throw new IllegalArgumentException("Cannot ask for " + maxAlternatives + " alternatives");
+		}
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+		List<Route> routes = AlternativeRoutes.find(this, profile.weights(this), s, t, maxAlternatives,
+				nodeSearched);
+		if (routes.isEmpty()) {
+			System.out.println("No path found from " + start + " to " + goal);
+		}
+		return routes;
+	}
+
+	/**
+	 * Find the path from start to goal using A* with landmark lower bounds
+	 * (ALT).  The bounds come from the triangle inequality over distances
+	 * precomputed to and from every landmark, and are usually much tighter
+	 * than the straight line distance.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param landmarks
+	 *            Landmarks selected on this graph for edge lengths
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> altSearch(GeographicPoint start, GeographicPoint goal, Landmarks landmarks) {
+		return altSearch(start, goal, landmarks, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using A* with landmark lower bounds
+	 * (ALT).
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param landmarks
+	 *            Landmarks selected on this graph for edge lengths
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> altSearch(GeographicPoint start, GeographicPoint goal, Landmarks landmarks,
+			Consumer<GeographicPoint> nodeSearched) {
+		if (!landmarks.isFor(this, weight)) {
+			throw new IllegalArgumentException("Landmarks were selected on a different graph");
+		}
+		return shortestPath(start, goal, nodeSearched, null, weight, landmarks, QueueType.DEFAULT);
+	}
+
+	// Dijkstra when heuristic is null, A* guided by it otherwise, over the
+	// given edge costs.
+	private List<GeographicPoint> shortestPath(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, EdgeFilter closed, float[] weights, Heuristic heuristic,
+			QueueType queueType) {
+		checkFilter(closed);
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue toExplore = ctx.queue(queueType);
+			ctx.update(s, 0, s, -1);
+			toExplore.insertOrDecrease(s, 0);
+			while (!toExplore.isEmpty()) {
+				int v = toExplore.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				nodeSearched.accept(getLocation(v));
+				if (v == t) {
+					return reconstructPath(ctx, s, t);
+				}
+				double dv = ctx.distance(v);
+				for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+					if (closed != null && closed.isClosed(e)) {
+						continue;
+					}
+					int w = target[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						double key = heuristic == null ? d : d + heuristic.lowerBound(w, t);
+						toExplore.insertOrDecrease(w, key);
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		System.out.println("No path found from " + start + " to " + goal);
+		return null;
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm, without
+	 * using closed roads
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param closed
+	 *            The closed edges of this graph, or null for none
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, EdgeFilter closed,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, closed, weight, null, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search, without using
+	 * closed roads
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param closed
+	 *            The closed edges of this graph, or null for none
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, EdgeFilter closed,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, closed, weight, distanceHeuristic, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm, skipping
+	 * the edges that are on no shortest path into the goal's cell
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param arcFlags
+	 *            Arc flags built on this graph for edge lengths
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, ArcFlags arcFlags,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, pruning(arcFlags, goal), weight, null, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search, skipping the
+	 * edges that are on no shortest path into the goal's cell
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param arcFlags
+	 *            Arc flags built on this graph for edge lengths
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, ArcFlags arcFlags,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, pruning(arcFlags, goal), weight, distanceHeuristic,
+				QueueType.DEFAULT);
+	}
+
+	// The edges arc flags let a search towards goal skip; none when goal
+	// is not a vertex, which shortestPath reports
+	private EdgeFilter pruning(ArcFlags arcFlags, GeographicPoint goal) {
+		if (!arcFlags.isFor(this, weight)) {
+			throw new IllegalArgumentException("Arc flags were built on a different graph");
+		}
+		int t = goal == null ? -1 : snapToVertex(goal);
+		return t < 0 ? null : arcFlags.pruning(this, arcFlags.getCell(t));
+	}
+
+	// Refuse filters made for another graph: their bits would close the
+	// wrong edges
+	private void checkFilter(EdgeFilter closed) {
+		if (closed != null && closed.getGraph() != this) {
+			throw new IllegalArgumentException("Edge filter was made for a different graph");
+		}
+	}
+
+	/**
+	 * Find the cheapest path from start to goal under live edge costs,
+	 * using A-Star search.  The search uses the version of the costs that
+	 * is current when it starts, whatever updates arrive while it runs.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param live
+	 *            Live costs for this graph
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the cheapest path from
+	 *         start to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> liveSearch(GeographicPoint start, GeographicPoint goal, LiveWeights live,
+			Consumer<GeographicPoint> nodeSearched) {
+		if (live.getGraph() != this) {
+			throw new IllegalArgumentException("Live costs were made for a different graph");
+		}
+		LiveWeights.Version version = live.getVersion();
+		double scale = version.getMinCostPerKm();
+		Heuristic heuristic = new GreatCircleHeuristic(this, Double.isInfinite(scale) ? 0 : scale);
+		return shortestPath(start, goal, nodeSearched, null, version.weights(), heuristic, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * paying turn costs and never taking a forbidden turn
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param turns
+	 *            The turn costs, in hours, made for this graph
+	 * @param nodeSearched
+	 *            A hook for visualization, called with the head of every
+	 *            settled edge.
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> turnAwareSearch(GeographicPoint start, GeographicPoint goal,
+			RoutingProfile profile, TurnCosts turns, Consumer<GeographicPoint> nodeSearched) {
+		return turnAwareSearch(start, goal, profile.weights(this), turns, nodeSearched);
+	}
+
+	// Dijkstra on the line graph: the search states are edges, and the
+	// successors of edge e are the edges leaving its head, each reached at
+	// the cost of the turn onto it plus its own cost.  The successors are
+	// enumerated from the CSR arrays as they are needed, so the line graph
+	// never exists.  The first settled edge into the goal ends the search.
+	List<GeographicPoint> turnAwareSearch(GeographicPoint start, GeographicPoint goal, float[] weights,
+			TurnCosts turns, Consumer<GeographicPoint> nodeSearched) {
+		if (turns.getGraph() != this) {
+			throw new IllegalArgumentException("Turn costs were made for a different graph");
+		}
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+		if (s == t) {
+			nodeSearched.accept(getLocation(s));
+			LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
+			path.add(getLocation(s));
+			return path;
+		}
+
+		SearchContext ctx = SearchContext.acquire(numEdges);
+		try {
+			VertexQueue toExplore = ctx.queue(QueueType.DEFAULT);
+			for (int e = firstEdge[s]; e < firstEdge[s + 1]; e++) {
+				if (weights[e] < ctx.distance(e)) {
+					ctx.update(e, weights[e], -1, e);
+					toExplore.insertOrDecrease(e, weights[e]);
+				}
+			}
+			while (!toExplore.isEmpty()) {
+				int in = toExplore.poll();
+				if (ctx.isSettled(in)) {
+					continue;
+				}
+				ctx.settle(in);
+				int v = target[in];
+				nodeSearched.accept(getLocation(v));
+				if (v == t) {
+					LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
+					for (int e = in; e != -1; e = ctx.parent(e)) {
+						path.addFirst(getLocation(target[e]));
+					}
+					path.addFirst(getLocation(s));
+					return path;
+				}
+				double din = ctx.distance(in);
+				for (int out = firstEdge[v]; out < firstEdge[v + 1]; out++) {
+					double d = din + turns.cost(in, out) + weights[out];
+					if (d < ctx.distance(out)) {
+						ctx.update(out, d, in, out);
+						toExplore.insertOrDecrease(out, d);
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		System.out.println("No path found from " + start + " to " + goal);
+		return null;
+	}
+
+	/**
+	 * Find the earliest arrival route from start to goal when leaving at a
+	 * given time, with time-dependent A* search.  Thanks to the FIFO
+	 * property every vertex is settled once at its earliest arrival time,
+	 * as in plain Dijkstra.  The heuristic is the straight line distance
+	 * at the profile's top speed, scaled by the smallest traffic factor.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param departureTime
+	 *            The time of leaving start, in hours since midnight
+	 * @param profile
+	 *            The mode of transport, whose travel times are the
+	 *            free-flow times
+	 * @param traffic
+	 *            The traffic profiles of this graph, or null for free flow
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The route with the time every intersection on it is reached,
+	 *         or null if there is none
+	 */
+	public TimedRoute route(GeographicPoint start, GeographicPoint goal, double departureTime,
+			RoutingProfile profile, TrafficProfiles traffic, Consumer<GeographicPoint> nodeSearched) {
+		float[] weights = profile.weights(this);
+		double scale = profile.getMaxSpeed() > 0 ? 1 / profile.getMaxSpeed() : 0;
+		if (traffic != null) {
+			if (traffic.getGraph() != this) {
+				throw new IllegalArgumentException("Traffic profiles were made for a different graph");
+			}
+			traffic.checkFifo(weights);
+			scale *= traffic.getMinFactor();
+		}
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue toExplore = ctx.queue(QueueType.DEFAULT);
+			ctx.update(s, departureTime, s, -1);
+			toExplore.insertOrDecrease(s, departureTime);
+			while (!toExplore.isEmpty()) {
+				int v = toExplore.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				nodeSearched.accept(getLocation(v));
+				if (v == t) {
+					LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
+					int length = 1;
+					for (int w = t; w != s; w = ctx.parent(w)) {
+						length++;
+					}
+					double[] times = new double[length];
+					for (int w = t, i = length - 1; i >= 0; w = ctx.parent(w), i--) {
+						path.addFirst(getLocation(w));
+						times[i] = ctx.distance(w);
+					}
+					return new TimedRoute(path, times);
+				}
+				double arrival = ctx.distance(v);
+				for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+					int w = target[e];
+					double d = arrival + (traffic == null ? weights[e] : traffic.travelTime(e, weights[e], arrival));
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						toExplore.insertOrDecrease(w, d + greatCircle(w, t) * scale);
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		System.out.println("No path found from " + start + " to " + goal);
+		return null;
+	}
+
+	/**
+	 * Find the path from start to goal with bidirectional Dijkstra
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal) {
+		return bidirectionalDijkstra(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal with bidirectional Dijkstra.  One
+	 * search grows forward from start, the other backward from goal over
+	 * the reverse adjacency, and the side with the smaller queue key is
+	 * expanded next.  mu is the shortest start-goal distance seen through
+	 * any vertex reached by both searches; once the two smallest queue keys
+	 * add up to at least mu no shorter path can exist.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex settled
+	 *            by either search.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext forward = SearchContext.acquire(numVertices);
+		SearchContext backward = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue forwardQueue = forward.queue(QueueType.DEFAULT);
+			VertexQueue backwardQueue = backward.queue(QueueType.DEFAULT);
+			forward.update(s, 0, s, -1);
+			forwardQueue.insertOrDecrease(s, 0);
+			backward.update(t, 0, t, -1);
+			backwardQueue.insertOrDecrease(t, 0);
+
+			double mu = s == t ? 0 : Double.POSITIVE_INFINITY;
+			int meet = s == t ? s : -1;
+			while (true) {
+				double topForward = forwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : forwardQueue.peekKey();
+				double topBackward = backwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : backwardQueue.peekKey();
+				if (topForward + topBackward >= mu) {
+					break;
+				}
+				if (topForward <= topBackward) {
+					int v = forwardQueue.poll();
+					if (forward.isSettled(v)) {
+						continue;
+					}
+					forward.settle(v);
+					nodeSearched.accept(getLocation(v));
+					double dv = forward.distance(v);
+					for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+						int w = target[e];
+						double d = dv + weight[e];
+						if (d < forward.distance(w)) {
+							forward.update(w, d, v, e);
+							forwardQueue.insertOrDecrease(w, d);
+							if (d + backward.distance(w) < mu) {
+								mu = d + backward.distance(w);
+								meet = w;
+							}
+						}
+					}
+				} else {
+					int v = backwardQueue.poll();
+					if (backward.isSettled(v)) {
+						continue;
+					}
+					backward.settle(v);
+					nodeSearched.accept(getLocation(v));
+					double dv = backward.distance(v);
+					for (int i = firstInEdge[v]; i < firstInEdge[v + 1]; i++) {
+						int e = inEdge[i];
+						int u = source[e];
+						double d = dv + weight[e];
+						if (d < backward.distance(u)) {
+							backward.update(u, d, v, e);
+							backwardQueue.insertOrDecrease(u, d);
+							if (d + forward.distance(u) < mu) {
+								mu = d + forward.distance(u);
+								meet = u;
+							}
+						}
+					}
+				}
+			}
+			if (meet < 0) {
+				System.out.println("No path found from " + start + " to " + goal);
+				return null;
+			}
+
+			// start .. meet from the forward parents, then meet .. goal by
+			// following the backward parents, which point towards the goal
+			List<GeographicPoint> path = reconstructPath(forward, s, meet);
+			for (int v = meet; v != t;) {
+				v = backward.parent(v);
+				path.add(getLocation(v));
+			}
+			return path;
+		} finally {
+			backward.release();
+			forward.release();
+		}
+	}
+
+	/**
+	 * Find the path from start to goal with bidirectional A*, guided by
+	 * the straight line distance
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex settled
+	 *            by either search.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return bidirectionalAStar(start, goal, distanceHeuristic, nodeSearched);
+	}
+
+	/**
+	 * Find the path from start to goal with bidirectional A*.
+	 * 
+	 * Both searches use the average potential
+	 * p(v) = (h(v, goal) - h(start, v)) / 2, the forward search adding it
+	 * to its distances and the backward search subtracting it.  The two
+	 * searches then see the same reduced edge costs, so each is a
+	 * Dijkstra search on one consistent graph and the stopping rule of
+	 * bidirectionalDijkstra stays correct: stop once the two smallest
+	 * queue keys add up to at least mu.
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param heuristic
+	 *            Consistent lower bounds on the edge lengths of this graph,
+	 *            e.g. a GreatCircleHeuristic or Landmarks
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex settled
+	 *            by either search.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal,
+			Heuristic heuristic, Consumer<GeographicPoint> nodeSearched) {
+		if (heuristic instanceof Landmarks && !((Landmarks) heuristic).isFor(this, weight)) {
+			throw new IllegalArgumentException("Landmarks were selected on a different graph");
+		}
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext forward = SearchContext.acquire(numVertices);
+		SearchContext backward = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue forwardQueue = forward.queue(QueueType.DEFAULT);
+			VertexQueue backwardQueue = backward.queue(QueueType.DEFAULT);
+			forward.update(s, 0, s, -1);
+			forwardQueue.insertOrDecrease(s, potential(heuristic, s, t, s));
+			backward.update(t, 0, t, -1);
+			backwardQueue.insertOrDecrease(t, -potential(heuristic, s, t, t));
+
+			double mu = s == t ? 0 : Double.POSITIVE_INFINITY;
+			int meet = s == t ? s : -1;
+			while (true) {
+				double topForward = forwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : forwardQueue.peekKey();
+				double topBackward = backwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : backwardQueue.peekKey();
+				if (topForward + topBackward >= mu) {
+					break;
+				}
+				if (topForward <= topBackward) {
+					int v = forwardQueue.poll();
+					if (forward.isSettled(v)) {
+						continue;
+					}
+					forward.settle(v);
+					nodeSearched.accept(getLocation(v));
+					double dv = forward.distance(v);
+					for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+						int w = target[e];
+						double d = dv + weight[e];
+						if (d < forward.distance(w)) {
+							forward.update(w, d, v, e);
+							forwardQueue.insertOrDecrease(w, d + potential(heuristic, s, t, w));
+							if (d + backward.distance(w) < mu) {
+								mu = d + backward.distance(w);
+								meet = w;
+							}
+						}
+					}
+				} else {
+					int v = backwardQueue.poll();
+					if (backward.isSettled(v)) {
+						continue;
+					}
+					backward.settle(v);
+					nodeSearched.accept(getLocation(v));
+					double dv = backward.distance(v);
+					for (int i = firstInEdge[v]; i < firstInEdge[v + 1]; i++) {
+						int e = inEdge[i];
+						int u = source[e];
+						double d = dv + weight[e];
+						if (d < backward.distance(u)) {
+							backward.update(u, d, v, e);
+							backwardQueue.insertOrDecrease(u, d - potential(heuristic, s, t, u));
+							if (d + forward.distance(u) < mu) {
+								mu = d + forward.distance(u);
+								meet = u;
+							}
+						}
+					}
+				}
+			}
+			if (meet < 0) {
+				System.out.println("No path found from " + start + " to " + goal);
+				return null;
+			}
+
+			List<GeographicPoint> path = reconstructPath(forward, s, meet);
+			for (int v = meet; v != t;) {
+				v = backward.parent(v);
+				path.add(getLocation(v));
+			}
+			return path;
+		} finally {
+			backward.release();
+			forward.release();
+		}
+	}
+
+	// The average of the forward potential towards t and the reverse of
+	// the backward potential towards s
+	private static double potential(Heuristic heuristic, int s, int t, int v) {
+		return (heuristic.lowerBound(v, t) - heuristic.lowerBound(s, v)) / 2;
+	}
+
+	/**
+	 * Find every vertex within budget of s.  This is Dijkstra that stops
+	 * as soon as the smallest queue key exceeds the budget, so it only
+	 * touches the vertices inside the budget and their neighbours.
+	 *
+	 * An edge from a reachable vertex v to a vertex w outside the budget is
+	 * a boundary edge; its budget point lies (budget - cost(v)) / cost(e)
+	 * of the way from v to w, interpolated linearly between the two ends.
+	 *
+	 * @param s
+	 *            The start vertex
+	 * @param budget
+	 *            The largest cost to include
+	 * @param weights
+	 *            The cost of every edge
+	 * @param boundary
+	 *            Whether to collect the boundary edges
+	 * @return The reachable set
+	 */
+	ReachableSet reachable(int s, double budget, float[] weights, boolean boundary) {
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			int[] settled = ctx.buffer();
+			int count = 0;
+			ctx.update(s, 0, s, -1);
+			queue.insertOrDecrease(s, 0);
+			while (!queue.isEmpty() && queue.peekKey() <= budget) {
+				int v = queue.poll();
+				ctx.settle(v);
+				settled[count++] = v;
+				double dv = ctx.distance(v);
+				for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+					int w = target[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						queue.insertOrDecrease(w, d);
+					}
+				}
+			}
+
+			int[] vertices = Arrays.copyOf(settled, count);
+			double[] costs = new double[count];
+			for (int i = 0; i < count; i++) {
+				costs[i] = ctx.distance(vertices[i]);
+			}
+			if (!boundary) {
+				return new ReachableSet(this, vertices, costs, null, null, null);
+			}
+
+			int boundaryCount = 0;
+			for (int v : vertices) {
+				for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+					if (!ctx.isSettled(target[e])) {
+						boundaryCount++;
+					}
+				}
+			}
+			int[] edges = new int[boundaryCount];
+			double[] latitudes = new double[boundaryCount];
+			double[] longitudes = new double[boundaryCount];
+			int b = 0;
+			for (int i = 0; i < count; i++) {
+				int v = vertices[i];
+				for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+					int w = target[e];
+					if (ctx.isSettled(w)) {
+						continue;
+					}
+					double fraction = weights[e] > 0 ? Math.min(1, (budget - costs[i]) / weights[e]) : 0;
+					edges[b] = e;
+					latitudes[b] = lat[v] + fraction * (lat[w] - lat[v]);
+					longitudes[b] = lon[v] + fraction * (lon[w] - lon[v]);
+					b++;
+				}
+			}
+			return new ReachableSet(this, vertices, costs, edges, latitudes, longitudes);
+		} finally {
+			ctx.release();
+		}
+	}
+
+	/**
+	 * One-to-all Dijkstra from s.  Every entry of dist is overwritten, with
+	 * infinity for vertices that cannot be reached.  When backward is set
+	 * the search follows edges against their direction, so dist[v] becomes
+	 * the distance from v to s instead.
+	 *
+	 * @param s
+	 *            The root vertex
+	 * @param weights
+	 *            The cost of every edge
+	 * @param backward
+	 *            Whether to search the reverse graph
+	 * @param dist
+	 *            Receives the distance of every vertex
+	 * @param parent
+	 *            If not null, receives the tree parent of every reached vertex
+	 *            and -1 for the rest
+	 * @param order
+	 *            If not null, receives the vertices in the order they were
+	 *            settled
+	 * @return The number of vertices settled
+	 */
+	int shortestPathTree(int s, float[] weights, boolean backward, float[] dist, int[] parent, int[] order) {
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		if (parent != null) {
+			Arrays.fill(parent, -1);
+		}
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			ctx.update(s, 0, s, -1);
+			queue.insertOrDecrease(s, 0);
+			int settled = 0;
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				double dv = ctx.distance(v);
+				dist[v] = (float) dv;
+				if (parent != null) {
+					parent[v] = ctx.parent(v);
+				}
+				if (order != null) {
+					order[settled] = v;
+				}
+				settled++;
+				int begin = backward ? firstInEdge[v] : firstEdge[v];
+				int end = backward ? firstInEdge[v + 1] : firstEdge[v + 1];
+				for (int i = begin; i < end; i++) {
+					int e = backward ? inEdge[i] : i;
+					int w = backward ? source[e] : target[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						queue.insertOrDecrease(w, d);
+					}
+				}
+			}
+			if (parent != null) {
+				parent[s] = -1;
+			}
+			return settled;
+		} finally {
+			ctx.release();
+		}
+	}
+
+	/**
+	 * A checksum of the topology of this graph and the given edge costs,
+	 * stored with precomputed data so stale files can be detected.
+	 */
+	long fingerprint(float[] weights) {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		buffer.putInt(numVertices).putInt(numEdges);
+		for (int v = 0; v <= numVertices; v++) {
+			if (buffer.remaining() < 4) {
+				crc.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putInt(firstEdge[v]);
+		}
+		for (int e = 0; e < numEdges; e++) {
+			if (buffer.remaining() < 8) {
+				crc.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putInt(target[e]).putFloat(weights[e]);
+		}
+		crc.update(buffer.array(), 0, buffer.position());
+		return crc.getValue();
+	}
+
+	/**
+	 * Return the edge costs stored under key, computing them on first use.
+	 * They live as long as this graph, so they never outlive a change to
+	 * the MapGraph it was frozen from.
+	 */
+	float[] derivedWeights(Object key, Supplier<float[]> compute) {
+		return derivedWeights.computeIfAbsent(key, (k) -> compute.get());
+	}
+
+	/** Great circle distance in km between two vertices */
+	double greatCircle(int v, int w) {
+		return GeographicPoint.distance(lat[v], lon[v], lat[w], lon[w]);
+	}
+
+	// Resolve (or snap) a location to a vertex id, reporting failure the way
+	// MapGraph does
+	int findVertex(GeographicPoint location, String role) {
+		if (location == null)
+			throw new NullPointerException("Cannot find route from or to null node");
+		int v = snapToVertex(location);
+		if (v < 0) {
+			System.err.println(role + " node " + location + " does not exist");
+		}
+		return v;
+	}
+
+	// Walk the parents recorded in the context back from goal to start
+	List<GeographicPoint> reconstructPath(SearchContext ctx, int start, int goal) {
+		LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
+		int current = goal;
+		while (current != start) {
+			path.addFirst(getLocation(current));
+			current = ctx.parent(current);
+		}
+		path.addFirst(getLocation(start));
+		return path;
+	}
+
+}
@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A split of the vertices of a FrozenMapGraph into cells of about equal
+ * size with few edges between them, for anything that works cell by cell:
+ * arc flags, the cells of a MultiLevelOverlay, shards of the graph, or a
+ * vertex order that keeps cells together in memory.
+ *
+ * The cells come from multilevel partitioning (see MultilevelPartitioner)
+ * and hold at most (1 + IMBALANCE) times the average number of vertices,
+ * rounded down but never below the average rounded up, unless the graph
+ * makes that impossible.  Cells are numbered from 0 and
+ * none is empty.  A partition is immutable.
+ *
+ */
+public final class GraphPartition {
+
+	/** How much bigger than the average a cell may get */
+	public static final double IMBALANCE = 0.1;
+
+	private final FrozenMapGraph graph;
+	private final int[] cell;
+	private final int cellCount;
+	private final int[] cellSize;
+	private final int cutEdges;
+
+	private GraphPartition(FrozenMapGraph graph, int[] part) {
+		this.graph = graph;
+		int n = graph.numVertices;
+
+		// number the cells that got vertices in order of their first vertex
+		int[] renumber = new int[n];
+		Arrays.fill(renumber, -1);
+		int count = 0;
+		cell = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (renumber[part[v]] < 0) {
+				renumber[part[v]] = count++;
+			}
+			cell[v] = renumber[part[v]];
+		}
+		cellCount = count;
+
+		cellSize = new int[count];
+		int cut = 0;
+		for (int v = 0; v < n; v++) {
+			cellSize[cell[v]]++;
+			for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+				if (cell[graph.target[e]] != cell[v]) {
+					cut++;
+				}
+			}
+		}
+		cutEdges = cut;
+	}
+
+	/**
+	 * Partition a graph on the common pool
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param targetCellSize
+	 *            The number of vertices a cell should have
+	 * @return The partition
+	 */
+	public static GraphPartition compute(FrozenMapGraph graph, int targetCellSize) {
+		return compute(graph, targetCellSize, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Partition a graph into cells of about targetCellSize vertices, as few
+	 * as that takes
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param targetCellSize
+	 *            The number of vertices a cell should have
+	 * @param pool
+	 *            The pool coarsening and refinement run on
+	 * @return The partition
+	 */
+	public static GraphPartition compute(FrozenMapGraph graph, int targetCellSize, ForkJoinPool pool) {
+		MultilevelPartitioner.Level level = MultilevelPartitioner.undirected(graph, pool);
+		return new GraphPartition(graph, split(level, targetCellSize, pool));
+	}
+
+	/**
+	 * Group the cells of this partition into bigger ones, each a union of
+	 * cells of this one, by partitioning the graph of cells
+	 *
+	 * @param targetCellSize
+	 *            The number of vertices a bigger cell should have
+	 * @param pool
+	 *            The pool coarsening and refinement run on
+	 * @return The partition into bigger cells
+	 */
+	public GraphPartition merge(int targetCellSize, ForkJoinPool pool) {
+		MultilevelPartitioner.Level level = MultilevelPartitioner.contract(
+				MultilevelPartitioner.undirected(graph, pool), cell, cellCount, pool);
+		int[] group = split(level, targetCellSize, pool);
+		int[] part = new int[graph.numVertices];
+		for (int v = 0; v < part.length; v++) {
+			part[v] = group[cell[v]];
+		}
+		return new GraphPartition(graph, part);
+	}
+
+	private static int[] split(MultilevelPartitioner.Level level, int targetCellSize, ForkJoinPool pool) {
+		if (targetCellSize < 1) {
+			throw new IllegalArgumentException("Cannot make cells of " + targetCellSize + " vertices");
+		}
+		int total = level.totalWeight();
+		int cells = Math.max(1, Math.min(level.n, (total + targetCellSize - 1) / targetCellSize));
+		int maxCellWeight = Math.max((total + cells - 1) / cells, (int) ((1 + IMBALANCE) * total / cells));
+		return MultilevelPartitioner.partition(level, cells, maxCellWeight, pool);
+	}
+
+	/** Return the graph this partition is of */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	/** Return the number of cells */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/** Return the cell of vertex v */
+	public int getCell(int v) {
+		return cell[v];
+	}
+
+	/** Return the number of vertices in cell c */
+	public int getCellSize(int c) {
+		return cellSize[c];
+	}
+
+	/** Return the number of edges whose ends are in different cells */
+	public int getCutEdges() {
+		return cutEdges;
+	}
+
+	/**
+	 * Return the size of the biggest cell over the average size, 1 for a
+	 * perfectly balanced partition
+	 */
+	public double getBalance() {
+		int biggest = 0;
+		for (int size : cellSize) {
+			biggest = Math.max(biggest, size);
+		}
+		return cellCount == 0 ? 1 : biggest * (double) cellCount / graph.numVertices;
+	}
+
+	/** Return the cell of every vertex, in a new array indexed by vertex id */
+	public int[] toArray() {
+		return cell.clone();
+	}
+
+	int[] cells() {
+		return cell;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d cells, %d cut edges, balance %.3f", cellCount, cutEdges, getBalance());
+	}
+}
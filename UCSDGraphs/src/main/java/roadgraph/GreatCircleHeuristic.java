@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * The straight line (great circle) distance between two vertices, which
+ * can never be longer than a road between them.  The distance is scaled
+ * by a constant so the same bound works for costs other than km, e.g.
+ * 1 / (top speed) for travel times.
+ *
+ */
+public class GreatCircleHeuristic implements Heuristic {
+
+	private final FrozenMapGraph graph;
+	private final double scale;
+
+	/**
+	 * Create a heuristic in km
+	 *
+	 * @param graph
+	 *            The graph whose vertices are measured
+	 */
+	public GreatCircleHeuristic(FrozenMapGraph graph) {
+		this(graph, 1.0);
+	}
+
+	/**
+	 * Create a heuristic in units of scale per km
+	 *
+	 * @param graph
+	 *            The graph whose vertices are measured
+	 * @param scale
+	 *            What one km of straight line distance costs at least
+	 */
+	public GreatCircleHeuristic(FrozenMapGraph graph, double scale) {
+		this.graph = graph;
+		this.scale = scale;
+	}
+
+	public double lowerBound(int from, int to) {
+		return graph.greatCircle(from, to) * scale;
+	}
+}
@@ -0,0 +1,25 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * A lower bound on the shortest path cost between two vertices of a
+ * FrozenMapGraph, used to guide A* style searches.  A search is only
+ * guaranteed to find shortest paths if the bound never overestimates.
+ *
+ */
+public interface Heuristic {
+
+	/**
+	 * Return a lower bound on the cost of the shortest path from one vertex
+	 * to another
+	 *
+	 * @param from
+	 *            The vertex id the path starts at
+	 * @param to
+	 *            The vertex id the path ends at
+	 * @return A cost no larger than the true shortest path cost
+	 */
+	double lowerBound(int from, int to);
+}
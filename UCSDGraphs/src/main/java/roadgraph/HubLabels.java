@@ -0,0 +1,463 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A hub labeling distance oracle: shortest path costs between any two
+ * vertices without a search.
+ *
+ * Every vertex u has an out label, a list of (hub, d(u, hub)), and an in
+ * label, a list of (hub, d(hub, u)), such that some shortest u-v path
+ * passes through a hub both labels share.  d(u, v) is then the smallest
+ * d(u, h) + d(h, v) over the common hubs, found by a merge join of the two
+ * labels sorted by hub.
+ *
+ * The labels are built by pruned labeling from a vertex order, most
+ * important first (the contraction order of a ContractionHierarchy works
+ * well).  Each vertex in turn runs a forward and a backward Dijkstra
+ * search that adds it as a hub to the labels of the vertices it reaches,
+ * but stops at every vertex whose distance the labels built so far
+ * already give.  Hubs are numbered by their position in the order, so
+ * labels come out sorted.
+ *
+ * Labels are compressed: each entry is the hub's difference to the
+ * previous hub as a variable length integer, followed by the distance as
+ * a float.  The same layout is used in memory and on disk, so a saved
+ * index is memory-mapped by open() and queried in place:
+ *
+ * <pre>
+ * header   magic, version, vertex count, 0, graph fingerprint, label bytes
+ * offsets  int[n + 1] out label starts, int[n + 1] in label starts
+ * labels   the label entries
+ * </pre>
+ *
+ * little endian.  Instances are immutable and safe to share between
+ * threads.
+ *
+ */
+public class HubLabels {
+
+	/** Extension of the file the labels are saved to, next to the map */
+	public static final String FILE_EXTENSION = ".hubs";
+
+	private static final int MAGIC = 0x4c425548; // "HUBL"
+	private static final int VERSION = 1;
+	// magic, version, vertex count, padding, fingerprint, label bytes
+	private static final int HEADER_BYTES = 32;
+
+	private final int numVertices;
+	private final long fingerprint;
+
+	// out label of v: offsets[v] .. offsets[v+1] - 1 of labels; in label of
+	// v: offsets[n+1+v] .. offsets[n+2+v] - 1
+	private final IntBuffer offsets;
+	private final ByteBuffer labels;
+
+	// the last graph and costs isFor() accepted, to skip the checksum
+	private volatile FrozenMapGraph checkedGraph;
+	private volatile float[] checkedWeights;
+
+	private HubLabels(int numVertices, long fingerprint, IntBuffer offsets, ByteBuffer labels) {
+		this.numVertices = numVertices;
+		this.fingerprint = fingerprint;
+		this.offsets = offsets;
+		this.labels = labels;
+	}
+
+	/**
+	 * Build labels in the contraction order of a hierarchy, for the costs
+	 * it was built for
+	 * 
+	 * @param hierarchy
+	 *            The hierarchy
+	 * @return The labels
+	 */
+	public static HubLabels build(ContractionHierarchy hierarchy) {
+		FrozenMapGraph graph = hierarchy.getGraph();
+		int n = graph.numVertices;
+		int[] order = new int[n];
+		for (int v = 0; v < n; v++) {
+			order[n - 1 - hierarchy.rank[v]] = v;
+		}
+		return build(graph, hierarchy.getWeights(), order);
+	}
+
+	/**
+	 * Build labels by pruned labeling
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge
+	 * @param order
+	 *            Every vertex once, most important first
+	 * @return The labels
+	 */
+	static HubLabels build(FrozenMapGraph graph, float[] weights, int[] order) {
+		int n = graph.numVertices;
+		Label[] out = new Label[n];
+		Label[] in = new Label[n];
+		for (int v = 0; v < n; v++) {
+			out[v] = new Label();
+			in[v] = new Label();
+		}
+		// the root's own label, by hub, for the pruning test
+		double[] rootLabel = new double[n];
+		Arrays.fill(rootLabel, Double.POSITIVE_INFINITY);
+		for (int hub = 0; hub < n; hub++) {
+			int root = order[hub];
+			prunedSearch(graph, weights, root, hub, true, out[root], in, rootLabel);
+			prunedSearch(graph, weights, root, hub, false, in[root], out, rootLabel);
+		}
+
+		// encode
+		int[] starts = new int[2 * n + 2];
+		ByteArray bytes = new ByteArray();
+		for (int side = 0; side < 2; side++) {
+			Label[] labels = side == 0 ? out : in;
+			for (int v = 0; v < n; v++) {
+				starts[side * (n + 1) + v] = bytes.size;
+				labels[v].encode(bytes);
+			}
+			starts[side * (n + 1) + n] = bytes.size;
+		}
+		ByteBuffer encoded = ByteBuffer.wrap(Arrays.copyOf(bytes.data, bytes.size)).order(ByteOrder.LITTLE_ENDIAN);
+		return new HubLabels(n, graph.fingerprint(weights), IntBuffer.wrap(starts), encoded);
+	}
+
+	// Dijkstra from root, forward or backward, adding (hub, distance) to
+	// the labels of the vertices whose distance the labels do not give yet
+	private static void prunedSearch(FrozenMapGraph graph, float[] weights, int root, int hub, boolean forward,
+			Label rootSide, Label[] reached, double[] rootLabel) {
+		for (int i = 0; i < rootSide.size; i++) {
+			rootLabel[rootSide.hubs[i]] = rootSide.dists[i];
+		}
+		SearchContext ctx = SearchContext.acquire(graph.numVertices);
+		try {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			ctx.update(root, 0, root, -1);
+			queue.insertOrDecrease(root, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				double dv = ctx.distance(v);
+				Label label = reached[v];
+				boolean covered = false;
+				for (int i = 0; i < label.size; i++) {
+					if (rootLabel[label.hubs[i]] + label.dists[i] <= dv) {
+						covered = true;
+						break;
+					}
+				}
+				if (covered) {
+					continue;
+				}
+				label.add(hub, dv);
+				int end = forward ? graph.firstEdge[v + 1] : graph.firstInEdge[v + 1];
+				for (int i = forward ? graph.firstEdge[v] : graph.firstInEdge[v]; i < end; i++) {
+					int e = forward ? i : graph.inEdge[i];
+					int w = forward ? graph.target[e] : graph.source[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						queue.insertOrDecrease(w, d);
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		for (int i = 0; i < rootSide.size; i++) {
+			rootLabel[rootSide.hubs[i]] = Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/** Return the number of vertices */
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/** Return the size of the compressed labels in bytes */
+	public int getLabelBytes() {
+		return labels.capacity();
+	}
+
+	/** Return the average number of hubs in a label */
+	public double getAverageLabelSize() {
+		long entries = 0;
+		for (int side = 0; side < 2; side++) {
+			int base = side * (numVertices + 1);
+			for (int v = 0; v < numVertices; v++) {
+				for (int p = offsets.get(base + v), end = offsets.get(base + v + 1); p < end;) {
+					while (labels.get(p++) < 0) {
+					}
+					p += 4;
+					entries++;
+				}
+			}
+		}
+		return numVertices == 0 ? 0 : entries / (2.0 * numVertices);
+	}
+
+	/**
+	 * Return the cost of the shortest path from u to v
+	 * 
+	 * @param u
+	 *            The start vertex id
+	 * @param v
+	 *            The goal vertex id
+	 * @return The cost, or infinity if v cannot be reached from u
+	 */
+	public double distance(int u, int v) {
+		int p = offsets.get(u);
+		int pEnd = offsets.get(u + 1);
+		int q = offsets.get(numVertices + 1 + v);
+		int qEnd = offsets.get(numVertices + 2 + v);
+		double best = Double.POSITIVE_INFINITY;
+		int hubP = 0;
+		int hubQ = 0;
+		if (p < pEnd && q < qEnd) {
+			// read the first hub of each label
+			long read = readVarint(labels, p);
+			hubP = (int) read;
+			p = (int) (read >>> 32);
+			read = readVarint(labels, q);
+			hubQ = (int) read;
+			q = (int) (read >>> 32);
+			while (true) {
+				if (hubP == hubQ) {
+					double d = labels.getFloat(p) + (double) labels.getFloat(q);
+					if (d < best) {
+						best = d;
+					}
+				}
+				if (hubP <= hubQ) {
+					p += 4;
+					if (p >= pEnd) {
+						break;
+					}
+					read = readVarint(labels, p);
+					hubP += (int) read;
+					p = (int) (read >>> 32);
+				} else {
+					q += 4;
+					if (q >= qEnd) {
+						break;
+					}
+					read = readVarint(labels, q);
+					hubQ += (int) read;
+					q = (int) (read >>> 32);
+				}
+			}
+		}
+		return best;
+	}
+
+	// The variable length integer at position p, in the low 32 bits, and
+	// the position after it, in the high 32 bits
+	private static long readVarint(ByteBuffer buffer, int p) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(p++);
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return ((long) p << 32) | (value & 0xffffffffL);
+	}
+
+	/** Return whether these labels were built for the given graph and costs */
+	boolean isFor(FrozenMapGraph graph, float[] weights) {
+		if (graph == checkedGraph && weights == checkedWeights) {
+			return true;
+		}
+		if (graph.numVertices != numVertices || graph.fingerprint(weights) != fingerprint) {
+			return false;
+		}
+		checkedWeights = weights;
+		checkedGraph = graph;
+		return true;
+	}
+
+	/**
+	 * Write the labels to a file.  The file is written under a temporary
+	 * name and then renamed, so a process mapping the old file keeps a
+	 * consistent view.
+	 * 
+	 * @param fileName
+	 *            The file to write
+	 * @throws IOException
+	 *             If writing fails
+	 */
+	public void save(String fileName) throws IOException {
+		int offsetCount = offsets.capacity();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 4 * offsetCount).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(numVertices).putInt(0).putLong(fingerprint)
+				.putLong(labels.capacity());
+		for (int i = 0; i < offsetCount; i++) {
+			header.putInt(offsets.get(i));
+		}
+		header.flip();
+		ByteBuffer body = labels.duplicate();
+		body.clear();
+
+		Path path = Paths.get(fileName).toAbsolutePath();
+		Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				while (body.hasRemaining()) {
+					channel.write(body);
+				}
+			} finally {
+				channel.close();
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Map labels written by save().  Nothing is read up front; queries
+	 * read the labels they need from the page cache.
+	 * 
+	 * @param fileName
+	 *            The file to map
+	 * @return The labels
+	 * @throws IOException
+	 *             If the file cannot be mapped or is not a label file of
+	 *             this version
+	 */
+	public static HubLabels open(String fileName) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(fileName + " is not a hub label file of version " + VERSION);
+			}
+			int n = header.getInt();
+			header.getInt();
+			long fingerprint = header.getLong();
+			long labelBytes = header.getLong();
+			long offsetBytes = 4L * (2L * n + 2);
+			if (n < 0 || labelBytes < 0 || labelBytes > Integer.MAX_VALUE
+					|| channel.size() < HEADER_BYTES + offsetBytes + labelBytes) {
+				throw new IOException(fileName + " is truncated or corrupt");
+			}
+			MappedByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, offsetBytes);
+			offsets.order(ByteOrder.LITTLE_ENDIAN);
+			MappedByteBuffer labels = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + offsetBytes,
+					labelBytes);
+			labels.order(ByteOrder.LITTLE_ENDIAN);
+			// the mappings stay valid after the channel is closed
+			return new HubLabels(n, fingerprint, offsets.asIntBuffer(), labels);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Map the labels saved next to a map file if they still match the
+	 * graph, otherwise build new ones in the order of a contraction
+	 * hierarchy for the edge lengths, save them there and map them.
+	 * 
+	 * @param mapFile
+	 *            The map file the graph was loaded from
+	 * @param graph
+	 *            The graph
+	 * @return The labels
+	 */
+	public static HubLabels openOrBuild(String mapFile, FrozenMapGraph graph) {
+		String fileName = mapFile + FILE_EXTENSION;
+		if (Files.exists(Paths.get(fileName))) {
+			try {
+				HubLabels saved = open(fileName);
+				if (saved.isFor(graph, graph.weight)) {
+					return saved;
+				}
+			} catch (IOException e) {
+				System.err.println("Problem loading hub label file: " + fileName);
+			}
+		}
+		HubLabels labels = build(ContractionHierarchy.build(graph));
+		try {
+			labels.save(fileName);
+			return open(fileName);
+		} catch (IOException e) {
+			System.err.println("Problem saving hub label file: " + fileName);
+		}
+		return labels;
+	}
+
+	// One label while it is built
+	private static final class Label {
+		int[] hubs = new int[4];
+		double[] dists = new double[4];
+		int size;
+
+		void add(int hub, double dist) {
+			if (size == hubs.length) {
+				hubs = Arrays.copyOf(hubs, size * 2);
+				dists = Arrays.copyOf(dists, size * 2);
+			}
+			hubs[size] = hub;
+			dists[size] = dist;
+			size++;
+		}
+
+		void encode(ByteArray out) {
+			int previous = 0;
+			for (int i = 0; i < size; i++) {
+				int delta = hubs[i] - previous;
+				previous = hubs[i];
+				while ((delta & ~0x7f) != 0) {
+					out.add((byte) ((delta & 0x7f) | 0x80));
+					delta >>>= 7;
+				}
+				out.add((byte) delta);
+				int bits = Float.floatToIntBits((float) dists[i]);
+				for (int k = 0; k < 4; k++) {
+					out.add((byte) (bits >>> (8 * k)));
+				}
+			}
+		}
+	}
+
+	private static final class ByteArray {
+		byte[] data = new byte[64];
+		int size;
+
+		void add(byte b) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = b;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * An array based d-ary min heap of vertex ids that remembers the position
+ * of every vertex, so a key can be lowered in place instead of adding a
+ * duplicate entry.  A wider heap is shallower, which makes the frequent
+ * decrease-key (sift up) cheaper at the price of a slightly dearer poll.
+ *
+ */
+final class IndexedDaryHeap implements VertexQueue {
+
+	private final int arity;
+
+	// heap[i] is the vertex at heap slot i, keys[i] its key
+	private final int[] heap;
+	private final double[] keys;
+
+	// position[v] is the heap slot of v, or -1 when v is not queued
+	private final int[] position;
+
+	private int size;
+
+	IndexedDaryHeap(int arity, int capacity) {
+		this.arity = arity;
+		heap = new int[capacity];
+		keys = new double[capacity];
+		position = new int[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void insertOrDecrease(int v, double key) {
+		int i = position[v];
+		if (i == -1) {
+			i = size++;
+		} else if (key >= keys[i]) {
+			return;
+		}
+		siftUp(i, v, key);
+	}
+
+	public double peekKey() {
+		return keys[0];
+	}
+
+	public int poll() {
+		int top = heap[0];
+		position[top] = -1;
+		size--;
+		if (size > 0) {
+			siftDown(0, heap[size], keys[size]);
+		}
+		return top;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	// Move v with the given key up from slot i until its parent is smaller
+	private void siftUp(int i, int v, double key) {
+		while (i > 0) {
+			int parent = (i - 1) / arity;
+			if (keys[parent] <= key) {
+				break;
+			}
+			place(i, heap[parent], keys[parent]);
+			i = parent;
+		}
+		place(i, v, key);
+	}
+
+	// Move v with the given key down from slot i until its children are larger
+	private void siftDown(int i, int v, double key) {
+		while (true) {
+			int first = i * arity + 1;
+			if (first >= size) {
+				break;
+			}
+			int last = Math.min(first + arity, size);
+			int best = first;
+			for (int c = first + 1; c < last; c++) {
+				if (keys[c] < keys[best]) {
+					best = c;
+				}
+			}
+			if (keys[best] >= key) {
+				break;
+			}
+			place(i, heap[best], keys[best]);
+			i = best;
+		}
+		place(i, v, key);
+	}
+
+	private void place(int i, int v, double key) {
+		heap[i] = v;
+		keys[i] = key;
+		position[v] = i;
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Growable int array, for the places where a List of Integer would box
+ * every element.  Fields are open for the loops that walk it.
+ *
+ */
+final class IntList {
+	int[] data = new int[4];
+	int size;
+
+	void add(int value) {
+		if (size == data.length) {
+			data = Arrays.copyOf(data, size * 2);
+		}
+		data[size++] = value;
+	}
+
+	void reverse() {
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			int tmp = data[i];
+			data[i] = data[j];
+			data[j] = tmp;
+		}
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+}
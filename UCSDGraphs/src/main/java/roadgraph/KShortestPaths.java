@@ -0,0 +1,179 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Yen's algorithm for the k shortest loopless paths between two vertices.
+ *
+ * Every path found so far is the source of new candidates: for each vertex
+ * along it (the spur vertex), the part before it is kept as the root, and
+ * a spur search finds the cheapest way on to the goal that leaves the
+ * spur vertex by an edge no earlier path with the same root took, and
+ * never returns to a root vertex.  The cheapest candidate not yet taken
+ * becomes the next path.
+ *
+ * The spur searches of one round are independent of each other and run
+ * in parallel.  Each excludes its edges with its own EdgeFilter, so the
+ * shared graph is never changed.
+ *
+ */
+final class KShortestPaths {
+
+	private static final Comparator<Route> BY_COST = new Comparator<Route>() {
+		@Override
+		public int compare(Route a, Route b) {
+			int c = Double.compare(a.getCost(), b.getCost());
+			return c != 0 ? c : Integer.compare(a.getNumEdges(), b.getNumEdges());
+		}
+	};
+
+	private KShortestPaths() {
+	}
+
+	/**
+	 * Find up to k loopless paths from s to t, cheapest first
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge
+	 * @param s
+	 *            The start vertex
+	 * @param t
+	 *            The goal vertex
+	 * @param k
+	 *            The number of paths wanted
+	 * @param pool
+	 *            The pool the spur searches run on
+	 * @return The paths, fewer than k if there are no more
+	 */
+	static List<Route> yen(FrozenMapGraph graph, float[] weights, int s, int t, int k, ForkJoinPool pool) {
+		List<Route> found = new ArrayList<Route>();
+		int[] first = search(graph, weights, s, t, null);
+		if (first == null) {
+			return found;
+		}
+		found.add(new Route(graph, s, first, cost(weights, first, first.length)));
+
+		PriorityQueue<Route> candidates = new PriorityQueue<Route>(BY_COST);
+		HashSet<Route> seen = new HashSet<Route>(found);
+		while (found.size() < k) {
+			Route last = found.get(found.size() - 1);
+			int[] edges = last.edges();
+			Route[] spurs = new Route[edges.length];
+			Parallel.forEach(pool, edges.length, 1, (i) -> spurs[i] = spur(graph, weights, s, t, edges, i, found));
+			for (Route r : spurs) {
+				if (r != null && seen.add(r)) {
+					candidates.add(r);
+				}
+			}
+			if (candidates.isEmpty()) {
+				break;
+			}
+			found.add(candidates.poll());
+		}
+		return found;
+	}
+
+	// The cheapest path that follows the first i edges of the given path,
+	// then leaves its i-th vertex by an edge none of the found paths with
+	// the same root took, without visiting the root again.
+	private static Route spur(FrozenMapGraph graph, float[] weights, int s, int t, int[] path, int i,
+			List<Route> found) {
+		EdgeFilter.Builder closed = new EdgeFilter.Builder(graph);
+		for (Route r : found) {
+			int[] other = r.edges();
+			if (other.length > i && sameRoot(path, other, i)) {
+				closed.close(other[i]);
+			}
+		}
+		int v = s;
+		for (int j = 0; j < i; j++) {
+			for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+				closed.close(e);
+			}
+			v = graph.target[path[j]];
+		}
+		int[] spur = search(graph, weights, v, t, closed.build());
+		if (spur == null) {
+			return null;
+		}
+		int[] edges = Arrays.copyOf(path, i + spur.length);
+		System.arraycopy(spur, 0, edges, i, spur.length);
+		return new Route(graph, s, edges, cost(weights, edges, edges.length));
+	}
+
+	private static boolean sameRoot(int[] a, int[] b, int length) {
+		for (int j = 0; j < length; j++) {
+			if (a[j] != b[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Summed in path order, so equal paths always get equal costs
+	private static double cost(float[] weights, int[] edges, int length) {
+		double cost = 0;
+		for (int j = 0; j < length; j++) {
+			cost += weights[edges[j]];
+		}
+		return cost;
+	}
+
+	/**
+	 * Dijkstra from s to t around closed edges
+	 * 
+	 * @return The edges of the cheapest path, or null if t cannot be reached
+	 */
+	static int[] search(FrozenMapGraph graph, float[] weights, int s, int t, EdgeFilter closed) {
+		SearchContext ctx = SearchContext.acquire(graph.numVertices);
+		try {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			ctx.update(s, 0, s, -1);
+			queue.insertOrDecrease(s, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				if (v == t) {
+					int length = 0;
+					for (int u = t; u != s; u = ctx.parent(u)) {
+						length++;
+					}
+					int[] edges = new int[length];
+					for (int u = t; u != s; u = ctx.parent(u)) {
+						edges[--length] = ctx.parentEdge(u);
+					}
+					return edges;
+				}
+				double dv = ctx.distance(v);
+				for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+					if (closed != null && closed.isClosed(e)) {
+						continue;
+					}
+					int w = graph.target[e];
+					double d = dv + weights[e];
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						queue.insertOrDecrease(w, d);
+					}
+				}
+			}
+			return null;
+		} finally {
+			ctx.release();
+		}
+	}
+}
@@ -0,0 +1,364 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Landmark distance tables for ALT (A*, landmarks, triangle inequality).
+ *
+ * For a handful of landmark vertices L the tables hold d(L, v) and
+ * d(v, L) for every vertex v.  The triangle inequality then gives two
+ * lower bounds on d(v, w) per landmark:
+ *
+ * <pre>
+ * d(L, w) - d(L, v)    and    d(v, L) - d(w, L)
+ * </pre>
+ *
+ * and the heuristic is the largest of them.  Landmarks behind the target,
+ * seen from the source, give the best bounds, which is why they are
+ * picked far apart on the edge of the map.
+ *
+ * Selecting landmarks costs two full Dijkstra searches per landmark, so the
+ * tables can be saved next to the map file and loaded on the next start.
+ *
+ */
+public class Landmarks implements Heuristic {
+
+	/** How the landmarks are chosen */
+	public enum Selection {
+		/**
+		 * Each new landmark is the vertex farthest from the ones already
+		 * chosen.
+		 */
+		FARTHEST,
+
+		/**
+		 * Goldberg and Werneck's avoid method: grow a shortest path tree
+		 * from a random root and put the next landmark at the leaf of the
+		 * subtree the current landmarks bound worst.
+		 */
+		AVOID
+	}
+
+	/** Number of landmarks used when none is asked for */
+	public static final int DEFAULT_COUNT = 8;
+
+	/** Extension of the file the tables are saved to, next to the map */
+	public static final String FILE_EXTENSION = ".landmarks";
+
+	private static final int MAGIC = 0x4c4d4b53; // "LMKS"
+	private static final int VERSION = 1;
+
+	private final int numVertices;
+	private final long fingerprint;
+	private final int[] landmarks;
+
+	// fromLandmark[i][v] = d(landmarks[i], v), toLandmark[i][v] = d(v, landmarks[i])
+	private final float[][] fromLandmark;
+	private final float[][] toLandmark;
+
+	// the last graph and costs isFor() accepted, to skip the checksum
+	private volatile FrozenMapGraph checkedGraph;
+	private volatile float[] checkedWeights;
+
+	private Landmarks(int numVertices, long fingerprint, int[] landmarks, float[][] fromLandmark,
+			float[][] toLandmark) {
+		this.numVertices = numVertices;
+		this.fingerprint = fingerprint;
+		this.landmarks = landmarks;
+		this.fromLandmark = fromLandmark;
+		this.toLandmark = toLandmark;
+	}
+
+	/**
+	 * Select landmarks for the edge lengths of a graph
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param count
+	 *            How many landmarks to select
+	 * @param selection
+	 *            How to select them
+	 * @return The landmarks with their distance tables
+	 */
+	public static Landmarks select(FrozenMapGraph graph, int count, Selection selection) {
+		return select(graph, graph.weight, count, selection, 0);
+	}
+
+	/**
+	 * Select landmarks for arbitrary edge costs
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param weights
+	 *            The cost of every edge of the graph
+	 * @param count
+	 *            How many landmarks to select, at most the number of vertices
+	 * @param selection
+	 *            How to select them
+	 * @param seed
+	 *            Seed for the random starting vertex
+	 * @return The landmarks with their distance tables
+	 */
+	static Landmarks select(FrozenMapGraph graph, float[] weights, int count, Selection selection, long seed) {
+		int n = graph.numVertices;
+		count = Math.min(count, n);
+		Random random = new Random(seed);
+		int[] chosen = new int[count];
+		float[][] from = new float[count][];
+		float[][] to = new float[count][];
+		boolean[] isLandmark = new boolean[n];
+
+		int selected = 0;
+		while (selected < count) {
+			Landmarks sofar = new Landmarks(n, 0, Arrays.copyOf(chosen, selected),
+					Arrays.copyOf(from, selected), Arrays.copyOf(to, selected));
+			int next = selection == Selection.AVOID
+					? sofar.avoid(graph, weights, random.nextInt(n), isLandmark)
+					: sofar.farthest(graph, weights, random.nextInt(n), isLandmark);
+			if (next < 0) {
+				break;
+			}
+			chosen[selected] = next;
+			isLandmark[next] = true;
+			from[selected] = new float[n];
+			to[selected] = new float[n];
+			graph.shortestPathTree(next, weights, false, from[selected], null, null);
+			graph.shortestPathTree(next, weights, true, to[selected], null, null);
+			selected++;
+		}
+		return new Landmarks(n, graph.fingerprint(weights), Arrays.copyOf(chosen, selected),
+				Arrays.copyOf(from, selected), Arrays.copyOf(to, selected));
+	}
+
+	// The vertex farthest from the landmarks chosen so far, or from root
+	// while there are none.  Distances count in either direction, so that a
+	// landmark on a dead end one-way street still sees the rest of the map.
+	private int farthest(FrozenMapGraph graph, float[] weights, int root, boolean[] isLandmark) {
+		int n = graph.numVertices;
+		float[] nearest = new float[n];
+		if (landmarks.length == 0) {
+			graph.shortestPathTree(root, weights, false, nearest, null, null);
+		} else {
+			Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+			for (int i = 0; i < landmarks.length; i++) {
+				for (int v = 0; v < n; v++) {
+					nearest[v] = Math.min(nearest[v], Math.min(fromLandmark[i][v], toLandmark[i][v]));
+				}
+			}
+		}
+		int best = -1;
+		for (int v = 0; v < n; v++) {
+			if (!isLandmark[v] && nearest[v] != Float.POSITIVE_INFINITY
+					&& (best < 0 || nearest[v] > nearest[best])) {
+				best = v;
+			}
+		}
+		return best;
+	}
+
+	// Goldberg and Werneck's avoid: in the shortest path tree from root,
+	// weigh each vertex by how badly the current landmarks bound its
+	// distance from root, sum the weights per subtree (zeroing subtrees
+	// that already hold a landmark), and descend from the heaviest vertex
+	// along heaviest children to a leaf.
+	private int avoid(FrozenMapGraph graph, float[] weights, int root, boolean[] isLandmark) {
+		int n = graph.numVertices;
+		float[] dist = new float[n];
+		int[] parent = new int[n];
+		int[] order = new int[n];
+		int settled = graph.shortestPathTree(root, weights, false, dist, parent, order);
+
+		double[] size = new double[n];
+		boolean[] holdsLandmark = new boolean[n];
+		int[] heaviestChild = new int[n];
+		Arrays.fill(heaviestChild, -1);
+		for (int i = settled - 1; i >= 0; i--) {
+			int v = order[i];
+			holdsLandmark[v] |= isLandmark[v];
+			if (holdsLandmark[v]) {
+				size[v] = 0;
+			} else {
+				size[v] += dist[v] - lowerBound(root, v);
+			}
+			int p = parent[v];
+			if (p >= 0) {
+				holdsLandmark[p] |= holdsLandmark[v];
+				size[p] += size[v];
+				if (heaviestChild[p] < 0 || size[v] > size[heaviestChild[p]]) {
+					heaviestChild[p] = v;
+				}
+			}
+		}
+
+		int best = -1;
+		for (int i = 0; i < settled; i++) {
+			int v = order[i];
+			if (size[v] > 0 && (best < 0 || size[v] > size[best])) {
+				best = v;
+			}
+		}
+		if (best < 0) {
+			return farthest(graph, weights, root, isLandmark);
+		}
+		while (heaviestChild[best] >= 0 && size[heaviestChild[best]] > 0) {
+			best = heaviestChild[best];
+		}
+		return best;
+	}
+
+	/**
+	 * Return the landmark bound on d(from, to).  Unreachable entries are
+	 * infinite, and the float arithmetic takes care of them: a NaN or
+	 * negative infinity never wins the max, and an infinite bound is only
+	 * produced when to really cannot be reached from from.
+	 */
+	public double lowerBound(int from, int to) {
+		float best = 0;
+		for (int i = 0; i < landmarks.length; i++) {
+			float[] f = fromLandmark[i];
+			float[] b = toLandmark[i];
+			float forward = f[to] - f[from];
+			if (forward > best) {
+				best = forward;
+			}
+			float backward = b[from] - b[to];
+			if (backward > best) {
+				best = backward;
+			}
+		}
+		return best;
+	}
+
+	/** Return the number of landmarks */
+	public int size() {
+		return landmarks.length;
+	}
+
+	/** Return the vertex id of landmark i */
+	public int getLandmark(int i) {
+		return landmarks[i];
+	}
+
+	/** Return whether these tables were built for the given graph and costs */
+	boolean isFor(FrozenMapGraph graph, float[] weights) {
+		if (graph == checkedGraph && weights == checkedWeights) {
+			return true;
+		}
+		if (graph.numVertices != numVertices || graph.fingerprint(weights) != fingerprint) {
+			return false;
+		}
+		checkedWeights = weights;
+		checkedGraph = graph;
+		return true;
+	}
+
+	/**
+	 * Write the tables to a file
+	 *
+	 * @param fileName
+	 *            The file to write
+	 * @throws IOException
+	 */
+	public void save(String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numVertices);
+			out.writeLong(fingerprint);
+			out.writeInt(landmarks.length);
+			for (int i = 0; i < landmarks.length; i++) {
+				out.writeInt(landmarks[i]);
+				for (int v = 0; v < numVertices; v++) {
+					out.writeFloat(fromLandmark[i][v]);
+				}
+				for (int v = 0; v < numVertices; v++) {
+					out.writeFloat(toLandmark[i][v]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read tables written by save()
+	 *
+	 * @param fileName
+	 *            The file to read
+	 * @return The landmarks
+	 * @throws IOException
+	 *             If the file cannot be read or is not a landmark file
+	 */
+	public static Landmarks load(String fileName) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(fileName + " is not a landmark file of version " + VERSION);
+			}
+			int n = in.readInt();
+			long fingerprint = in.readLong();
+			int count = in.readInt();
+			int[] landmarks = new int[count];
+			float[][] from = new float[count][n];
+			float[][] to = new float[count][n];
+			for (int i = 0; i < count; i++) {
+				landmarks[i] = in.readInt();
+				for (int v = 0; v < n; v++) {
+					from[i][v] = in.readFloat();
+				}
+				for (int v = 0; v < n; v++) {
+					to[i][v] = in.readFloat();
+				}
+			}
+			return new Landmarks(n, fingerprint, landmarks, from, to);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Load the landmarks saved next to a map file if they still match the
+	 * graph, otherwise select new ones and save them there.
+	 *
+	 * @param mapFile
+	 *            The map file the graph was loaded from
+	 * @param graph
+	 *            The graph
+	 * @param count
+	 *            How many landmarks to select if they have to be computed
+	 * @return The landmarks
+	 */
+	public static Landmarks loadOrSelect(String mapFile, FrozenMapGraph graph, int count) {
+		String fileName = mapFile + FILE_EXTENSION;
+		if (new File(fileName).exists()) {
+			try {
+				Landmarks saved = load(fileName);
+				if (saved.isFor(graph, graph.weight) && saved.size() >= Math.min(count, graph.numVertices)) {
+					return saved;
+				}
+			} catch (IOException e) {
+				System.err.println("Problem loading landmark file: " + fileName);
+			}
+		}
+		Landmarks landmarks = select(graph, count, Selection.AVOID);
+		try {
+			landmarks.save(fileName);
+		} catch (IOException e) {
+			System.err.println("Problem saving landmark file: " + fileName);
+		}
+		return landmarks;
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.PriorityQueue;
+
+/**
+ * A VertexQueue on top of java.util.PriorityQueue.  There is no
+ * decrease-key: every improvement adds another entry, and the search
+ * skips the out of date ones when they come out.
+ *
+ */
+final class LazyVertexQueue implements VertexQueue {
+
+	private final PriorityQueue<QueueEntry> entries = new PriorityQueue<QueueEntry>();
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void insertOrDecrease(int v, double key) {
+		entries.add(new QueueEntry(v, key));
+	}
+
+	public double peekKey() {
+		return entries.peek().key;
+	}
+
+	public int poll() {
+		return entries.remove().vertex;
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/**
+ * Measures liveSearch throughput while live cost updates are applied at
+ * different rates, on the maps listed in data/maps/mapfiles.list.  Reader
+ * threads run random car queries; one writer applies batches of updates
+ * to 1% of the edges each.  Run from the project directory:
+ *
+ * <pre>
+ * java roadgraph.LiveTrafficBenchmark [seconds per run] [reader threads]
+ * </pre>
+ *
+ */
+public class LiveTrafficBenchmark {
+
+	// update batches per second to run with; 0 is the read-only baseline
+	private static final int[] UPDATE_RATES = { 0, 1, 10, 100, 1000 };
+
+	private static final int QUERIES = 1000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		int readers = args.length > 1 ? Integer.parseInt(args[1])
+				: Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		List<String> maps = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader("data/maps/mapfiles.list"));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.trim().isEmpty()) {
+				maps.add(line.trim());
+			}
+		}
+		reader.close();
+
+		System.out.println(String.format("%-22s %10s %12s %12s %12s %10s   (%d readers)", "map", "rate/s",
+				"queries/s", "batches/s", "us/batch", "versions", readers));
+		for (String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap("data/maps/" + map, graph);
+			FrozenMapGraph frozen = graph.freeze();
+			GeographicPoint[][] queries = connectedPairs(frozen, new Random(42));
+			for (int rate : UPDATE_RATES) {
+				graph.startLiveWeights(RoutingProfile.CAR);
+				// warm up
+				run(graph, frozen, queries, readers, rate, seconds / 4);
+				graph.startLiveWeights(RoutingProfile.CAR);
+				long[] result = run(graph, frozen, queries, readers, rate, seconds);
+				System.out.println(String.format("%-22s %10d %12.0f %12.1f %12.1f %10d", map, rate,
+						result[0] / seconds, result[1] / seconds,
+						result[1] == 0 ? 0.0 : result[2] / 1000.0 / result[1], result[3]));
+			}
+		}
+	}
+
+	// Pairs of intersections with a route between them
+	private static GeographicPoint[][] connectedPairs(FrozenMapGraph graph, Random random) {
+		GeographicPoint[][] pairs = new GeographicPoint[QUERIES][];
+		int n = graph.getNumVertices();
+		for (int i = 0; i < QUERIES;) {
+			int s = random.nextInt(n);
+			ReachableSet reachable = graph.reachable(s, Double.POSITIVE_INFINITY, graph.weight, false);
+			if (reachable.size() > 1) {
+				int t = reachable.getVertices()[1 + random.nextInt(reachable.size() - 1)];
+				pairs[i++] = new GeographicPoint[] { graph.getLocation(s), graph.getLocation(t) };
+			}
+		}
+		return pairs;
+	}
+
+	// Returns queries, batches, nanoseconds spent in applyUpdates and the
+	// last version number
+	private static long[] run(MapGraph graph, FrozenMapGraph frozen, GeographicPoint[][] queries,
+			int readers, int rate, double seconds) throws InterruptedException {
+		long deadline = System.nanoTime() + (long) (seconds * 1e9);
+		AtomicLong done = new AtomicLong();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int r = 0; r < readers; r++) {
+			int first = r;
+			Thread thread = new Thread(() -> {
+				long count = 0;
+				for (int i = first; System.nanoTime() < deadline; i++) {
+					GeographicPoint[] query = queries[i % queries.length];
+					graph.liveSearch(query[0], query[1]);
+					count++;
+				}
+				done.addAndGet(count);
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		long batches = 0;
+		long updateNanos = 0;
+		long version = 0;
+		if (rate > 0) {
+			Random random = new Random(7);
+			float[] base = RoutingProfile.CAR.weights(frozen);
+			int size = Math.max(1, frozen.getNumEdges() / 100);
+			long interval = (long) (1e9 / rate);
+			long next = System.nanoTime();
+			while (System.nanoTime() < deadline) {
+				int[] edges = new int[size];
+				float[] weights = new float[size];
+				for (int i = 0; i < size; i++) {
+					edges[i] = random.nextInt(frozen.getNumEdges());
+					weights[i] = base[edges[i]] * (0.8f + 2.2f * random.nextFloat());
+				}
+				long begin = System.nanoTime();
+				version = graph.applyUpdates(edges, weights);
+				updateNanos += System.nanoTime() - begin;
+				batches++;
+				next += interval;
+				long sleep = next - System.nanoTime();
+				if (sleep > 0) {
+					Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+				}
+			}
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return new long[] { done.get(), batches, updateNanos, version };
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import geography.GeographicPoint;
+
+/**
+ * Edge costs of a FrozenMapGraph that change while the graph is being
+ * searched, e.g. travel times from live speed reports.
+ *
+ * The costs are published as immutable versions through an atomic
+ * reference.  A search reads the current version once, when it starts,
+ * and uses that array to the end, so it sees one consistent set of costs
+ * no matter how many updates land meanwhile; searches started after an
+ * update see the new costs.  Readers never lock.
+ *
+ * Updates are copy-on-write: applyUpdates copies the current array,
+ * changes the given edges and publishes the copy as the next version.
+ * That costs O(edges) per call, so many updates should be batched into
+ * one call, which is how speed feeds arrive anyway.  Writers are
+ * serialized with each other.
+ *
+ * Edges are named by their FrozenMapGraph edge ids, which follow the
+ * order the roads are read from the map file and so stay the same for
+ * the same file, or by the intersections at their ends, which stay valid
+ * when the map file changes.
+ *
+ */
+public final class LiveWeights {
+
+	/** One immutable set of edge costs */
+	public static final class Version {
+		private final long number;
+		private final float[] weights;
+		private final double minCostPerKm;
+
+		private Version(long number, float[] weights, double minCostPerKm) {
+			this.number = number;
+			this.weights = weights;
+			this.minCostPerKm = minCostPerKm;
+		}
+
+		/** Return the version number, 0 for the initial costs */
+		public long getNumber() {
+			return number;
+		}
+
+		/** Return the cost of an edge in this version */
+		public float getWeight(int edge) {
+			return weights[edge];
+		}
+
+		/**
+		 * Return a lower bound on the cost of one km of road in this
+		 * version, to scale straight line distances into a heuristic
+		 */
+		public double getMinCostPerKm() {
+			return minCostPerKm;
+		}
+
+		float[] weights() {
+			return weights;
+		}
+	}
+
+	private final FrozenMapGraph graph;
+	private final AtomicReference<Version> current;
+
+	/**
+	 * Start from the given edge costs
+	 * 
+	 * @param graph
+	 *            The graph whose edges the costs are for
+	 * @param initial
+	 *            The cost of every edge, e.g. RoutingProfile.weights(graph);
+	 *            it is copied
+	 */
+	public LiveWeights(FrozenMapGraph graph, float[] initial) {
+		if (initial.length != graph.numEdges) {
+			throw new IllegalArgumentException("Expected " + graph.numEdges + " edge costs, got " + initial.length);
+		}
+		this.graph = graph;
+		float[] weights = initial.clone();
+		double minCostPerKm = Double.POSITIVE_INFINITY;
+		for (int e = 0; e < weights.length; e++) {
+			checkWeight(e, weights[e]);
+			minCostPerKm = Math.min(minCostPerKm, costPerKm(e, weights[e]));
+		}
+		current = new AtomicReference<Version>(new Version(0, weights, minCostPerKm));
+	}
+
+	/** Return the graph these costs are for */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	/** Return the current version */
+	public Version getVersion() {
+		return current.get();
+	}
+
+	/**
+	 * Change the cost of a batch of edges and publish the result as a new
+	 * version.  Searches already running keep the version they started
+	 * with.
+	 * 
+	 * @param edgeIds
+	 *            The edges to change
+	 * @param newWeights
+	 *            Their new costs, in the unit of the initial costs;
+	 *            infinity closes an edge
+	 * @return The new version
+	 * @throws IllegalArgumentException
+	 *             If the arrays differ in length, an edge id is out of range
+	 *             or a cost is negative or NaN; nothing is published then
+	 */
+	public synchronized Version applyUpdates(int[] edgeIds, float[] newWeights) {
+		if (edgeIds.length != newWeights.length) {
+			throw new IllegalArgumentException(edgeIds.length + " edges but " + newWeights.length + " costs");
+		}
+		Version old = current.get();
+		float[] weights = old.weights.clone();
+		double minCostPerKm = old.minCostPerKm;
+		for (int i = 0; i < edgeIds.length; i++) {
+			int e = edgeIds[i];
+			if (e < 0 || e >= weights.length) {
+				throw new IllegalArgumentException("No edge " + e);
+			}
+			checkWeight(e, newWeights[i]);
+			weights[e] = newWeights[i];
+			// the bound only ever falls, so it stays valid for the edges
+			// that got slower without a scan over all of them
+			minCostPerKm = Math.min(minCostPerKm, costPerKm(e, newWeights[i]));
+		}
+		Version next = new Version(old.number + 1, weights, minCostPerKm);
+		current.set(next);
+		return next;
+	}
+
+	/**
+	 * Change the cost of a batch of roads, each given by the intersections
+	 * at its ends, and publish the result as a new version.  Every road
+	 * from from[i] to to[i], in that direction only, gets newWeights[i].
+	 * 
+	 * @param from
+	 *            Where the roads start
+	 * @param to
+	 *            Where they end
+	 * @param newWeights
+	 *            Their new costs, in the unit of the initial costs;
+	 *            infinity closes a road
+	 * @return The new version
+	 * @throws IllegalArgumentException
+	 *             If the arrays differ in length, there is no road between
+	 *             some pair of intersections or a cost is negative or NaN;
+	 *             nothing is published then
+	 */
+	public Version applyUpdates(GeographicPoint[] from, GeographicPoint[] to, float[] newWeights) {
+		if (from.length != to.length || from.length != newWeights.length) {
+			throw new IllegalArgumentException(from.length + " starts, " + to.length + " ends but "
+					+ newWeights.length + " costs");
+		}
+		// the edges found and the update each one came from
+		IntList edges = new IntList();
+		IntList update = new IntList();
+		for (int i = 0; i < from.length; i++) {
+			int u = graph.getVertexId(from[i]);
+			int v = graph.getVertexId(to[i]);
+			int found = 0;
+			if (u >= 0 && v >= 0) {
+				for (int e = graph.firstEdge[u]; e < graph.firstEdge[u + 1]; e++) {
+					if (graph.target[e] == v) {
+						edges.add(e);
+						update.add(i);
+						found++;
+					}
+				}
+			}
+			if (found == 0) {
+				throw new IllegalArgumentException("No road from " + from[i] + " to " + to[i]);
+			}
+		}
+		float[] costs = new float[edges.size];
+		for (int k = 0; k < costs.length; k++) {
+			costs[k] = newWeights[update.data[k]];
+		}
+		return applyUpdates(edges.toArray(), costs);
+	}
+
+	private static void checkWeight(int edge, float weight) {
+		if (!(weight >= 0)) {
+			throw new IllegalArgumentException("Invalid cost " + weight + " for edge " + edge);
+		}
+	}
+
+	private double costPerKm(int edge, float weight) {
+		float length = graph.weight[edge];
+		return length > 0 ? weight / length : Double.POSITIVE_INFINITY;
+	}
+}
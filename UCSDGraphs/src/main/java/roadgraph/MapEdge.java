@@ -94,6 +94,7 @@ class MapEdge
 	public String getRoadType(){
 		return roadType;
 	}
+	
 	// given one node in an edge, return the other node
 	MapNode getOtherNode(MapNode node)
 	{
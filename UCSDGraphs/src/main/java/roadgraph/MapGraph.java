@@ -7,16 +7,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -40,36 +42,58 @@ public class MapGraph {
 	// be able to look up nodes by lat/lon or by roads
 	// that contain those nodes.
 	private HashMap<GeographicPoint, MapNode> pointNodeMap;
+	private ArrayList<MapNode> nodesById;
 	private HashSet<MapEdge> edges;
 	
-	//map road type to speed limit. use trip duration other than distance 
-	//to choice the shortest way. 
-	private final double roadTypeSpeedLimitMapping(final String roadType){
-		double speedLimit = 0;
-		switch(roadType){
-		case "city street":
-			speedLimit = 80.0;//here unit is km/h
-			break;
-		case "residential":
-			speedLimit = 60.0;
-			break;
-		case "connector":
-			speedLimit = 40.0;
-			break;
-		default:;
-		}
-		return speedLimit;
-	}
+	// Immutable compressed snapshot of this graph, built on demand by
+	// freeze() and dropped whenever a vertex or edge is added.
+	private volatile FrozenMapGraph frozen;
+	
+	// Landmarks for altSearch, selected on (some version of) the frozen graph
+	private volatile Landmarks landmarks;
+	
+	// Arc flags for arcFlagSearch, built on (some version of) the frozen graph
+	private volatile ArcFlags arcFlags;
+	
+	// Contraction hierarchy for chSearch, built on (some version of) the frozen graph
+	private volatile ContractionHierarchy hierarchy;
+	
+	// Hub labels for distance, built on (some version of) the frozen graph
+	private volatile HubLabels hubLabels;
+	
+	// Multilevel overlay for overlaySearch, built on (some version of) the
+	// frozen graph, and its current customization
+	private volatile MultiLevelOverlay overlay;
+	private volatile MultiLevelOverlay.Customization customization;
+	
+	// Traffic profiles for route, assigned on (some version of) the frozen graph
+	private volatile TrafficProfiles traffic;
+	
+	// Live edge costs for liveSearch, on (some version of) the frozen graph
+	private volatile LiveWeights live;
+	
 	/**
 	 * Create a new empty MapGraph
 	 *
 	 */
 	//get logger
 	private static final Logger myGraphLogger = Logger.getLogger((MapGraph.class.getPackage().getName()));
+	//the file handler is shared by all graphs; one per graph would leak a
+	//file (and its lock) every time a map is loaded.
+	private static boolean fileHandlerAdded = false;
 	public MapGraph(){
 		pointNodeMap = new HashMap<GeographicPoint, MapNode>();
+		nodesById = new ArrayList<MapNode>();
 		edges = new HashSet<MapEdge>();
-		//add a file handler to logger
+		addFileHandler();
+	}
+
+	//add a file handler to logger
+	private static synchronized void addFileHandler(){
+		if(fileHandlerAdded){
+			return;
+		}
+		fileHandlerAdded = true;
 		String userHome = System.getProperty("user.home");
 		File logDir = new File(userHome + "/javalogs");
 		if(!logDir.exists()){
@@ -136,6 +160,70 @@ public class MapGraph {
 		this.addVertex(pt);
 	}
 
+	/**
+	 * Find the intersection nearest to a coordinate
+	 * 
+	 * @param latitude
+	 *            The latitude, e.g. from a GPS fix
+	 * @param longitude
+	 *            The longitude
+	 * @return The location of the nearest intersection, or null if the graph
+	 *         is empty
+	 */
+	public GeographicPoint nearestVertex(double latitude, double longitude) {
+		int v = freeze().getSpatialIndex().nearestVertex(latitude, longitude);
+		return v < 0 ? null : nodesById.get(v).getLocation();
+	}
+
+	/**
+	 * Find the k intersections nearest to a coordinate
+	 * 
+	 * @param latitude
+	 *            The latitude
+	 * @param longitude
+	 *            The longitude
+	 * @param k
+	 *            How many intersections to return
+	 * @return Up to k intersection locations, nearest first
+	 */
+	public List<GeographicPoint> kNearest(double latitude, double longitude, int k) {
+		return locations(freeze().getSpatialIndex().kNearest(latitude, longitude, k));
+	}
+
+	/**
+	 * Find the intersections within a radius of a coordinate
+	 * 
+	 * @param latitude
+	 *            The latitude
+	 * @param longitude
+	 *            The longitude
+	 * @param radius
+	 *            The radius in km
+	 * @return The intersection locations, in no particular order
+	 */
+	public List<GeographicPoint> withinRadius(double latitude, double longitude, double radius) {
+		return locations(freeze().getSpatialIndex().withinRadius(latitude, longitude, radius));
+	}
+
+	private List<GeographicPoint> locations(int[] ids) {
+		List<GeographicPoint> result = new ArrayList<GeographicPoint>(ids.length);
+		for (int v : ids) {
+			result.add(nodesById.get(v).getLocation());
+		}
+		return result;
+	}
+
+	// The node at location or, when the location is not exactly an
+	// intersection (a GPS fix, say), the nearest one.  Null only for an
+	// empty graph.
+	private MapNode snap(GeographicPoint location) {
+		MapNode node = pointNodeMap.get(location);
+		if (node == null && !nodesById.isEmpty()) {
+			node = nodesById.get(freeze().getSpatialIndex().nearestVertex(location.getX(), location.getY()));
+		}
+		return node;
+	}
+
 	/**
 	 * Add a node corresponding to an intersection at a Geographic Point
 	 *
@@ -145,8 +233,10 @@ public class MapGraph {
 	public void addVertex(GeographicPoint location) {
 		MapNode n = pointNodeMap.get(location);
 		if (n == null) {
-			n = new MapNode(location);
+			n = new MapNode(location, pointNodeMap.size());
 			pointNodeMap.put(location, n);
+			nodesById.add(n);
+			frozen = null;
 		} else {
 			System.out.println("Warning: Node at location " + location + " already exists in the graph.");
 		}
@@ -217,6 +307,42 @@ public class MapGraph {
 		MapEdge edge = new MapEdge(roadName, roadType, n1, n2, length);
 		edges.add(edge);
 		n1.addEdge(edge);
+		frozen = null;
+	}
+
+	/**
+	 * Build an immutable, array based copy of this graph in compressed
+	 * sparse row form. Vertex ids in the copy are the ids the MapNodes
+	 * were given when they were added, so they stay stable across calls.
+	 * The snapshot is cached until the graph is modified again.
+	 * 
+	 * @return The frozen graph
+	 */
+	public FrozenMapGraph freeze() {
+		FrozenMapGraph snapshot = frozen;
+		if (snapshot == null) {
+			synchronized (this) {
+				snapshot = frozen;
+				if (snapshot == null) {
+					snapshot = new FrozenMapGraph(pointNodeMap.values(), edges.size());
+					frozen = snapshot;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Write a snapshot of this graph that MappedMapGraph.open can map
+	 * straight into memory, without parsing the map file again.
+	 * 
+	 * @param fileName
+	 *            The snapshot file to write
+	 * @throws IOException
+	 *             If writing fails
+	 */
+	public void saveSnapshot(String fileName) throws IOException {
+		MappedMapGraph.write(freeze(), fileName);
 	}
 
 	/** Returns the nodes in terms of their geographic locations */
@@ -253,8 +379,8 @@ public class MapGraph {
 		// Setup - check validity of inputs
 		if (start == null || goal == null)
 			throw new NullPointerException("Cannot find route from or to null node");
-		MapNode startNode = pointNodeMap.get(start);
-		MapNode endNode = pointNodeMap.get(goal);
+		MapNode startNode = snap(start);
+		MapNode endNode = snap(goal);
 		if (startNode == null) {
 			System.err.println("Start node " + start + " does not exist");
 			return null;
@@ -326,6 +452,22 @@ public class MapGraph {
 		return path;
 	}
 
+	// Reconstruct a path from start to goal using the parents recorded in
+	// a search context
+	private List<GeographicPoint> reconstructPath(SearchContext ctx, MapNode start, MapNode goal) {
+		LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
+		int current = goal.getId();
+
+		while (current != start.getId()) {
+			path.addFirst(nodesById.get(current).getLocation());
+			current = ctx.parent(current);
+		}
+
+		// add start
+		path.addFirst(start.getLocation());
+		return path;
+	}
+
 	/**
 	 * Find the path from start to goal using Dijkstra's algorithm
 	 * 
@@ -362,6 +504,26 @@ public class MapGraph {
 	 */
 	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal,
 			Consumer<GeographicPoint> nodeSearched) {
+		return dijkstra(start, goal, nodeSearched, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @param queueType
+	 *            The priority queue implementation to search with
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, QueueType queueType) {
 		//print the size of this graph
 		System.out.println("this graph contains " + this.getNumVertices() + " vertices, "
 				+ this.getNumEdges() + " edges.");
@@ -374,8 +536,8 @@ public class MapGraph {
 		// Setup - check validity of inputs
 		if (start == null || goal == null)
 			throw new NullPointerException("Cannot find route from or to null node");
-		MapNode startNode = pointNodeMap.get(start);
-		MapNode endNode = pointNodeMap.get(goal);
+		MapNode startNode = snap(start);
+		MapNode endNode = snap(goal);
 		if (startNode == null) {
 			System.err.println("Start node " + start + " does not exist");
 			return null;
@@ -385,84 +547,73 @@ public class MapGraph {
 			return null;
 		}
 
-		// setup to begin Dijkstra
-		HashMap<MapNode, MapNode> parentMap = new HashMap<MapNode, MapNode>();
-		Queue<MapNode> toExplore = new PriorityQueue<MapNode>();
-		HashSet<MapNode> visited = new HashSet<MapNode>();
-		//initialize to positive infinity for all vertices
-		for(MapNode tmp : this.pointNodeMap.values()){
-			tmp.setActualDistance(Double.POSITIVE_INFINITY);
-			tmp.setDistance(tmp.getActualDistance());
-		}
-		// startNode with 0 actual distance.
-		startNode.setActualDistance(0);
-		startNode.setDistance(startNode.getActualDistance());
-		toExplore.add(startNode);
-		MapNode next = null;
-		
-		//for advanced testing
-		int countExploredNodes = 0;
-		//for repeated dequed nodes
-		int repeatedDequedNodes = 0;
-		
-		while (!toExplore.isEmpty()) {
-			System.out.println("there exists " + toExplore.size() + " vertices in the queue.");
-			next = toExplore.remove();
-			if(visited.add(next) == false){
-				repeatedDequedNodes++;
-			}
-			countExploredNodes++;
-//			System.out.println("get shortest way for node: " + next.toString());
-			// hook for visualization
-			nodeSearched.accept(next.getLocation());
-			System.out.println("distance: " + next.getDistance());
-			if (next.equals(endNode))
-				break;
-			Set<MapNode> neighbors = getNeighbors(next);
-			for (MapNode neighbor : neighbors) {
-				if (!visited.contains(neighbor)) {
-					//visited.add(neighbor); //bug fixed, it is feasible for BFS since the later node enqueues, the more hops it takes.
-					// update actual distance from the start node to the
-					// neighbor node.
-					for (MapEdge tmp : next.getEdges()) {
-						if (tmp.getEndNode().equals(neighbor)) {
-							//judge the distance from the start node to the neighbor node.
-							//if it is shorter, then replace the relation in parent-map.
-							if(next.getActualDistance() + tmp.getLength() < neighbor.getDistance()){
-//								System.out.println("shorter way to the neighbor node: " + next.toString() + neighbor.toString());
-								parentMap.put(neighbor, next);
-								neighbor.setActualDistance(next.getActualDistance() + tmp.getLength());
-								neighbor.setDistance(neighbor.getActualDistance());
-								toExplore.add(neighbor);
-							}
-						}
+		// setup to begin Dijkstra. Distances and parents are kept in a
+		// per-query context, so nothing has to be reset on the nodes first.
+		SearchContext ctx = SearchContext.acquire(nodesById.size());
+		try {
+			VertexQueue toExplore = ctx.queue(queueType);
+			// startNode with 0 actual distance.
+			ctx.update(startNode.getId(), 0, startNode.getId(), -1);
+			toExplore.insertOrDecrease(startNode.getId(), 0);
+			MapNode next = null;
+			
+			//for advanced testing
+			int countExploredNodes = 0;
+			//for repeated dequed nodes
+			int repeatedDequedNodes = 0;
+			
+			while (!toExplore.isEmpty()) {
+				System.out.println("there exists " + toExplore.size() + " vertices in the queue.");
+				int nextId = toExplore.poll();
+				next = nodesById.get(nextId);
+				countExploredNodes++;
+				if (ctx.isSettled(nextId)) {
+					repeatedDequedNodes++;
+					continue;
+				}
+				ctx.settle(nextId);
+				// hook for visualization
+				nodeSearched.accept(next.getLocation());
+				System.out.println("distance: " + ctx.distance(nextId));
+				if (next.equals(endNode))
+					break;
+				double nextDistance = ctx.distance(nextId);
+				for (MapEdge tmp : next.getEdges()) {
+					int neighbor = tmp.getEndNode().getId();
+					//judge the distance from the start node to the neighbor node.
+					//if it is shorter, then replace the relation in parent-map.
+					if (!ctx.isSettled(neighbor) && nextDistance + tmp.getLength() < ctx.distance(neighbor)) {
+						ctx.update(neighbor, nextDistance + tmp.getLength(), nextId, -1);
+						toExplore.insertOrDecrease(neighbor, nextDistance + tmp.getLength());
 					}
 				}
 			}
+			if (!next.equals(endNode)) {
+				System.out.println("No path found from " + start + " to " + goal);
+				return null;
+			}
+	
+			// Reconstruct the parent path
+			List<GeographicPoint> path = reconstructPath(ctx, startNode, endNode);
+			
+			System.out.println("there still remains " + toExplore.size() + " vertices in queue.");
+			System.out.println("Explored Nodes number: " + countExploredNodes);
+			
+			System.out.println("\n\nthe effectiveness of space(|queue|/|V|): " + (100.0 * toExplore.size()/(double)this.getNumVertices()) + "%"
+					+ "\nthe effectiveness of time(|visited nodes|/|path of nodes|): " + (countExploredNodes/(double)path.size()));
+			System.out.println("the overheads caused by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + (100.0*repeatedDequedNodes/(double)countExploredNodes)
+					+ "%\n\n");
+			
+			DecimalFormat percentFormat = new DecimalFormat("#0.00");
+			myGraphLogger.log(Level.INFO, this.getNumVertices() + " vertices, "
+					+ this.getNumEdges() + " edges\n"
+					+ "the effectiveness of space(1 - |the residual of queue|/|V|): " + percentFormat.format(100.0 *(1- toExplore.size()/(double)this.getNumVertices())) + "%\n"
+					+ "the effectiveness of time(|path of nodes|/|visited nodes|): " + percentFormat.format(100.0 *path.size()/(double)countExploredNodes) + "%\n"
+					+ "the overheads caused by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + percentFormat.format(100.0*repeatedDequedNodes/(double)countExploredNodes) + "%");
+			return path;
+		} finally {
+			ctx.release();
 		}
-		if (!next.equals(endNode)) {
-			System.out.println("No path found from " + start + " to " + goal);
-			return null;
-		}
-
-		// Reconstruct the parent path
-		List<GeographicPoint> path = reconstructPath(parentMap, startNode, endNode);
-		
-		System.out.println("there still remains " + toExplore.size() + " vertices in queue.");
-		System.out.println("Explored Nodes number: " + countExploredNodes);
-		
-		System.out.println("\n\nthe effectiveness of space(|queue|/|V|): " + (100.0 * toExplore.size()/(double)this.getNumVertices()) + "%"
-				+ "\nthe effectiveness of time(|visited nodes|/|path of nodes|): " + (countExploredNodes/(double)path.size()));
-		System.out.println("the overheads caused by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + (100.0*repeatedDequedNodes/(double)countExploredNodes)
-				+ "%\n\n");
-		
-		DecimalFormat percentFormat = new DecimalFormat("#0.00");
-		myGraphLogger.log(Level.INFO, this.getNumVertices() + " vertices, "
-				+ this.getNumEdges() + " edges\n"
-				+ "the effectiveness of space(1 - |the residual of queue|/|V|): " + percentFormat.format(100.0 *(1- toExplore.size()/(double)this.getNumVertices())) + "%\n"
-				+ "the effectiveness of time(|path of nodes|/|visited nodes|): " + percentFormat.format(100.0 *path.size()/(double)countExploredNodes) + "%\n"
-				+ "the overheads caused by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + percentFormat.format(100.0*repeatedDequedNodes/(double)countExploredNodes) + "%");
-		return path;
 
 	}
 
@@ -502,115 +653,50 @@ public class MapGraph {
 	 */
 	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal,
 			Consumer<GeographicPoint> nodeSearched, String transTool) {
-		// TODO: Implement this method in WEEK 3
-
-		// Hook for visualization. See writeup.
-		// nodeSearched.accept(next.getLocation());
-
-		// return null;
-		// Setup - check validity of inputs
 		if (start == null || goal == null)
 			throw new NullPointerException("Cannot find route from or to null node");
-		MapNode startNode = pointNodeMap.get(start);
-		MapNode endNode = pointNodeMap.get(goal);
-		if (startNode == null) {
-			System.err.println("Start node " + start + " does not exist");
-			return null;
-		}
-		if (endNode == null) {
-			System.err.println("End node " + goal + " does not exist");
-			return null;
-		}
-
-		// setup to begin Dijkstra
-		HashMap<MapNode, MapNode> parentMap = new HashMap<MapNode, MapNode>();
-		Queue<MapNode> toExplore = new PriorityQueue<MapNode>();
-		HashSet<MapNode> visited = new HashSet<MapNode>();
-		//initialize to positive infinity for all vertices
-		for(MapNode tmp : this.pointNodeMap.values()){
-			tmp.setActualDistance(Double.POSITIVE_INFINITY);
-			tmp.setDistance(tmp.getActualDistance());
-		}
-		// startNode with 0 actual distance.
-		startNode.setActualDistance(0);
-		startNode.setDistance(startNode.getActualDistance());
-		toExplore.add(startNode);
-		MapNode next = null;
-		
-		//for advanced testing
-		int countExploredNodes = 0;
-		
-		while (!toExplore.isEmpty()) {
-			next = toExplore.remove();
-			visited.add(next);
-			countExploredNodes++;
-			// hook for visualization
-			nodeSearched.accept(next.getLocation());
-			System.out.println("distance: " + next.getDistance());
-			if (next.equals(endNode))
-				break;
-			Set<MapNode> neighbors = getNeighbors(next);
-			for (MapNode neighbor : neighbors) {
-				if (!visited.contains(neighbor)) {
-					//visited.add(neighbor); //bug fixed, it is feasible for BFS since the later node enqueues, the more hops it takes.
-					// update actual distance from the start node to the
-					// neighbor node.
-					for (MapEdge tmp : next.getEdges()) {
-						if (tmp.getEndNode().equals(neighbor)) {
-							//judge the distance from the start node to the neighbor node.
-							//if it is shorter, then replace the relation in parent-map.
-							
-							//choose way's weight in accordance with the transportation tools.
-							double roadWeight = getRoadWeight(tmp, transTool);
-							System.out.println("roadWeight:" + " " + roadWeight);
-							if(next.getActualDistance() + roadWeight < neighbor.getDistance()){
-								System.out.println("shorter way to the neighbor node: " + next.toString() + neighbor.toString() + "\nthe edge:" + tmp.toString());
-								parentMap.put(neighbor, next);
-								//neighbor.setActualDistance(next.getActualDistance() + tmp.getLength());
-								//convert length to time.
-		/*						double roadDuration = tmp.getLength()/this.roadTypeSpeedLimitMapping(tmp.getRoadType());
-								System.out.println("roadDuration:" + " " + roadDuration);
-		*/						
-								neighbor.setActualDistance(next.getActualDistance() + roadWeight);
-								neighbor.setDistance(neighbor.getActualDistance());
-								toExplore.add(neighbor);
-							}
-						}
-					}
-				}
-			}
-		}
-		if (!next.equals(endNode)) {
-			System.out.println("No path found from " + start + " to " + goal);
-			return null;
-		}
-
-		// Reconstruct the parent path
-		List<GeographicPoint> path = reconstructPath(parentMap, startNode, endNode);
-		
-		System.out.println("Explored Nodes number: " + countExploredNodes);
-		return path;
+		//use trip duration rather than distance to choose the shortest way,
+		//over the edge costs the profile computes once per frozen graph.
+		return freeze().dijkstra(start, goal, RoutingProfile.forName(transTool), nodeSearched);
+	}
 
+	/**
+	 * Find the path from start to goal using bidirectional Dijkstra
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal) {
+		return freeze().bidirectionalDijkstra(start, goal);
 	}
 
-	private double getRoadWeight(MapEdge edge, String transTool) {
-		// TODO Auto-generated method stub
-		double roadWeight = Double.POSITIVE_INFINITY;
-		switch(transTool){
-		case "bus":
-		case "car":
-			roadWeight = edge.getLength()/roadTypeSpeedLimitMapping(edge.getRoadType());
-			break;
-		case "walk":
-			roadWeight = edge.getLength()/7.2;//walk speed at 7.2km/h.
-		case "flight":
-			roadWeight = edge.getLength()/900;//flight speed at 900km/h.
-		default:;
-		}
-		return roadWeight;
+	/**
+	 * Find the path from start to goal using bidirectional Dijkstra: a
+	 * forward search from start and a backward search from goal, over the
+	 * reverse adjacency of the frozen graph, that stop once they meet on a
+	 * provably shortest path.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return freeze().bidirectionalDijkstra(start, goal, nodeSearched);
 	}
+
 	/**
-	 * Find the path from start to goal using A-Star search
+	 * Find the path from start to goal with bidirectional A*
 	 * 
 	 * @param start
 	 *            The starting location
@@ -619,15 +705,15 @@ public class MapGraph {
 	 * @return The list of intersections that form the shortest path from start
 	 *         to goal (including both start and goal).
 	 */
-	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) {
-		// Dummy variable for calling the search algorithms
-		Consumer<GeographicPoint> temp = (x) -> {
-		};
-		return aStarSearch(start, goal, temp);
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal) {
+		return bidirectionalAStar(start, goal, (x) -> {
+		});
 	}
 
 	/**
-	 * Find the path from start to goal using A-Star search
+	 * Find the path from start to goal with bidirectional A*.  Both
+	 * searches are guided by the average of the straight line distances to
+	 * goal and from start, which keeps them consistent with each other.
 	 * 
 	 * @param start
 	 *            The starting location
@@ -639,122 +725,961 @@ public class MapGraph {
 	 * @return The list of intersections that form the shortest path from start
 	 *         to goal (including both start and goal).
 	 */
-	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal,
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal,
 			Consumer<GeographicPoint> nodeSearched) {
-		//print the size of this graph
-		System.out.println("this graph contains " + this.getNumVertices() + " vertices, "
-				+ this.getNumEdges() + " edges.");
-		// TODO: Implement this method in WEEK 3
-
-		// Hook for visualization. See writeup.
-		// nodeSearched.accept(next.getLocation());
+		return freeze().bidirectionalAStar(start, goal, nodeSearched);
+	}
 
-		//return null;
-		if (start == null || goal == null)
-			throw new NullPointerException("Cannot find route from or to null node");
-		MapNode startNode = pointNodeMap.get(start);
-		MapNode endNode = pointNodeMap.get(goal);
-		if (startNode == null) {
-			System.err.println("Start node " + start + " does not exist");
-			return null;
-		}
-		if (endNode == null) {
-			System.err.println("End node " + goal + " does not exist");
-			return null;
-		}
+	/**
+	 * Select the landmarks used by altSearch on the current graph
+	 * 
+	 * @param count
+	 *            How many landmarks to select
+	 */
+	public void prepareLandmarks(int count) {
+		landmarks = Landmarks.select(freeze(), count, Landmarks.Selection.AVOID);
+	}
 
-		// setup to begin BFS
-		HashMap<MapNode, MapNode> parentMap = new HashMap<MapNode, MapNode>();
-		Queue<MapNode> toExplore = new PriorityQueue<MapNode>();
-		HashSet<MapNode> visited = new HashSet<MapNode>();
-		//initialize to positive infinity for all vertices
-		for(MapNode tmp : this.pointNodeMap.values()){
-			tmp.setActualDistance(Double.POSITIVE_INFINITY);
-			tmp.setDistance(tmp.getActualDistance());
-		}
-		// startNode with 0 actual distance.
-		startNode.setActualDistance(0);
-		startNode.setDistance(startNode.getActualDistance());
-		toExplore.add(startNode);
-		MapNode next = null;
-		//for advanced testing
-		int countExploredNodes = 0;
-		//for repeated dequed nodes
-		int repeatedDequedNodes = 0;
+	/**
+	 * Load the landmarks used by altSearch from the file saved next to the
+	 * map file, selecting and saving them there first if the file is
+	 * missing or belongs to a different version of the map.
+	 * 
+	 * @param mapFile
+	 *            The map file this graph was loaded from
+	 * @param count
+	 *            How many landmarks to select if they have to be computed
+	 */
+	public void prepareLandmarks(String mapFile, int count) {
+		landmarks = Landmarks.loadOrSelect(mapFile, freeze(), count);
+	}
 
-		while (!toExplore.isEmpty()) {
-			next = toExplore.remove();
-//			visited.add(next);
-			if(visited.add(next) == false){
-				repeatedDequedNodes++;
-			}		
-			countExploredNodes++;
-			// hook for visualization
-			nodeSearched.accept(next.getLocation());
-			System.out.println("distance: " + next.getDistance());
-			if (next.equals(endNode))
-				break;
-			Set<MapNode> neighbors = getNeighbors(next);
-			for (MapNode neighbor : neighbors) {
-				
-				if (!visited.contains(neighbor)) {
-					/*
-					parentMap.put(neighbor, next);
-					// update actual distance from the start node to the
-					// neighbor node.
-					for (MapEdge tmp : next.getEdges()) {
-						if(next.getActualDistance() + tmp.getLength() < neighbor.getDistance()){
-							System.out.println("shorter way to the neighbor node: " + next.toString() + neighbor.toString());
-							parentMap.put(neighbor, next);
-							neighbor.setActualDistance(next.getActualDistance() + tmp.getLength());
-							neighbor.setDistance(neighbor.getActualDistance() + goal.distance(neighbor.getLocation()));
-							toExplore.add(neighbor);
-						}
-					}
-					*/
-				}
-				
-					for (MapEdge tmp : next.getEdges()) {
-						if (tmp.getEndNode().equals(neighbor)) {
-							//judge the distance from the start node to the neighbor node.
-							//if it is shorter, then replace the relation in parent-map.
-							//bug fixed:一条路径到该节点所花实际代价比当前已知代价更大，这并不是一条更好的路径
-//							if(next.getDistance() + tmp.getLength() < neighbor.getDistance()){
-							if(next.getActualDistance() + tmp.getLength() < neighbor.getActualDistance()){
-//								System.out.println("shorter way to the neighbor node: " + next.toString() + neighbor.toString());
-								parentMap.put(neighbor, next);
-								neighbor.setActualDistance(next.getActualDistance() + tmp.getLength());
-								neighbor.setDistance(neighbor.getActualDistance() + goal.distance(neighbor.getLocation()));
-								toExplore.add(neighbor);
-							}
-						}
-					}
-			}
+	/**
+	 * Find the path from start to goal using A* with landmark lower bounds
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> altSearch(GeographicPoint start, GeographicPoint goal) {
+		return altSearch(start, goal, (x) -> {
+		});
+	}
 
+	/**
+	 * Find the path from start to goal using A* with landmark lower bounds
+	 * (ALT). Uses the landmarks from prepareLandmarks, or selects
+	 * Landmarks.DEFAULT_COUNT of them on first use.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> altSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		FrozenMapGraph graph = freeze();
+		Landmarks current = landmarks;
+		if (current == null || !current.isFor(graph, graph.weight)) {
+			current = Landmarks.select(graph, Landmarks.DEFAULT_COUNT, Landmarks.Selection.AVOID);
+			landmarks = current;
 		}
-		if (!next.equals(endNode)) {
-			System.out.println("No path found from " + start + " to " + goal);
+		return graph.altSearch(start, goal, current, nodeSearched);
+	}
+
+	/**
+	 * Build the arc flags used by arcFlagSearch on the current graph
+	 * 
+	 * @param cells
+	 *            How many cells to split the graph into, at most
+	 *            ArcFlags.MAX_CELLS
+	 */
+	public void prepareArcFlags(int cells) {
+		arcFlags = ArcFlags.build(freeze(), cells);
+	}
+
+	/**
+	 * Load the arc flags used by arcFlagSearch from the file saved next to
+	 * the map file, building and saving them there first if the file is
+	 * missing or belongs to a different version of the map.
+	 * 
+	 * @param mapFile
+	 *            The map file this graph was loaded from
+	 * @param cells
+	 *            How many cells to use if the flags have to be built
+	 */
+	public void prepareArcFlags(String mapFile, int cells) {
+		arcFlags = ArcFlags.loadOrBuild(mapFile, freeze(), cells);
+	}
+
+	/**
+	 * Find the path from start to goal using A* pruned by arc flags
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> arcFlagSearch(GeographicPoint start, GeographicPoint goal) {
+		return arcFlagSearch(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using A* that skips every edge on
+	 * no shortest path into the goal's cell.  Uses the flags from
+	 * prepareArcFlags, or builds them with ArcFlags.MAX_CELLS cells on
+	 * first use.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> arcFlagSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		FrozenMapGraph graph = freeze();
+		ArcFlags current = arcFlags;
+		if (current == null || !current.isFor(graph, graph.weight)) {
+			current = ArcFlags.build(graph, ArcFlags.MAX_CELLS);
+			arcFlags = current;
+		}
+		return graph.aStarSearch(start, goal, current, nodeSearched);
+	}
+
+	/**
+	 * Build the contraction hierarchy used by chSearch now rather than on
+	 * the first query
+	 */
+	public void prepareContractionHierarchy() {
+		contractionHierarchy();
+	}
+
+	/**
+	 * Find the path from start to goal through a contraction hierarchy
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> chSearch(GeographicPoint start, GeographicPoint goal) {
+		return chSearch(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal through a contraction hierarchy of
+	 * the current graph, which is built on first use.  Gives the same path
+	 * lengths as dijkstra at a fraction of the settled vertices.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> chSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return contractionHierarchy().shortestPath(start, goal, nodeSearched);
+	}
+
+	// The hierarchy of the current graph, rebuilt after the graph changed
+	private ContractionHierarchy contractionHierarchy() {
+		FrozenMapGraph graph = freeze();
+		ContractionHierarchy current = hierarchy;
+		if (current == null || current.getGraph() != graph) {
+			current = ContractionHierarchy.build(graph);
+			hierarchy = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Build the hub labels used by distance now rather than on the first
+	 * query, in the contraction order of the graph's hierarchy
+	 */
+	public void prepareHubLabels() {
+		hubLabels = HubLabels.build(contractionHierarchy());
+	}
+
+	/**
+	 * Map the hub labels used by distance from the file saved next to the
+	 * map file, building and saving them there first if the file is
+	 * missing or belongs to a different version of the map.
+	 * 
+	 * @param mapFile
+	 *            The map file this graph was loaded from
+	 */
+	public void prepareHubLabels(String mapFile) {
+		hubLabels = HubLabels.openOrBuild(mapFile, freeze());
+	}
+
+	/**
+	 * Return the length of the shortest path from start to goal, without
+	 * the path.  A lookup in hub labels, which are built on first use.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The length in km, or infinity if goal cannot be reached
+	 */
+	public double distance(GeographicPoint start, GeographicPoint goal) {
+		FrozenMapGraph graph = freeze();
+		int[] ids = vertexIds(graph, Arrays.asList(start, goal));
+		HubLabels current = hubLabels;
+		if (current == null || !current.isFor(graph, graph.weight)) {
+			current = HubLabels.build(contractionHierarchy());
+			hubLabels = current;
+		}
+		return current.distance(ids[0], ids[1]);
+	}
+
+	/**
+	 * Split the current graph into cells of about equal size with few
+	 * edges between them
+	 * 
+	 * @param targetCellSize
+	 *            The number of intersections a cell should have
+	 * @return The partition, over the vertex ids of freeze()
+	 */
+	public GraphPartition partition(int targetCellSize) {
+		return GraphPartition.compute(freeze(), targetCellSize);
+	}
+
+	/**
+	 * Customize the overlay used by overlaySearch for the travel times of a
+	 * routing profile.  The overlay itself is built on the first call and
+	 * kept until the graph changes, so calling this again after a change of
+	 * speeds only recomputes the cell cliques.
+	 * 
+	 * @param profile
+	 *            The mode of transport whose travel times (in hours) to use
+	 */
+	public void customizeOverlay(RoutingProfile profile) {
+		FrozenMapGraph graph = freeze();
+		MultiLevelOverlay current = overlay;
+		if (current == null || current.getGraph() != graph) {
+			current = MultiLevelOverlay.build(graph);
+			overlay = current;
+		}
+		customization = current.customize(profile);
+	}
+
+	/**
+	 * Find the fastest path from start to goal over the customized overlay
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> overlaySearch(GeographicPoint start, GeographicPoint goal) {
+		return overlaySearch(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the fastest path from start to goal over the overlay, under the
+	 * travel times it was last customized for by customizeOverlay
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> overlaySearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		MultiLevelOverlay.Customization current = customization;
+		if (current == null) {
+			throw new IllegalStateException("The overlay has not been customized");
+		}
+		if (current.getOverlay().getGraph() != freeze()) {
+			throw new IllegalStateException("The graph has changed since the overlay was customized");
+		}
+		return current.shortestPath(start, goal, nodeSearched);
+	}
+
+	/**
+	 * Compute the cost matrix between every source and every target.  The
+	 * sources are searched in parallel; when a contraction hierarchy for
+	 * the requested costs has already been built (see chSearch), its
+	 * bucket-based many-to-many search is used instead of one Dijkstra
+	 * search per source.
+	 * 
+	 * @param sources
+	 *            The origin locations
+	 * @param targets
+	 *            The destination locations
+	 * @param transTool
+	 *            The transportation tool whose travel times (in hours) to
+	 *            use, as in dijkstra, or null for road lengths in km
+	 * @return matrix[i][j] is the cost from sources.get(i) to targets.get(j),
+	 *         infinite if there is no path
+	 */
+	public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets,
+			String transTool) {
+		return distanceMatrix(sources, targets, profileFor(transTool));
+	}
+
+	/**
+	 * Compute the cost matrix between every source and every target under
+	 * a routing profile, as distanceMatrix with a transTool does
+	 * 
+	 * @param sources
+	 *            The origin locations
+	 * @param targets
+	 *            The destination locations
+	 * @param profile
+	 *            The mode of transport whose travel times (in hours) to
+	 *            use, or null for road lengths in km
+	 * @return matrix[i][j] is the cost from sources.get(i) to targets.get(j),
+	 *         infinite if there is no path
+	 */
+	public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets,
+			RoutingProfile profile) {
+		FrozenMapGraph graph = freeze();
+		int[] sourceIds = vertexIds(graph, sources);
+		int[] targetIds = vertexIds(graph, targets);
+		float[] weights = weightsFor(graph, profile);
+		ContractionHierarchy current = hierarchy;
+		if (current != null && current.isFor(graph, weights)) {
+			return DistanceMatrix.buckets(current, sourceIds, targetIds, ForkJoinPool.commonPool());
+		}
+		return DistanceMatrix.oneToMany(graph, weights, sourceIds, targetIds, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Find every intersection reachable from start within a budget
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param budget
+	 *            The largest cost to include, in hours for a transTool or in
+	 *            km otherwise
+	 * @param transTool
+	 *            The transportation tool whose travel times to use, as in
+	 *            dijkstra, or null for road lengths
+	 * @return The reachable intersections with their costs, or null if start
+	 *         is not in the graph
+	 */
+	public ReachableSet reachable(GeographicPoint start, double budget, String transTool) {
+		return reachable(start, budget, profileFor(transTool), false);
+	}
+
+	/**
+	 * Find every intersection reachable from start within a budget under a
+	 * routing profile
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param budget
+	 *            The largest cost to include, in hours for a profile or in
+	 *            km otherwise
+	 * @param profile
+	 *            The mode of transport whose travel times to use, or null
+	 *            for road lengths
+	 * @return The reachable intersections with their costs, or null if start
+	 *         is not in the graph
+	 */
+	public ReachableSet reachable(GeographicPoint start, double budget, RoutingProfile profile) {
+		return reachable(start, budget, profile, false);
+	}
+
+	/**
+	 * Find every intersection reachable from start within a budget and,
+	 * if asked, the points on the edges leaving that set where the budget
+	 * runs out, for drawing the isochrone.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param budget
+	 *            The largest cost to include, in hours for a transTool or in
+	 *            km otherwise
+	 * @param transTool
+	 *            The transportation tool whose travel times to use, as in
+	 *            dijkstra, or null for road lengths
+	 * @param boundary
+	 *            Whether to compute the boundary points as well
+	 * @return The reachable intersections with their costs, or null if start
+	 *         is not in the graph
+	 */
+	public ReachableSet reachable(GeographicPoint start, double budget, String transTool, boolean boundary) {
+		return reachable(start, budget, profileFor(transTool), boundary);
+	}
+
+	/**
+	 * Find every intersection reachable from start within a budget under a
+	 * routing profile and, if asked, the points on the edges leaving that
+	 * set where the budget runs out, for drawing the isochrone.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param budget
+	 *            The largest cost to include, in hours for a profile or in
+	 *            km otherwise
+	 * @param profile
+	 *            The mode of transport whose travel times to use, or null
+	 *            for road lengths
+	 * @param boundary
+	 *            Whether to compute the boundary points as well
+	 * @return The reachable intersections with their costs, or null if start
+	 *         is not in the graph
+	 */
+	public ReachableSet reachable(GeographicPoint start, double budget, RoutingProfile profile,
+			boolean boundary) {
+		FrozenMapGraph graph = freeze();
+		int s = graph.findVertex(start, "Start");
+		if (s < 0) {
 			return null;
 		}
+		return graph.reachable(s, budget, weightsFor(graph, profile), boundary);
+	}
 
-		// Reconstruct the parent path
-		List<GeographicPoint> path = reconstructPath(parentMap, startNode, endNode);
-		
-		System.out.println("there still remains " + toExplore.size() + " vertices in queue.");
-		System.out.println("Explored Nodes number: " + countExploredNodes);
-		
-		System.out.println("\n\nthe effectiveness of space(|queue|/|V|): " + (100.0 * toExplore.size()/(double)this.getNumVertices()) + "%"
-				+ "\nthe effectiveness of time(|visited nodes|/|path of nodes|): " + (countExploredNodes/(double)path.size()));
-		System.out.println("the overheads increased by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + (100.0*repeatedDequedNodes/(double)countExploredNodes)
-				+ "%\n\n");
-		
-		DecimalFormat percentFormat = new DecimalFormat("#0.00");
-		myGraphLogger.log(Level.INFO, this.getNumVertices() + " vertices, "
-				+ this.getNumEdges() + " edges\n"
-				+ "the effectiveness of space(1 - |the residual of queue|/|V|): " + percentFormat.format(100.0 *(1- toExplore.size()/(double)this.getNumVertices())) + "%\n"
-				+ "the effectiveness of time(|path of nodes|/|visited nodes|): " + percentFormat.format(100.0 *path.size()/(double)countExploredNodes) + "%\n"
-				+ "the overheads caused by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + percentFormat.format(100.0*repeatedDequedNodes/(double)countExploredNodes) + "%");
-		return path;
+	// Map locations to vertex ids, refusing unknown ones
+	private int[] vertexIds(FrozenMapGraph graph, List<GeographicPoint> locations) {
+		int[] ids = new int[locations.size()];
+		for (int i = 0; i < ids.length; i++) {
+			GeographicPoint location = locations.get(i);
+			if (location == null)
+				throw new NullPointerException("Cannot find route from or to null node");
+			ids[i] = graph.snapToVertex(location);
+			if (ids[i] < 0) {
+				throw new IllegalArgumentException("Node " + location + " does not exist");
+			}
+		}
+		return ids;
+	}
+
+	// The profile of a transportation tool, or null for road lengths
+	private static RoutingProfile profileFor(String transTool) {
+		return transTool == null ? null : RoutingProfile.forName(transTool);
+	}
+
+	// Edge costs of the frozen graph under a profile, or the edge lengths
+	// when profile is null
+	private float[] weightsFor(FrozenMapGraph graph, RoutingProfile profile) {
+		if (profile == null) {
+			return graph.weight;
+		}
+		return profile.weights(graph);
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * using Dijkstra's algorithm
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, RoutingProfile profile) {
+		return freeze().dijkstra(start, goal, profile, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * using A-Star search
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, RoutingProfile profile) {
+		return aStarSearch(start, goal, profile, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * using A-Star search.  The heuristic is the straight line distance
+	 * covered at the profile's top speed, which never overestimates the
+	 * travel time.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, RoutingProfile profile,
+			Consumer<GeographicPoint> nodeSearched) {
+		return freeze().aStarSearch(start, goal, profile, nodeSearched);
+	}
+
+	/**
+	 * Find the k fastest loopless routes from start to goal under a routing
+	 * profile
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param k
+	 *            The number of routes wanted
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @return The routes, fastest first, fewer than k if there are no
+	 *         more; or null if start or goal does not exist.
+	 */
+	public List<Route> kShortestPaths(GeographicPoint start, GeographicPoint goal, int k, RoutingProfile profile) {
+		return freeze().kShortestPaths(start, goal, k, profile);
+	}
+
+	/**
+	 * Find the fastest route from start to goal under a routing profile,
+	 * and up to maxAlternatives meaningfully different alternatives, with
+	 * one combined search
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param maxAlternatives
+	 *            The most alternatives wanted
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The fastest route followed by the alternatives, best first;
+	 *         empty if there is no route, or null if start or goal does not
+	 *         exist.
+	 */
+	public List<Route> alternativeRoutes(GeographicPoint start, GeographicPoint goal, int maxAlternatives,
+			RoutingProfile profile, Consumer<GeographicPoint> nodeSearched) {
+		return freeze().alternativeRoutes(start, goal, maxAlternatives, profile, nodeSearched);
+	}
+
+	/**
+	 * Start building a set of road closures for the current version of this
+	 * graph.  The filter it builds can be passed to any number of bfs,
+	 * dijkstra and aStarSearch queries until the graph changes.
+	 * 
+	 * @return A builder with every road open
+	 */
+	public EdgeFilter.Builder edgeFilter() {
+		return new EdgeFilter.Builder(freeze());
+	}
+
+	/**
+	 * Find the path from start to goal using Breadth First Search, around
+	 * closed roads
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param closed
+	 *            The closed roads, from edgeFilter()
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal, EdgeFilter closed) {
+		return freeze().bfs(start, goal, closed, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm, around
+	 * closed roads
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param closed
+	 *            The closed roads, from edgeFilter()
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, EdgeFilter closed) {
+		return freeze().dijkstra(start, goal, closed, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search, around closed
+	 * roads
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param closed
+	 *            The closed roads, from edgeFilter()
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, EdgeFilter closed) {
+		return freeze().aStarSearch(start, goal, closed, (x) -> {
+		});
+	}
+
+	/**
+	 * Start taking live updates of the edge costs, from the travel times of
+	 * a routing profile.  Edge ids are those of the graph returned by
+	 * freeze(); once the graph is changed the live costs have to be
+	 * started again.
+	 * 
+	 * @param profile
+	 *            The mode of transport whose travel times (in hours) to start
+	 *            from
+	 * @return The live costs
+	 */
+	public LiveWeights startLiveWeights(RoutingProfile profile) {
+		FrozenMapGraph graph = freeze();
+		LiveWeights started = new LiveWeights(graph, profile.weights(graph));
+		live = started;
+		return started;
+	}
+
+	/**
+	 * Change the live cost of a batch of edges.  Searches already running
+	 * finish on the costs they started with; later ones see the update.
+	 * 
+	 * @param edgeIds
+	 *            The edges to change, as numbered by freeze()
+	 * @param newWeights
+	 *            Their new travel times in hours; infinity closes an edge
+	 * @return The number of the new version of the costs
+	 */
+	public long applyUpdates(int[] edgeIds, float[] newWeights) {
+		return liveWeights().applyUpdates(edgeIds, newWeights).getNumber();
+	}
+
+	/**
+	 * Find the fastest path from start to goal under the live edge costs
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> liveSearch(GeographicPoint start, GeographicPoint goal) {
+		return liveSearch(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the fastest path from start to goal under the live edge costs,
+	 * as they are when the search starts
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> liveSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		LiveWeights current = liveWeights();
+		return current.getGraph().liveSearch(start, goal, current, nodeSearched);
+	}
+
+	// The live costs, provided they are still for the current graph
+	private LiveWeights liveWeights() {
+		LiveWeights current = live;
+		if (current == null) {
+			throw new IllegalStateException("Live weights have not been started");
+		}
+		if (current.getGraph() != freeze()) {
+			throw new IllegalStateException("The graph has changed since live weights were started");
+		}
+		return current;
+	}
+
+	/**
+	 * Load the traffic profiles route() uses, for the current version of
+	 * this graph.  They are dropped from routing once the graph changes.
+	 * 
+	 * @param fileName
+	 *            The traffic profile file (see TrafficProfiles)
+	 * @return The profiles
+	 * @throws IOException
+	 *             If the file cannot be read or does not match the graph
+	 */
+	public TrafficProfiles loadTrafficProfiles(String fileName) throws IOException {
+		TrafficProfiles loaded = TrafficProfiles.load(fileName, freeze());
+		traffic = loaded;
+		return loaded;
+	}
+
+	/**
+	 * Find the earliest arrival route by car from start to goal, leaving at
+	 * a given time, under the traffic profiles loaded last
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param departureTime
+	 *            The time of leaving, in hours since midnight
+	 * @return The route with the time every intersection on it is reached,
+	 *         or null if there is none
+	 */
+	public TimedRoute route(GeographicPoint start, GeographicPoint goal, double departureTime) {
+		return route(start, goal, departureTime, RoutingProfile.CAR);
+	}
+
+	/**
+	 * Find the earliest arrival route from start to goal, leaving at a
+	 * given time, under the traffic profiles loaded last.  Without traffic
+	 * profiles for the current graph the travel times are free-flow.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param departureTime
+	 *            The time of leaving, in hours since midnight
+	 * @param profile
+	 *            The mode of transport
+	 * @return The route with the time every intersection on it is reached,
+	 *         or null if there is none
+	 */
+	public TimedRoute route(GeographicPoint start, GeographicPoint goal, double departureTime,
+			RoutingProfile profile) {
+		FrozenMapGraph graph = freeze();
+		TrafficProfiles current = traffic;
+		if (current != null && current.getGraph() != graph) {
+			current = null;
+		}
+		return graph.route(start, goal, departureTime, profile, current, (x) -> {
+		});
+	}
+
+	/**
+	 * Load turn restrictions for the current version of this graph
+	 * 
+	 * @param fileName
+	 *            The turn restriction file (see TurnCosts)
+	 * @param uTurnCost
+	 *            The cost of any U-turn the file does not mention, in hours
+	 * @return The turn costs, for turnAwareSearch
+	 * @throws IOException
+	 *             If the file cannot be read or does not match the graph
+	 */
+	public TurnCosts loadTurnCosts(String fileName, double uTurnCost) throws IOException {
+		return TurnCosts.load(fileName, freeze(), uTurnCost);
+	}
+
+	/**
+	 * Find the fastest path from start to goal under a routing profile,
+	 * paying turn costs and never taking a forbidden turn.  The search runs
+	 * over directed road segments instead of intersections, so a route may
+	 * pass an intersection more than once, e.g. to go around a block
+	 * instead of turning where that is not allowed.
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param profile
+	 *            The mode of transport whose travel times to minimize
+	 * @param turns
+	 *            Turn costs for the current version of this graph, in hours
+	 * @return The list of intersections that form the fastest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> turnAwareSearch(GeographicPoint start, GeographicPoint goal,
+			RoutingProfile profile, TurnCosts turns) {
+		return freeze().turnAwareSearch(start, goal, profile, turns, (x) -> {
+		});
+	}
+	/**
+	 * Find the path from start to goal using A-Star search
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) {
+		// Dummy variable for calling the search algorithms
+		Consumer<GeographicPoint> temp = (x) -> {
+		};
+		return aStarSearch(start, goal, temp);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return aStarSearch(start, goal, nodeSearched, QueueType.DEFAULT);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search
+	 * 
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization. See assignment instructions for how
+	 *            to use it.
+	 * @param queueType
+	 *            The priority queue implementation to search with
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, QueueType queueType) {
+		//print the size of this graph
+		System.out.println("this graph contains " + this.getNumVertices() + " vertices, "
+				+ this.getNumEdges() + " edges.");
+		// TODO: Implement this method in WEEK 3
+
+		// Hook for visualization. See writeup.
+		// nodeSearched.accept(next.getLocation());
+
+		//return null;
+		if (start == null || goal == null)
+			throw new NullPointerException("Cannot find route from or to null node");
+		MapNode startNode = snap(start);
+		MapNode endNode = snap(goal);
+		if (startNode == null) {
+			System.err.println("Start node " + start + " does not exist");
+			return null;
+		}
+		if (endNode == null) {
+			System.err.println("End node " + goal + " does not exist");
+			return null;
+		}
+
+		// setup to begin A*. Distances and parents are kept in a per-query
+		// context, so nothing has to be reset on the nodes first.
+		SearchContext ctx = SearchContext.acquire(nodesById.size());
+		try {
+			VertexQueue toExplore = ctx.queue(queueType);
+			// startNode with 0 actual distance.
+			ctx.update(startNode.getId(), 0, startNode.getId(), -1);
+			toExplore.insertOrDecrease(startNode.getId(), 0);
+			MapNode next = null;
+			//for advanced testing
+			int countExploredNodes = 0;
+			//for repeated dequed nodes
+			int repeatedDequedNodes = 0;
+	
+			while (!toExplore.isEmpty()) {
+				int nextId = toExplore.poll();
+				next = nodesById.get(nextId);
+				if (ctx.isSettled(nextId)) {
+					repeatedDequedNodes++;
+				}
+				ctx.settle(nextId);
+				countExploredNodes++;
+				// hook for visualization
+				nodeSearched.accept(next.getLocation());
+				System.out.println("distance: " + ctx.distance(nextId));
+				if (next.equals(endNode))
+					break;
+				double nextDistance = ctx.distance(nextId);
+				for (MapEdge tmp : next.getEdges()) {
+					MapNode neighbor = tmp.getEndNode();
+					//judge the distance from the start node to the neighbor node.
+					//if it is shorter, then replace the relation in parent-map.
+					//bug fixed:一条路径到该节点所花实际代价比当前已知代价更大，这并不是一条更好的路径
+					if (nextDistance + tmp.getLength() < ctx.distance(neighbor.getId())) {
+						ctx.update(neighbor.getId(), nextDistance + tmp.getLength(), nextId, -1);
+						toExplore.insertOrDecrease(neighbor.getId(),
+								nextDistance + tmp.getLength() + endNode.getLocation().distance(neighbor.getLocation()));
+					}
+				}
+	
+			}
+			if (!next.equals(endNode)) {
+				System.out.println("No path found from " + start + " to " + goal);
+				return null;
+			}
+	
+			// Reconstruct the parent path
+			List<GeographicPoint> path = reconstructPath(ctx, startNode, endNode);
+			
+			System.out.println("there still remains " + toExplore.size() + " vertices in queue.");
+			System.out.println("Explored Nodes number: " + countExploredNodes);
+			
+			System.out.println("\n\nthe effectiveness of space(|queue|/|V|): " + (100.0 * toExplore.size()/(double)this.getNumVertices()) + "%"
+					+ "\nthe effectiveness of time(|visited nodes|/|path of nodes|): " + (countExploredNodes/(double)path.size()));
+			System.out.println("the overheads increased by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + (100.0*repeatedDequedNodes/(double)countExploredNodes)
+					+ "%\n\n");
+			
+			DecimalFormat percentFormat = new DecimalFormat("#0.00");
+			myGraphLogger.log(Level.INFO, this.getNumVertices() + " vertices, "
+					+ this.getNumEdges() + " edges\n"
+					+ "the effectiveness of space(1 - |the residual of queue|/|V|): " + percentFormat.format(100.0 *(1- toExplore.size()/(double)this.getNumVertices())) + "%\n"
+					+ "the effectiveness of time(|path of nodes|/|visited nodes|): " + percentFormat.format(100.0 *path.size()/(double)countExploredNodes) + "%\n"
+					+ "the overheads caused by auto-incremented queue(|repeated visited nodes|/|visited nodes|): " + percentFormat.format(100.0*repeatedDequedNodes/(double)countExploredNodes) + "%");
+			return path;
+		} finally {
+			ctx.release();
+		}
 
 	}
 
@@ -4,6 +4,7 @@
 package roadgraph;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import geography.GeographicPoint;
@@ -14,31 +15,25 @@ import geography.GeographicPoint;
  * Class representing a vertex (or node) in our MapGraph
  *
  */
-// WEEK 3 SOLUTIONS implements Comparable
-class MapNode implements Comparable
+// Search state (distances, parents) is kept in a SearchContext rather
+// than on the node, so a MapNode never changes once its edges are added.
+class MapNode
 {
-	/** The list of edges out of this node */
-	private HashSet<MapEdge> edges;
+	/** The list of edges out of this node, in the order they were added,
+	 * which is what numbers the edges of a FrozenMapGraph */
+	private LinkedHashSet<MapEdge> edges;
 		
 	/** the latitude and longitude of this node */
 	private GeographicPoint location;
 	
-	// WEEK 3 SOLUTIONS
+	/** dense index of this node, in the order it was added to the graph */
+	private int id;
 	
-	/** the predicted distance of this node (used in Week 3 algorithms) */
-	private double distance;
-	
-	/** the actual distance of this node from start (used in Week 3 algorithms) */
-	private double actualDistance;
-	
-	// END WEEK 3 SOLUTIONS
-	
-	MapNode(GeographicPoint loc)
+	MapNode(GeographicPoint loc, int id)
 	{
 		location = loc;
-		edges = new HashSet<MapEdge>();
-		distance = 0.0;
-		actualDistance = 0.0;
+		this.id = id;
+		edges = new LinkedHashSet<MapEdge>();
 	}
 		
 	void addEdge(MapEdge edge)
@@ -62,6 +57,12 @@ class MapNode implements Comparable
 		return location;
 	}
 	
+	/** get the dense vertex id of a node */
+	int getId()
+	{
+		return id;
+	}
+	
 	/** return the edges out of this node */
 	Set<MapEdge> getEdges()
 	{
@@ -115,38 +116,4 @@ class MapNode implements Comparable
 		toReturn += ")";
 		return toReturn;
 	}
-
-	//  WEEK 3 SOLUTIONS 
-	
-	// get node distance (predicted)
-	public double getDistance() {
-		return this.distance;
-	}
-	
-	// set node distance (predicted)
-	public void setDistance(double distance) {
-	    this.distance = distance;
-	}
-
-	// get node distance (actual)
-	public double getActualDistance() {
-		return this.actualDistance;
-	}
-	
-	// set node distance (actual)	
-	public void setActualDistance(double actualDistance) {
-	    this.actualDistance = actualDistance;
-	}
-	
-    // Code to implement Comparable
-	public int compareTo(Object o) {
-		// convert to map node, may throw exception
-		MapNode m = (MapNode)o; 
-		return ((Double)this.getDistance()).compareTo((Double) m.getDistance());
-		//the further the node is, the lighter the weight is.
-		//return ((Double)m.getDistance()).compareTo((Double) this.getDistance());
-		//return ((Double)this.getActualDistance()).compareTo((Double) m.getActualDistance());
-	}
-
-	// END WEEK 3 SOLUTIONS
 }
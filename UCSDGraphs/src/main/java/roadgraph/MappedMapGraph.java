@@ -0,0 +1,675 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/**
+ * A read-only road graph that lives in a memory-mapped snapshot file
+ * rather than on the heap.
+ *
+ * A snapshot holds the arrays of a FrozenMapGraph - the forward and
+ * reverse CSR adjacency, edge lengths, road names and types, coordinates,
+ * the location hash table and the k-d tree of the SpatialIndex - one
+ * section after the other, little endian, each section starting on an 8
+ * byte boundary.  Opening it maps the sections with FileChannel.map and
+ * wraps them in int, float and double buffer views; nothing is parsed or
+ * copied, so opening is immediate, the heap only holds the per-query
+ * search state, and every JVM on the host that opens the same file shares
+ * one copy of it in the page cache.  The searches read adjacency straight from the mapped
+ * buffers, and locations that are not exactly an intersection are
+ * snapped with the mapped k-d tree.
+ *
+ * Each section is mapped on its own and may be up to 2 GB, which allows
+ * over 500 million edges.
+ *
+ * Write a snapshot with MapGraph.saveSnapshot or write(), open it with
+ * open().  Instances are safe to share between threads.
+ *
+ */
+public class MappedMapGraph {
+
+	/** Conventional extension of snapshot files */
+	public static final String FILE_EXTENSION = ".graph";
+
+	private static final int MAGIC = 0x474d4150; // "GMAP"
+	private static final int VERSION = 2;
+	// magic, version and seven sizes, padded to 8 bytes, then the
+	// longitude scale of the spatial index
+	private static final int HEADER_BYTES = 48;
+
+	private final int numVertices;
+	private final int numEdges;
+
+	private final IntBuffer firstEdge;
+	private final IntBuffer target;
+	private final IntBuffer source;
+	private final IntBuffer firstInEdge;
+	private final IntBuffer inEdge;
+	private final FloatBuffer weight;
+	private final IntBuffer edgeName;
+	private final IntBuffer edgeType;
+	private final IntBuffer idTable;
+	private final DoubleBuffer lat;
+	private final DoubleBuffer lon;
+
+	// road names and types: UTF-8 bytes of string i are at
+	// offsets[i] .. offsets[i+1] - 1 of the bytes section
+	private final IntBuffer nameOffsets;
+	private final ByteBuffer nameBytes;
+	private final IntBuffer typeOffsets;
+	private final ByteBuffer typeBytes;
+
+	private final SpatialIndex spatialIndex;
+
+	private MappedMapGraph(FileChannel channel, Layout layout, double lonScale) throws IOException {
+		numVertices = layout.numVertices;
+		numEdges = layout.numEdges;
+		firstEdge = map(channel, layout.firstEdge).asIntBuffer();
+		target = map(channel, layout.target).asIntBuffer();
+		source = map(channel, layout.source).asIntBuffer();
+		firstInEdge = map(channel, layout.firstInEdge).asIntBuffer();
+		inEdge = map(channel, layout.inEdge).asIntBuffer();
+		weight = map(channel, layout.weight).asFloatBuffer();
+		edgeName = map(channel, layout.edgeName).asIntBuffer();
+		edgeType = map(channel, layout.edgeType).asIntBuffer();
+		idTable = map(channel, layout.idTable).asIntBuffer();
+		lat = map(channel, layout.lat).asDoubleBuffer();
+		lon = map(channel, layout.lon).asDoubleBuffer();
+		nameOffsets = map(channel, layout.nameOffsets).asIntBuffer();
+		nameBytes = map(channel, layout.nameBytes);
+		typeOffsets = map(channel, layout.typeOffsets).asIntBuffer();
+		typeBytes = map(channel, layout.typeBytes);
+		spatialIndex = new SpatialIndex(lonScale, map(channel, layout.indexX).asDoubleBuffer(),
+				map(channel, layout.indexY).asDoubleBuffer(), map(channel, layout.indexIds).asIntBuffer());
+	}
+
+	private static ByteBuffer map(FileChannel channel, long[] section) throws IOException {
+		long offset = section[0];
+		long size = section[1];
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot section of " + size + " bytes is too large to map");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	/**
+	 * Map a snapshot file
+	 * 
+	 * @param fileName
+	 *            The snapshot
+	 * @return The graph
+	 * @throws IOException
+	 *             If the file cannot be mapped or is not a snapshot of this
+	 *             version
+	 */
+	public static MappedMapGraph open(String fileName) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(fileName + " is not a graph snapshot of version " + VERSION);
+			}
+			Layout layout = new Layout(header.getInt(), header.getInt(), header.getInt(), header.getInt(),
+					header.getInt(), header.getInt(), header.getInt());
+			header.getInt(); // padding
+			double lonScale = header.getDouble();
+			if (channel.size() < layout.fileSize) {
+				throw new IOException(fileName + " is truncated");
+			}
+			// the mappings stay valid after the channel is closed
+			return new MappedMapGraph(channel, layout, lonScale);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write a snapshot of a frozen graph.  The file is written under a
+	 * temporary name and then renamed, so a process mapping the old file
+	 * keeps a consistent view.
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @param fileName
+	 *            The snapshot file to write
+	 * @throws IOException
+	 *             If writing fails
+	 */
+	public static void write(FrozenMapGraph graph, String fileName) throws IOException {
+		byte[][] names = encode(graph.roadNames);
+		byte[][] types = encode(graph.roadTypes);
+		SpatialIndex index = graph.getSpatialIndex();
+		Layout layout = new Layout(graph.numVertices, graph.numEdges, graph.idTable.length, names.length,
+				totalLength(names), types.length, totalLength(types));
+
+		Path path = Paths.get(fileName).toAbsolutePath();
+		Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				Writer out = new Writer(channel);
+				out.putInt(MAGIC).putInt(VERSION).putInt(layout.numVertices).putInt(layout.numEdges)
+						.putInt(layout.idTableLength).putInt(layout.nameCount).putInt(layout.nameByteCount)
+						.putInt(layout.typeCount).putInt(layout.typeByteCount);
+				out.seek(HEADER_BYTES - 8).putDouble(index.getLonScale());
+				out.seek(layout.firstEdge[0]).putInts(graph.firstEdge);
+				out.seek(layout.target[0]).putInts(graph.target);
+				out.seek(layout.source[0]).putInts(graph.source);
+				out.seek(layout.firstInEdge[0]).putInts(graph.firstInEdge);
+				out.seek(layout.inEdge[0]).putInts(graph.inEdge);
+				out.seek(layout.weight[0]);
+				for (float w : graph.weight) {
+					out.putFloat(w);
+				}
+				out.seek(layout.edgeName[0]).putInts(graph.edgeName);
+				out.seek(layout.edgeType[0]).putInts(graph.edgeType);
+				out.seek(layout.idTable[0]).putInts(graph.idTable);
+				out.seek(layout.lat[0]);
+				for (double d : graph.lat) {
+					out.putDouble(d);
+				}
+				out.seek(layout.lon[0]);
+				for (double d : graph.lon) {
+					out.putDouble(d);
+				}
+				out.seek(layout.nameOffsets[0]).putOffsets(names);
+				out.seek(layout.nameBytes[0]).putBytes(names);
+				out.seek(layout.typeOffsets[0]).putOffsets(types);
+				out.seek(layout.typeBytes[0]).putBytes(types);
+				out.seek(layout.indexX[0]).putDoubles(index.getX());
+				out.seek(layout.indexY[0]).putDoubles(index.getY());
+				out.seek(layout.indexIds[0]).putInts(index.getIds());
+				out.seek(layout.fileSize).flush();
+			} finally {
+				channel.close();
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static byte[][] encode(String[] strings) {
+		byte[][] bytes = new byte[strings.length][];
+		for (int i = 0; i < strings.length; i++) {
+			bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+		}
+		return bytes;
+	}
+
+	private static int totalLength(byte[][] bytes) {
+		int total = 0;
+		for (byte[] b : bytes) {
+			total += b.length;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the number of vertices (road intersections) in the graph
+	 *
+	 * @return The number of vertices in the graph.
+	 */
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * Get the number of road segments in the graph
+	 *
+	 * @return The number of edges in the graph.
+	 */
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * Look up the vertex id of an intersection
+	 *
+	 * @param location
+	 *            The location of the intersection
+	 * @return The vertex id, or -1 if there is no vertex at that location
+	 */
+	public int getVertexId(GeographicPoint location) {
+		double x = location.getX();
+		double y = location.getY();
+		int mask = idTable.capacity() - 1;
+		int slot = FrozenMapGraph.slot(x, y, idTable.capacity());
+		int v;
+		while ((v = idTable.get(slot)) != -1) {
+			if (Double.doubleToLongBits(lat.get(v)) == Double.doubleToLongBits(x)
+					&& Double.doubleToLongBits(lon.get(v)) == Double.doubleToLongBits(y)) {
+				return v;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the spatial index over the intersections, mapped from the
+	 * snapshot
+	 *
+	 * @return The spatial index
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/** Return the location of vertex v */
+	public GeographicPoint getLocation(int v) {
+		return new GeographicPoint(lat.get(v), lon.get(v));
+	}
+
+	/** Return the road name of an edge */
+	public String getRoadName(int edge) {
+		return decode(nameOffsets, nameBytes, edgeName.get(edge));
+	}
+
+	/** Return the road type of an edge */
+	public String getRoadType(int edge) {
+		return decode(typeOffsets, typeBytes, edgeType.get(edge));
+	}
+
+	private static String decode(IntBuffer offsets, ByteBuffer bytes, int i) {
+		int from = offsets.get(i);
+		byte[] b = new byte[offsets.get(i + 1) - from];
+		for (int k = 0; k < b.length; k++) {
+			b[k] = bytes.get(from + k);
+		}
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Find the path from start to goal using Breadth First Search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal) {
+		return bfs(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using Breadth First Search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every vertex that is
+	 *            taken out of the queue.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			int[] queue = ctx.buffer();
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = s;
+			ctx.update(s, 0, s, -1);
+			while (head < tail) {
+				int v = queue[head++];
+				nodeSearched.accept(getLocation(v));
+				if (v == t) {
+					return reconstructPath(ctx, s, t);
+				}
+				for (int e = firstEdge.get(v), end = firstEdge.get(v + 1); e < end; e++) {
+					int w = target.get(e);
+					if (!ctx.isReached(w)) {
+						ctx.update(w, ctx.distance(v) + 1, v, e);
+						queue[tail++] = w;
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		System.out.println("No path found from " + start + " to " + goal);
+		return null;
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal) {
+		return dijkstra(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using Dijkstra's algorithm
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, false);
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) {
+		return aStarSearch(start, goal, (x) -> {
+		});
+	}
+
+	/**
+	 * Find the path from start to goal using A-Star search, with the great
+	 * circle distance to the goal as the heuristic
+	 *
+	 * @param start
+	 *            The starting location
+	 * @param goal
+	 *            The goal location
+	 * @param nodeSearched
+	 *            A hook for visualization, called with every settled vertex.
+	 * @return The list of intersections that form the shortest path from start
+	 *         to goal (including both start and goal).
+	 */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return shortestPath(start, goal, nodeSearched, true);
+	}
+
+	private List<GeographicPoint> shortestPath(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched, boolean aStar) {
+		int s = findVertex(start, "Start");
+		int t = findVertex(goal, "End");
+		if (s < 0 || t < 0) {
+			return null;
+		}
+		double goalLat = lat.get(t);
+		double goalLon = lon.get(t);
+
+		SearchContext ctx = SearchContext.acquire(numVertices);
+		try {
+			VertexQueue toExplore = ctx.queue(QueueType.DEFAULT);
+			ctx.update(s, 0, s, -1);
+			toExplore.insertOrDecrease(s, 0);
+			while (!toExplore.isEmpty()) {
+				int v = toExplore.poll();
+				ctx.settle(v);
+				nodeSearched.accept(getLocation(v));
+				if (v == t) {
+					return reconstructPath(ctx, s, t);
+				}
+				double dv = ctx.distance(v);
+				for (int e = firstEdge.get(v), end = firstEdge.get(v + 1); e < end; e++) {
+					int w = target.get(e);
+					double d = dv + weight.get(e);
+					if (d < ctx.distance(w)) {
+						ctx.update(w, d, v, e);
+						double key = aStar ? d + GeographicPoint.distance(lat.get(w), lon.get(w), goalLat, goalLon) : d;
+						toExplore.insertOrDecrease(w, key);
+					}
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+		System.out.println("No path found from " + start + " to " + goal);
+		return null;
+	}
+
+	// Resolve a location to a vertex id, snapping a location that is not
+	// exactly an intersection to the nearest one
+	private int findVertex(GeographicPoint location, String role) {
+		if (location == null)
+			throw new NullPointerException("Cannot find route from or to null node");
+		int v = getVertexId(location);
+		if (v < 0) {
+			v = spatialIndex.nearestVertex(location.getX(), location.getY());
+		}
+		if (v < 0) {
+			System.err.println(role + " node " + location + " does not exist");
+		}
+		return v;
+	}
+
+	private List<GeographicPoint> reconstructPath(SearchContext ctx, int start, int goal) {
+		LinkedList<GeographicPoint> path = new LinkedList<GeographicPoint>();
+		int current = goal;
+		while (current != start) {
+			path.addFirst(getLocation(current));
+			current = ctx.parent(current);
+		}
+		path.addFirst(getLocation(start));
+		return path;
+	}
+
+	// Where every section of a snapshot with the given sizes lives, as
+	// {offset, length} in bytes
+	private static final class Layout {
+		final int numVertices;
+		final int numEdges;
+		final int idTableLength;
+		final int nameCount;
+		final int nameByteCount;
+		final int typeCount;
+		final int typeByteCount;
+
+		final long[] firstEdge;
+		final long[] target;
+		final long[] source;
+		final long[] firstInEdge;
+		final long[] inEdge;
+		final long[] weight;
+		final long[] edgeName;
+		final long[] edgeType;
+		final long[] idTable;
+		final long[] lat;
+		final long[] lon;
+		final long[] nameOffsets;
+		final long[] nameBytes;
+		final long[] typeOffsets;
+		final long[] typeBytes;
+		final long[] indexX;
+		final long[] indexY;
+		final long[] indexIds;
+		final long fileSize;
+
+		private long next = HEADER_BYTES;
+
+		Layout(int numVertices, int numEdges, int idTableLength, int nameCount, int nameByteCount,
+				int typeCount, int typeByteCount) throws IOException {
+			if (numVertices < 0 || numEdges < 0 || idTableLength <= 0 || Integer.bitCount(idTableLength) != 1
+					|| nameCount < 0 || nameByteCount < 0 || typeCount < 0 || typeByteCount < 0) {
+				throw new IOException("Corrupt graph snapshot header");
+			}
+			this.numVertices = numVertices;
+			this.numEdges = numEdges;
+			this.idTableLength = idTableLength;
+			this.nameCount = nameCount;
+			this.nameByteCount = nameByteCount;
+			this.typeCount = typeCount;
+			this.typeByteCount = typeByteCount;
+			firstEdge = section(4L * (numVertices + 1));
+			target = section(4L * numEdges);
+			source = section(4L * numEdges);
+			firstInEdge = section(4L * (numVertices + 1));
+			inEdge = section(4L * numEdges);
+			weight = section(4L * numEdges);
+			edgeName = section(4L * numEdges);
+			edgeType = section(4L * numEdges);
+			idTable = section(4L * idTableLength);
+			lat = section(8L * numVertices);
+			lon = section(8L * numVertices);
+			nameOffsets = section(4L * (nameCount + 1));
+			nameBytes = section(nameByteCount);
+			typeOffsets = section(4L * (typeCount + 1));
+			typeBytes = section(typeByteCount);
+			indexX = section(8L * numVertices);
+			indexY = section(8L * numVertices);
+			indexIds = section(4L * numVertices);
+			fileSize = next;
+		}
+
+		private long[] section(long length) {
+			long[] section = { next, length };
+			next = (next + length + 7) & ~7L;
+			return section;
+		}
+	}
+
+	// Little endian output through one reusable buffer
+	private static final class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long position;
+
+		Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		// Pad with zeros up to the given file offset
+		Writer seek(long offset) throws IOException {
+			while (position < offset) {
+				ensure(1);
+				buffer.put((byte) 0);
+				position++;
+			}
+			return this;
+		}
+
+		Writer putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+			position += 4;
+			return this;
+		}
+
+		Writer putInts(int[] values) throws IOException {
+			for (int value : values) {
+				putInt(value);
+			}
+			return this;
+		}
+
+		Writer putInts(IntBuffer values) throws IOException {
+			while (values.hasRemaining()) {
+				putInt(values.get());
+			}
+			return this;
+		}
+
+		Writer putFloat(float value) throws IOException {
+			ensure(4);
+			buffer.putFloat(value);
+			position += 4;
+			return this;
+		}
+
+		Writer putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+			position += 8;
+			return this;
+		}
+
+		Writer putDoubles(DoubleBuffer values) throws IOException {
+			while (values.hasRemaining()) {
+				putDouble(values.get());
+			}
+			return this;
+		}
+
+		Writer putOffsets(byte[][] strings) throws IOException {
+			int offset = 0;
+			putInt(offset);
+			for (byte[] s : strings) {
+				offset += s.length;
+				putInt(offset);
+			}
+			return this;
+		}
+
+		Writer putBytes(byte[][] strings) throws IOException {
+			for (byte[] s : strings) {
+				for (byte b : s) {
+					ensure(1);
+					buffer.put(b);
+					position++;
+				}
+			}
+			return this;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,499 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/**
+ * Multilevel overlay for routing under edge costs that change often, in
+ * the manner of customizable route planning.
+ *
+ * The vertices are split into nested cells: every level-0 cell lies in
+ * one level-1 cell, every level-1 cell in one level-2 cell and so on.  A
+ * vertex of a cell with an edge coming in from outside the cell is an
+ * entry of the cell, one with an edge going out of it an exit.  This
+ * structure depends only on the shape of the graph and is built once.
+ *
+ * Customization then takes an array of edge costs and computes, for every
+ * cell, the clique of shortest distances from each of its entries to
+ * each of its exits, staying inside the cell.  Level 0 searches the
+ * edges of the graph; every higher level searches the boundary vertices
+ * of its subcells, connected by the cliques of the level below and the
+ * edges between the subcells.  The cells of a level are independent and
+ * are customized in parallel, so new costs (say a changed speed table)
+ * cost a few milliseconds instead of a new preprocessing.
+ *
+ * A query is a Dijkstra search that, at each vertex, uses the coarsest
+ * level whose cell contains neither start nor goal: it crosses such a
+ * cell through its clique and only searches the graph itself close to
+ * the start and goal.  The clique arcs on the path are unpacked by a
+ * search inside their cell.
+ *
+ * An overlay is immutable, and so is each customization; both are safe
+ * to use from several threads.
+ *
+ */
+public class MultiLevelOverlay {
+
+	/** The most vertices a level-0 cell of build() gets */
+	public static final int LEAF_SIZE = 32;
+
+	// Each level of build() merges 2^LEVEL_BITS cells of the level below
+	private static final int LEVEL_BITS = 2;
+
+	private final FrozenMapGraph graph;
+	private final int numLevels;
+
+	// cell[l][v]: the cell of vertex v at level l
+	private final int[][] cell;
+	private final int[] cellCount;
+
+	// The entries of cell c at level l are entry[l][firstEntry[l][c] ..
+	// firstEntry[l][c + 1] - 1], and entryIndex[l][v] is the position of
+	// v among the entries of its cell, -1 if it is none.  Likewise exits.
+	private final int[][] firstEntry;
+	private final int[][] entry;
+	private final int[][] entryIndex;
+	private final int[][] firstExit;
+	private final int[][] exit;
+	private final int[][] exitIndex;
+
+	// The clique of cell c at level l starts at firstClique[l][c] in the
+	// clique arrays of a customization, one row of exits per entry
+	private final int[][] firstClique;
+
+	/**
+	 * Set up the overlay for given nested cells
+	 *
+	 * @param graph
+	 *            The graph
+	 * @param cell
+	 *            cell[l][v] is the cell of vertex v at level l, numbered from
+	 *            0; vertices in one cell at level l must share their cell at
+	 *            level l + 1
+	 */
+	MultiLevelOverlay(FrozenMapGraph graph, int[][] cell) {
+		if (cell.length == 0) {
+			throw new IllegalArgumentException("An overlay needs at least one level");
+		}
+		int n = graph.numVertices;
+		this.graph = graph;
+		this.numLevels = cell.length;
+		this.cell = new int[numLevels][];
+		this.cellCount = new int[numLevels];
+		for (int l = 0; l < numLevels; l++) {
+			if (cell[l].length != n) {
+				throw new IllegalArgumentException("Expected " + n + " cells at level " + l + ", got "
+						+ cell[l].length);
+			}
+			this.cell[l] = cell[l].clone();
+			for (int v = 0; v < n; v++) {
+				if (this.cell[l][v] < 0) {
+					throw new IllegalArgumentException("Negative cell at level " + l);
+				}
+				cellCount[l] = Math.max(cellCount[l], this.cell[l][v] + 1);
+			}
+		}
+		for (int l = 1; l < numLevels; l++) {
+			int[] parent = new int[cellCount[l - 1]];
+			Arrays.fill(parent, -1);
+			for (int v = 0; v < n; v++) {
+				int sub = this.cell[l - 1][v];
+				if (parent[sub] >= 0 && parent[sub] != this.cell[l][v]) {
+					throw new IllegalArgumentException("Cell " + sub + " of level " + (l - 1)
+							+ " is not inside one cell of level " + l);
+				}
+				parent[sub] = this.cell[l][v];
+			}
+		}
+
+		firstEntry = new int[numLevels][];
+		entry = new int[numLevels][];
+		entryIndex = new int[numLevels][];
+		firstExit = new int[numLevels][];
+		exit = new int[numLevels][];
+		exitIndex = new int[numLevels][];
+		firstClique = new int[numLevels][];
+		for (int l = 0; l < numLevels; l++) {
+			int[] c = this.cell[l];
+			boolean[] isEntry = new boolean[n];
+			boolean[] isExit = new boolean[n];
+			for (int v = 0; v < n; v++) {
+				for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+					int w = graph.target[e];
+					if (c[w] != c[v]) {
+						isExit[v] = true;
+						isEntry[w] = true;
+					}
+				}
+			}
+			firstEntry[l] = new int[cellCount[l] + 1];
+			entryIndex[l] = new int[n];
+			entry[l] = boundary(c, cellCount[l], isEntry, firstEntry[l], entryIndex[l]);
+			firstExit[l] = new int[cellCount[l] + 1];
+			exitIndex[l] = new int[n];
+			exit[l] = boundary(c, cellCount[l], isExit, firstExit[l], exitIndex[l]);
+			firstClique[l] = new int[cellCount[l] + 1];
+			for (int k = 0; k < cellCount[l]; k++) {
+				firstClique[l][k + 1] = firstClique[l][k] + entries(l, k) * exits(l, k);
+			}
+		}
+	}
+
+	// Group the marked vertices by cell: fills first and index, returns the
+	// vertices
+	private static int[] boundary(int[] cell, int cells, boolean[] marked, int[] first, int[] index) {
+		for (int v = 0; v < marked.length; v++) {
+			if (marked[v]) {
+				first[cell[v] + 1]++;
+			}
+		}
+		for (int k = 0; k < cells; k++) {
+			first[k + 1] += first[k];
+		}
+		int[] vertices = new int[first[cells]];
+		int[] next = Arrays.copyOf(first, cells);
+		for (int v = 0; v < marked.length; v++) {
+			if (marked[v]) {
+				index[v] = next[cell[v]] - first[cell[v]];
+				vertices[next[cell[v]]++] = v;
+			} else {
+				index[v] = -1;
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * Build an overlay from recursive bisection of the vertex locations,
+	 * with at most LEAF_SIZE vertices in a level-0 cell and four subcells
+	 * in every cell above it
+	 *
+	 * @param graph
+	 *            The graph
+	 * @return The overlay, ready to be customized
+	 */
+	public static MultiLevelOverlay build(FrozenMapGraph graph) {
+		int depth = 1;
+		while (depth < 30 && (graph.numVertices >> depth) >= LEAF_SIZE) {
+			depth++;
+		}
+		int[] leaf = Bisection.split(graph, 1 << depth);
+		int levels = (depth + LEVEL_BITS - 1) / LEVEL_BITS;
+		int[][] cell = new int[levels][graph.numVertices];
+		for (int l = 0; l < levels; l++) {
+			for (int v = 0; v < graph.numVertices; v++) {
+				cell[l][v] = leaf[v] >> (l * LEVEL_BITS);
+			}
+		}
+		return new MultiLevelOverlay(graph, cell);
+	}
+
+	/**
+	 * Build an overlay on nested partitions of a graph, for example one
+	 * from GraphPartition.compute and the partitions merge makes of it
+	 *
+	 * @param levels
+	 *            The partition of each level, finest first; every cell of
+	 *            a level must lie inside one cell of the next
+	 * @return The overlay, ready to be customized
+	 */
+	public static MultiLevelOverlay build(GraphPartition... levels) {
+		if (levels.length == 0) {
+			throw new IllegalArgumentException("An overlay needs at least one level");
+		}
+		FrozenMapGraph graph = levels[0].getGraph();
+		int[][] cell = new int[levels.length][];
+		for (int l = 0; l < levels.length; l++) {
+			if (levels[l].getGraph() != graph) {
+				throw new IllegalArgumentException("The partitions are of different graphs");
+			}
+			cell[l] = levels[l].cells();
+		}
+		return new MultiLevelOverlay(graph, cell);
+	}
+
+	/** Return the graph this overlay was built on */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	/** Return the number of levels */
+	public int getNumLevels() {
+		return numLevels;
+	}
+
+	/** Return the number of cells at a level */
+	public int getCellCount(int level) {
+		return cellCount[level];
+	}
+
+	/** Return the cell of vertex v at a level */
+	public int getCell(int level, int v) {
+		return cell[level][v];
+	}
+
+	/** Return the number of clique arcs at a level */
+	public int getCliqueSize(int level) {
+		return firstClique[level][cellCount[level]];
+	}
+
+	private int entries(int level, int c) {
+		return firstEntry[level][c + 1] - firstEntry[level][c];
+	}
+
+	private int exits(int level, int c) {
+		return firstExit[level][c + 1] - firstExit[level][c];
+	}
+
+	/**
+	 * Customize the overlay for the travel times of a routing profile, on
+	 * the common pool
+	 *
+	 * @param profile
+	 *            The mode of transport
+	 * @return The customized overlay
+	 */
+	public Customization customize(RoutingProfile profile) {
+		return customize(profile.weights(graph), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Customize the overlay for arbitrary edge costs
+	 *
+	 * @param weights
+	 *            The cost of every edge of the graph; infinity closes an
+	 *            edge
+	 * @param pool
+	 *            The pool the cells are customized on
+	 * @return The customized overlay
+	 */
+	Customization customize(float[] weights, ForkJoinPool pool) {
+		if (weights.length != graph.numEdges) {
+			throw new IllegalArgumentException("Expected " + graph.numEdges + " edge costs, got "
+					+ weights.length);
+		}
+		double[][] clique = new double[numLevels][];
+		for (int l = 0; l < numLevels; l++) {
+			int level = l;
+			clique[l] = new double[getCliqueSize(l)];
+			Parallel.forEach(pool, cellCount[l], 1, (c) -> customizeCell(level, c, weights, clique));
+		}
+		return new Customization(weights, clique);
+	}
+
+	// One search per entry of the cell, over the level below
+	private void customizeCell(int level, int c, float[] weights, double[][] clique) {
+		int exits = exits(level, c);
+		SearchContext ctx = SearchContext.acquire(graph.numVertices);
+		try {
+			for (int i = 0; i < entries(level, c); i++) {
+				int source = entry[level][firstEntry[level][c] + i];
+				ctx.begin(graph.numVertices);
+				VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+				ctx.update(source, 0, source, -1);
+				queue.insertOrDecrease(source, 0);
+				while (!queue.isEmpty()) {
+					int v = queue.poll();
+					if (!ctx.isSettled(v)) {
+						ctx.settle(v);
+						relax(ctx, queue, v, level - 1, level, c, weights, clique);
+					}
+				}
+				int row = firstClique[level][c] + i * exits;
+				for (int j = 0; j < exits; j++) {
+					clique[level][row + j] = ctx.distance(exit[level][firstExit[level][c] + j]);
+				}
+			}
+		} finally {
+			ctx.release();
+		}
+	}
+
+	// Relax the arcs out of v that the overlay has at the given level: the
+	// clique of its cell if it is an entry, and the edges leaving its cell
+	// if it is an exit.  Level -1 stands for every edge of the graph.  If
+	// within >= 0, only arcs to cell within of level withinLevel count.
+	private void relax(SearchContext ctx, VertexQueue queue, int v, int level, int withinLevel, int within,
+			float[] weights, double[][] clique) {
+		double dv = ctx.distance(v);
+		if (level >= 0 && entryIndex[level][v] >= 0) {
+			int c = cell[level][v];
+			int exits = exits(level, c);
+			int row = firstClique[level][c] + entryIndex[level][v] * exits;
+			for (int j = 0; j < exits; j++) {
+				int w = exit[level][firstExit[level][c] + j];
+				double d = dv + clique[level][row + j];
+				if (d < ctx.distance(w)) {
+					ctx.update(w, d, v, -2 - level);
+					queue.insertOrDecrease(w, d);
+				}
+			}
+		}
+		if (level >= 0 && exitIndex[level][v] < 0) {
+			return;
+		}
+		for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+			int w = graph.target[e];
+			if (level >= 0 && cell[level][w] == cell[level][v]) {
+				continue;
+			}
+			if (within >= 0 && cell[withinLevel][w] != within) {
+				continue;
+			}
+			double d = dv + weights[e];
+			if (d < ctx.distance(w)) {
+				ctx.update(w, d, v, e);
+				queue.insertOrDecrease(w, d);
+			}
+		}
+	}
+
+	// The coarsest level at which v is in neither the cell of s nor that of
+	// t, or -1
+	private int queryLevel(int v, int s, int t) {
+		int l = numLevels - 1;
+		while (l >= 0 && (cell[l][v] == cell[l][s] || cell[l][v] == cell[l][t])) {
+			l--;
+		}
+		return l;
+	}
+
+	/**
+	 * The overlay customized for one array of edge costs: the cliques of
+	 * every cell, and queries over them.
+	 */
+	public final class Customization {
+		private final float[] weights;
+		private final double[][] clique;
+
+		private Customization(float[] weights, double[][] clique) {
+			this.weights = weights;
+			this.clique = clique;
+		}
+
+		/** Return the overlay this is a customization of */
+		public MultiLevelOverlay getOverlay() {
+			return MultiLevelOverlay.this;
+		}
+
+		/** Return whether this customization is for the given graph and costs */
+		boolean isFor(FrozenMapGraph graph, float[] weights) {
+			return MultiLevelOverlay.this.graph == graph && this.weights == weights;
+		}
+
+		/**
+		 * Find the cheapest path from start to goal over the overlay
+		 *
+		 * @param start
+		 *            The starting location
+		 * @param goal
+		 *            The goal location
+		 * @param nodeSearched
+		 *            A hook for visualization, called with every vertex
+		 *            settled by the search.
+		 * @return The list of intersections that form the shortest path from
+		 *         start to goal (including both start and goal).
+		 */
+		public List<GeographicPoint> shortestPath(GeographicPoint start, GeographicPoint goal,
+				Consumer<GeographicPoint> nodeSearched) {
+			int s = graph.findVertex(start, "Start");
+			int t = graph.findVertex(goal, "End");
+			if (s < 0 || t < 0) {
+				return null;
+			}
+
+			SearchContext ctx = SearchContext.acquire(graph.numVertices);
+			try {
+				if (!search(ctx, s, t, nodeSearched)) {
+					System.out.println("No path found from " + start + " to " + goal);
+					return null;
+				}
+				IntList path = new IntList();
+				for (int v = t; v != s; v = ctx.parent(v)) {
+					int edge = ctx.parentEdge(v);
+					if (edge >= 0) {
+						path.add(v);
+					} else {
+						unpack(ctx.parent(v), v, -2 - edge, path);
+					}
+				}
+				path.add(s);
+				path.reverse();
+				List<GeographicPoint> points = new ArrayList<GeographicPoint>(path.size);
+				for (int i = 0; i < path.size; i++) {
+					points.add(graph.getLocation(path.data[i]));
+				}
+				return points;
+			} finally {
+				ctx.release();
+			}
+		}
+
+		/**
+		 * Return the cost of the cheapest path from s to t, or infinity if t
+		 * cannot be reached
+		 */
+		public double distance(int s, int t) {
+			SearchContext ctx = SearchContext.acquire(graph.numVertices);
+			try {
+				return search(ctx, s, t, null) ? ctx.distance(t) : Double.POSITIVE_INFINITY;
+			} finally {
+				ctx.release();
+			}
+		}
+
+		// Dijkstra over the overlay; returns whether t was reached
+		private boolean search(SearchContext ctx, int s, int t, Consumer<GeographicPoint> nodeSearched) {
+			VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+			ctx.update(s, 0, s, -1);
+			queue.insertOrDecrease(s, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				if (ctx.isSettled(v)) {
+					continue;
+				}
+				ctx.settle(v);
+				if (nodeSearched != null) {
+					nodeSearched.accept(graph.getLocation(v));
+				}
+				if (v == t) {
+					return true;
+				}
+				relax(ctx, queue, v, queryLevel(v, s, t), 0, -1, weights, clique);
+			}
+			return false;
+		}
+
+		// Append the vertices of the cheapest path from u to x inside their
+		// cell at the given level, except u, in reverse order
+		private void unpack(int u, int x, int level, IntList reversed) {
+			int within = cell[level][u];
+			SearchContext ctx = SearchContext.acquire(graph.numVertices);
+			try {
+				VertexQueue queue = ctx.queue(QueueType.DEFAULT);
+				ctx.update(u, 0, u, -1);
+				queue.insertOrDecrease(u, 0);
+				while (!ctx.isSettled(x)) {
+					int v = queue.poll();
+					if (!ctx.isSettled(v)) {
+						ctx.settle(v);
+						relax(ctx, queue, v, -1, level, within, weights, clique);
+					}
+				}
+				for (int v = x; v != u; v = ctx.parent(v)) {
+					reversed.add(v);
+				}
+			} finally {
+				ctx.release();
+			}
+		}
+	}
+}
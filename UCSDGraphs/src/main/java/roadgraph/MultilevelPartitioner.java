@@ -0,0 +1,466 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Multilevel graph partitioning, in the manner of METIS and KaHIP.
+ *
+ * Coarsening contracts a matching of heavy edges, level after level,
+ * until the graph is a few vertices per cell.  The coarsest graph is cut
+ * by weighted recursive bisection of the vertex locations.  The
+ * partition is then projected back through the levels, and at each one
+ * refined by moving boundary vertices to the neighbouring cell they have
+ * the most edges to, within the size limit.
+ *
+ * Both steps run in parallel rounds: every vertex first proposes a
+ * partner (or a move) from a snapshot of the current state, and the
+ * proposals are then applied, matching only vertices that chose each
+ * other and moving only vertices whose move still pays off.  The result
+ * does not depend on the number of threads.
+ *
+ * The partitioner works on an undirected graph with vertex and edge
+ * weights (a Level): the vertex weight is the number of road
+ * intersections a vertex stands for, the edge weight the number of
+ * directed road edges between two of them.
+ *
+ */
+final class MultilevelPartitioner {
+
+	// Coarsening stops at this many vertices per cell, or when a level
+	// shrinks the graph by less than MIN_SHRINK
+	private static final int COARSEST_PER_CELL = 8;
+	private static final double MIN_SHRINK = 0.9;
+
+	// Handshake rounds per matching; each one matches vertices left
+	// unmatched by the rounds before
+	private static final int MATCHING_ROUNDS = 3;
+
+	// A coarse vertex weighs at most this fraction of the cell size limit
+	private static final int CLUSTER_FRACTION = 4;
+
+	// Refinement and rebalancing rounds per level, unless they stop
+	// finding moves earlier
+	private static final int REFINEMENT_ROUNDS = 8;
+	private static final int REBALANCING_ROUNDS = 8;
+
+	private MultilevelPartitioner() {
+	}
+
+	/** An undirected graph with weighted vertices and edges */
+	static final class Level {
+		final int n;
+
+		// neighbours of v: adj[first[v]] .. adj[first[v + 1] - 1], with
+		// the weights of the edges to them in adjWeight
+		final int[] first;
+		final int[] adj;
+		final int[] adjWeight;
+
+		final int[] weight;
+
+		// sums of the locations of the intersections a vertex stands for
+		final double[] latSum;
+		final double[] lonSum;
+
+		private Level(int n, int[] first, int[] adj, int[] adjWeight, int[] weight, double[] latSum,
+				double[] lonSum) {
+			this.n = n;
+			this.first = first;
+			this.adj = adj;
+			this.adjWeight = adjWeight;
+			this.weight = weight;
+			this.latSum = latSum;
+			this.lonSum = lonSum;
+		}
+
+		/** Return the total weight of the vertices */
+		int totalWeight() {
+			int total = 0;
+			for (int v = 0; v < n; v++) {
+				total += weight[v];
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Return the undirected version of a road graph.  Parallel and
+	 * opposite edges become one edge, weighted by how many there are;
+	 * loops are dropped.
+	 */
+	static Level undirected(FrozenMapGraph graph, ForkJoinPool pool) {
+		int n = graph.numVertices;
+		int[][] neighbours = new int[n][];
+		int[][] weights = new int[n][];
+		Parallel.forEach(pool, n, (v) -> {
+			IntList adj = new IntList();
+			IntList adjWeight = new IntList();
+			for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+				add(adj, adjWeight, v, graph.target[e], 1);
+			}
+			for (int i = graph.firstInEdge[v]; i < graph.firstInEdge[v + 1]; i++) {
+				add(adj, adjWeight, v, graph.source[graph.inEdge[i]], 1);
+			}
+			neighbours[v] = adj.toArray();
+			weights[v] = adjWeight.toArray();
+		});
+		int[] weight = new int[n];
+		Arrays.fill(weight, 1);
+		return join(neighbours, weights, weight, graph.lat.clone(), graph.lon.clone());
+	}
+
+	/**
+	 * Contract groups of vertices into single vertices
+	 *
+	 * @param level
+	 *            The graph
+	 * @param map
+	 *            The vertex each vertex is contracted into, from 0 to count
+	 *            - 1
+	 * @param count
+	 *            The number of vertices of the contracted graph
+	 * @param pool
+	 *            The pool to run on
+	 * @return The contracted graph
+	 */
+	static Level contract(Level level, int[] map, int count, ForkJoinPool pool) {
+		int[] weight = new int[count];
+		double[] latSum = new double[count];
+		double[] lonSum = new double[count];
+		int[] firstMember = new int[count + 1];
+		for (int v = 0; v < level.n; v++) {
+			weight[map[v]] += level.weight[v];
+			latSum[map[v]] += level.latSum[v];
+			lonSum[map[v]] += level.lonSum[v];
+			firstMember[map[v] + 1]++;
+		}
+		for (int c = 0; c < count; c++) {
+			firstMember[c + 1] += firstMember[c];
+		}
+		int[] member = new int[level.n];
+		int[] next = Arrays.copyOf(firstMember, count);
+		for (int v = 0; v < level.n; v++) {
+			member[next[map[v]]++] = v;
+		}
+
+		int[][] neighbours = new int[count][];
+		int[][] weights = new int[count][];
+		Parallel.forEach(pool, count, (c) -> {
+			IntList adj = new IntList();
+			IntList adjWeight = new IntList();
+			for (int i = firstMember[c]; i < firstMember[c + 1]; i++) {
+				int v = member[i];
+				for (int j = level.first[v]; j < level.first[v + 1]; j++) {
+					add(adj, adjWeight, c, map[level.adj[j]], level.adjWeight[j]);
+				}
+			}
+			neighbours[c] = adj.toArray();
+			weights[c] = adjWeight.toArray();
+		});
+		return join(neighbours, weights, weight, latSum, lonSum);
+	}
+
+	// Add weight to the edge from v to u in the neighbour list of v
+	private static void add(IntList adj, IntList adjWeight, int v, int u, int weight) {
+		if (u == v) {
+			return;
+		}
+		for (int i = 0; i < adj.size; i++) {
+			if (adj.data[i] == u) {
+				adjWeight.data[i] += weight;
+				return;
+			}
+		}
+		adj.add(u);
+		adjWeight.add(weight);
+	}
+
+	// Put the neighbour lists of all vertices into one array
+	private static Level join(int[][] neighbours, int[][] weights, int[] weight, double[] latSum,
+			double[] lonSum) {
+		int n = neighbours.length;
+		int[] first = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			first[v + 1] = first[v] + neighbours[v].length;
+		}
+		int[] adj = new int[first[n]];
+		int[] adjWeight = new int[first[n]];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(neighbours[v], 0, adj, first[v], neighbours[v].length);
+			System.arraycopy(weights[v], 0, adjWeight, first[v], weights[v].length);
+		}
+		return new Level(n, first, adj, adjWeight, weight, latSum, lonSum);
+	}
+
+	/**
+	 * Partition a graph into cells of limited weight, trying to cut as
+	 * little edge weight as possible
+	 *
+	 * @param level
+	 *            The graph
+	 * @param cells
+	 *            The number of cells
+	 * @param maxCellWeight
+	 *            The most weight a cell should get.  Refinement never
+	 *            exceeds it, but the initial partition may, and if no moves
+	 *            can repair that some cells stay heavier.
+	 * @param pool
+	 *            The pool to run on
+	 * @return The cell of every vertex, from 0 to cells - 1
+	 */
+	static int[] partition(Level level, int cells, int maxCellWeight, ForkJoinPool pool) {
+		List<Level> levels = new ArrayList<Level>();
+		List<int[]> maps = new ArrayList<int[]>();
+		int maxClusterWeight = Math.max(1, maxCellWeight / CLUSTER_FRACTION);
+		Level current = level;
+		while (current.n > COARSEST_PER_CELL * cells) {
+			int[] map = match(current, maxClusterWeight, pool);
+			int count = 0;
+			for (int v = 0; v < current.n; v++) {
+				count = Math.max(count, map[v] + 1);
+			}
+			if (count > current.n * MIN_SHRINK) {
+				break;
+			}
+			levels.add(current);
+			maps.add(map);
+			current = contract(current, map, count, pool);
+		}
+
+		int[] part = bisect(current, cells);
+		refine(current, part, cells, maxCellWeight, pool);
+		for (int i = levels.size() - 1; i >= 0; i--) {
+			int[] map = maps.get(i);
+			Level finer = levels.get(i);
+			int[] projected = new int[finer.n];
+			for (int v = 0; v < finer.n; v++) {
+				projected[v] = part[map[v]];
+			}
+			part = projected;
+			refine(finer, part, cells, maxCellWeight, pool);
+		}
+		return part;
+	}
+
+	/**
+	 * Match vertices along heavy edges, by handshakes: every unmatched
+	 * vertex picks the neighbour it is most strongly tied to (edge weight
+	 * over the product of vertex weights), and two vertices that picked
+	 * each other are matched.
+	 *
+	 * @return The coarse vertex of every vertex; matched vertices share one
+	 */
+	private static int[] match(Level level, int maxClusterWeight, ForkJoinPool pool) {
+		int n = level.n;
+		int[] partner = new int[n];
+		int[] proposal = new int[n];
+		Arrays.fill(partner, -1);
+		for (int round = 0; round < MATCHING_ROUNDS; round++) {
+			Parallel.forEach(pool, n, (v) -> proposal[v] = partner[v] < 0
+					? favourite(level, v, partner, maxClusterWeight) : -1);
+			Parallel.forEach(pool, n, (v) -> {
+				int u = proposal[v];
+				if (u >= 0 && proposal[u] == v) {
+					partner[v] = u;
+				}
+			});
+		}
+		int[] map = new int[n];
+		int count = 0;
+		for (int v = 0; v < n; v++) {
+			map[v] = partner[v] >= 0 && partner[v] < v ? map[partner[v]] : count++;
+		}
+		return map;
+	}
+
+	// The unmatched neighbour v is most strongly tied to, or -1
+	private static int favourite(Level level, int v, int[] partner, int maxClusterWeight) {
+		int best = -1;
+		double bestRating = 0;
+		for (int i = level.first[v]; i < level.first[v + 1]; i++) {
+			int u = level.adj[i];
+			if (partner[u] >= 0 || level.weight[v] + level.weight[u] > maxClusterWeight) {
+				continue;
+			}
+			double rating = level.adjWeight[i] / ((double) level.weight[v] * level.weight[u]);
+			if (rating > bestRating || (rating == bestRating && u < best)) {
+				best = u;
+				bestRating = rating;
+			}
+		}
+		return best;
+	}
+
+	// Initial partition of the coarsest graph: recursive bisection of the
+	// vertex locations, splitting the weight in proportion to the cells
+	private static int[] bisect(Level level, int cells) {
+		Integer[] vertices = new Integer[level.n];
+		for (int v = 0; v < level.n; v++) {
+			vertices[v] = v;
+		}
+		int[] part = new int[level.n];
+		bisect(level, vertices, 0, level.n, 0, cells, part);
+		return part;
+	}
+
+	private static void bisect(Level level, Integer[] vertices, int from, int to, int firstCell, int cells,
+			int[] part) {
+		if (cells == 1 || to - from <= 1) {
+			for (int i = from; i < to; i++) {
+				part[vertices[i]] = firstCell;
+			}
+			return;
+		}
+		double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		long total = 0;
+		for (int i = from; i < to; i++) {
+			int v = vertices[i];
+			double lat = level.latSum[v] / level.weight[v];
+			double lon = level.lonSum[v] / level.weight[v];
+			minLat = Math.min(minLat, lat);
+			maxLat = Math.max(maxLat, lat);
+			minLon = Math.min(minLon, lon);
+			maxLon = Math.max(maxLon, lon);
+			total += level.weight[v];
+		}
+		double[] sum = maxLat - minLat >= maxLon - minLon ? level.latSum : level.lonSum;
+		Arrays.sort(vertices, from, to,
+				(a, b) -> Double.compare(sum[a] / level.weight[a], sum[b] / level.weight[b]));
+		int left = cells / 2;
+		long share = total * left / cells;
+		int mid = from;
+		long weight = 0;
+		while (mid < to - 1 && weight + level.weight[vertices[mid]] / 2 < share) {
+			weight += level.weight[vertices[mid++]];
+		}
+		mid = Math.max(mid, from + 1);
+		bisect(level, vertices, from, mid, firstCell, left, part);
+		bisect(level, vertices, mid, to, firstCell + left, cells - left, part);
+	}
+
+	/**
+	 * Improve a partition in place: first move vertices out of cells over
+	 * the limit, then move vertices to the cell they have the most edge
+	 * weight to, as long as that cuts less and the cell has room
+	 */
+	static void refine(Level level, int[] part, int cells, int maxCellWeight, ForkJoinPool pool) {
+		int n = level.n;
+		int[] cellWeight = new int[cells];
+		for (int v = 0; v < n; v++) {
+			cellWeight[part[v]] += level.weight[v];
+		}
+		int[] move = new int[n];
+		int[] gain = new int[n];
+		rebalance(level, part, cellWeight, maxCellWeight, move, gain, pool);
+
+		for (int round = 0; round < REFINEMENT_ROUNDS; round++) {
+			Parallel.forEach(pool, n, (v) -> bestMove(level, part, v, null, 0, move, gain));
+			int moves = 0;
+			for (int v = 0; v < n; v++) {
+				int to = move[v];
+				if (to < 0 || cellWeight[to] + level.weight[v] > maxCellWeight) {
+					continue;
+				}
+				// neighbours may have moved since the gain was computed
+				if (connection(level, part, v, to) > connection(level, part, v, part[v])) {
+					cellWeight[part[v]] -= level.weight[v];
+					cellWeight[to] += level.weight[v];
+					part[v] = to;
+					moves++;
+				}
+			}
+			if (moves == 0) {
+				break;
+			}
+		}
+	}
+
+	// Move vertices out of cells over the limit into neighbouring cells
+	// with room, losing as little as possible
+	private static void rebalance(Level level, int[] part, int[] cellWeight, int maxCellWeight, int[] move,
+			int[] gain, ForkJoinPool pool) {
+		for (int round = 0; round < REBALANCING_ROUNDS; round++) {
+			boolean over = false;
+			for (int weight : cellWeight) {
+				over |= weight > maxCellWeight;
+			}
+			if (!over) {
+				return;
+			}
+			Parallel.forEach(pool, level.n, (v) -> {
+				if (cellWeight[part[v]] > maxCellWeight) {
+					bestMove(level, part, v, cellWeight, maxCellWeight, move, gain);
+				} else {
+					move[v] = -1;
+				}
+			});
+			IntList candidates = new IntList();
+			for (int v = 0; v < level.n; v++) {
+				if (move[v] >= 0) {
+					candidates.add(v);
+				}
+			}
+			Integer[] order = new Integer[candidates.size];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = candidates.data[i];
+			}
+			Arrays.sort(order, (a, b) -> gain[a] != gain[b] ? Integer.compare(gain[b], gain[a])
+					: Integer.compare(a, b));
+			int moves = 0;
+			for (int v : order) {
+				int from = part[v];
+				int to = move[v];
+				if (cellWeight[from] > maxCellWeight && cellWeight[to] + level.weight[v] <= maxCellWeight) {
+					cellWeight[from] -= level.weight[v];
+					cellWeight[to] += level.weight[v];
+					part[v] = to;
+					moves++;
+				}
+			}
+			if (moves == 0) {
+				return;
+			}
+		}
+	}
+
+	// The neighbouring cell v gains most by moving to, with the gain in
+	// cut weight.  Without cellWeight only moves that cut less count,
+	// otherwise any move to a cell with room for v.
+	private static void bestMove(Level level, int[] part, int v, int[] cellWeight, int maxCellWeight,
+			int[] move, int[] gain) {
+		int own = connection(level, part, v, part[v]);
+		int best = -1;
+		int bestGain = cellWeight == null ? 0 : Integer.MIN_VALUE;
+		for (int i = level.first[v]; i < level.first[v + 1]; i++) {
+			int c = part[level.adj[i]];
+			if (c == part[v] || (cellWeight != null && cellWeight[c] + level.weight[v] > maxCellWeight)) {
+				continue;
+			}
+			int g = connection(level, part, v, c) - own;
+			if (g > bestGain || (g == bestGain && best >= 0 && c < best)) {
+				best = c;
+				bestGain = g;
+			}
+		}
+		move[v] = best;
+		gain[v] = bestGain;
+	}
+
+	// The weight of the edges from v into cell c
+	private static int connection(Level level, int[] part, int v, int c) {
+		int sum = 0;
+		for (int i = level.first[v]; i < level.first[v + 1]; i++) {
+			if (part[level.adj[i]] == c) {
+				sum += level.adjWeight[i];
+			}
+		}
+		return sum;
+	}
+}
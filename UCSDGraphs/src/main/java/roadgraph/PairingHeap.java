@@ -0,0 +1,156 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * A pairing heap of vertex ids with decrease-key.  The tree is kept in
+ * arrays indexed by vertex id (first child, next sibling and the node
+ * before it, which is the parent for a first child), so no node objects
+ * are allocated while a search runs.
+ *
+ */
+final class PairingHeap implements VertexQueue {
+
+	private static final int NONE = -1;
+
+	private final double[] key;
+	private final int[] child;
+	private final int[] sibling;
+	private final int[] prev;
+	private final boolean[] queued;
+
+	// scratch list of subtrees for the two pass merge in poll()
+	private final int[] pending;
+
+	private int root = NONE;
+	private int size;
+
+	PairingHeap(int capacity) {
+		key = new double[capacity];
+		child = new int[capacity];
+		sibling = new int[capacity];
+		prev = new int[capacity];
+		queued = new boolean[capacity];
+		pending = new int[capacity];
+		Arrays.fill(child, NONE);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void insertOrDecrease(int v, double k) {
+		if (!queued[v]) {
+			queued[v] = true;
+			size++;
+			key[v] = k;
+			child[v] = NONE;
+			sibling[v] = NONE;
+			prev[v] = NONE;
+			root = root == NONE ? v : link(root, v);
+			return;
+		}
+		if (k >= key[v]) {
+			return;
+		}
+		key[v] = k;
+		if (v == root) {
+			return;
+		}
+		// cut the subtree of v out and link it back in at the top
+		int before = prev[v];
+		if (child[before] == v) {
+			child[before] = sibling[v];
+		} else {
+			sibling[before] = sibling[v];
+		}
+		if (sibling[v] != NONE) {
+			prev[sibling[v]] = before;
+		}
+		sibling[v] = NONE;
+		prev[v] = NONE;
+		root = link(root, v);
+	}
+
+	public double peekKey() {
+		return key[root];
+	}
+
+	public int poll() {
+		int top = root;
+		queued[top] = false;
+		size--;
+
+		// first pass: link the children of the root in pairs, left to right
+		int count = 0;
+		int c = child[top];
+		while (c != NONE) {
+			int a = c;
+			int b = sibling[a];
+			if (b == NONE) {
+				detach(a);
+				pending[count++] = a;
+				break;
+			}
+			c = sibling[b];
+			detach(a);
+			detach(b);
+			pending[count++] = link(a, b);
+		}
+		// second pass: fold the pairs together right to left
+		int merged = NONE;
+		for (int i = count - 1; i >= 0; i--) {
+			merged = merged == NONE ? pending[i] : link(pending[i], merged);
+		}
+		root = merged;
+		child[top] = NONE;
+		return top;
+	}
+
+	public void clear() {
+		// every queued vertex is reachable from the root
+		if (root != NONE) {
+			int count = 0;
+			pending[count++] = root;
+			while (count > 0) {
+				int v = pending[--count];
+				queued[v] = false;
+				for (int c = child[v]; c != NONE; c = sibling[c]) {
+					pending[count++] = c;
+				}
+				child[v] = NONE;
+			}
+		}
+		root = NONE;
+		size = 0;
+	}
+
+	private void detach(int v) {
+		sibling[v] = NONE;
+		prev[v] = NONE;
+	}
+
+	// Link two detached trees, returning the root of the result
+	private int link(int a, int b) {
+		if (key[b] < key[a]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		int first = child[a];
+		sibling[b] = first;
+		if (first != NONE) {
+			prev[first] = b;
+		}
+		prev[b] = a;
+		child[a] = b;
+		return a;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Fork/join loop over an index range, for the preprocessing steps that
+ * handle vertices (or queries) independently of each other.
+ *
+ */
+final class Parallel {
+
+	// Ranges at most this long are run as one task
+	private static final int GRAIN = 16;
+
+	private Parallel() {
+	}
+
+	/**
+	 * Run body for every index in [0, n) on the given pool and wait for all
+	 * of them to finish.
+	 * 
+	 * @param pool
+	 *            The pool to run on
+	 * @param n
+	 *            The number of indices
+	 * @param body
+	 *            What to do for one index
+	 */
+	static void forEach(ForkJoinPool pool, int n, IntConsumer body) {
+		forEach(pool, n, GRAIN, body);
+	}
+
+	/**
+	 * Run body for every index in [0, n) on the given pool, splitting the
+	 * range down to the given number of indices per task.  For bodies that
+	 * are whole searches, where a grain of one keeps every thread busy.
+	 * 
+	 * @param pool
+	 *            The pool to run on
+	 * @param n
+	 *            The number of indices
+	 * @param grain
+	 *            The most indices one task runs
+	 * @param body
+	 *            What to do for one index
+	 */
+	static void forEach(ForkJoinPool pool, int n, int grain, IntConsumer body) {
+		if (n <= grain) {
+			for (int i = 0; i < n; i++) {
+				body.accept(i);
+			}
+			return;
+		}
+		pool.invoke(new RangeAction(0, n, grain, body));
+	}
+
+	@SuppressWarnings("serial")
+	private static final class RangeAction extends RecursiveAction {
+		private final int from;
+		private final int to;
+		private final int grain;
+		private final IntConsumer body;
+
+		RangeAction(int from, int to, int grain, IntConsumer body) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				for (int i = from; i < to; i++) {
+					body.accept(i);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeAction(from, mid, grain, body), new RangeAction(mid, to, grain, body));
+		}
+	}
+}
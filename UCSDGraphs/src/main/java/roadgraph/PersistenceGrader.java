@@ -0,0 +1,203 @@
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import util.GraphLoader;
+
+/**
+ * Checks that precomputed data saved next to a map file by one process is
+ * accepted by the next one, instead of being rebuilt on every start.
+ *
+ * Each test copies a map into a temporary directory, loads it and saves
+ * the data there, then starts a second JVM that loads the map again (this
+ * time from its .mapbin cache) and reports whether it took the saved file
+ * as it is.
+ */
+public class PersistenceGrader implements Runnable {
+    public String feedback;
+
+    public int correct;
+
+    private static final int TESTS = 6;
+
+    // cells for the arc flag tests
+    private static final int CELLS = 16;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2) {
+            // the second process of a test
+            System.out.println(reload(args[0], args[1]) ? "ACCEPTED" : "REJECTED");
+            return;
+        }
+        PersistenceGrader grader = new PersistenceGrader();
+
+        // Infinite loop detection
+        Thread thread = new Thread(grader);
+        thread.start();
+        long endTime = System.currentTimeMillis() + 60000;
+        boolean infinite = false;
+        while(thread.isAlive()) {
+            // Stop thread after 60 seconds
+            if (System.currentTimeMillis() > endTime) {
+                thread.stop();
+                infinite = true;
+                break;
+            }
+        }
+        if (infinite) {
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+        }
+    }
+
+    /** Load the saved data of the given kind, or build and save it.
+     * @param kind What to save, e.g. "landmarks"
+     * @param mapFile The map file the graph was loaded from
+     * @param graph The graph
+     */
+    private static void prepare(String kind, String mapFile, FrozenMapGraph graph) {
+        switch (kind) {
+        case "landmarks":
+            Landmarks.loadOrSelect(mapFile, graph, Landmarks.DEFAULT_COUNT);
+            break;
+        case "arcflags":
+            ArcFlags.loadOrBuild(mapFile, graph, CELLS);
+            break;
+        case "hubs":
+            HubLabels.openOrBuild(mapFile, graph);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown kind " + kind);
+        }
+    }
+
+    /** Return whether the saved data of the given kind is for the graph */
+    private static boolean isFor(String kind, String mapFile, FrozenMapGraph graph) throws IOException {
+        switch (kind) {
+        case "landmarks":
+            return Landmarks.load(mapFile + Landmarks.FILE_EXTENSION).isFor(graph, graph.weight);
+        case "arcflags":
+            return ArcFlags.load(mapFile + ArcFlags.FILE_EXTENSION).isFor(graph, graph.weight);
+        case "hubs":
+            return HubLabels.open(mapFile + HubLabels.FILE_EXTENSION).isFor(graph, graph.weight);
+        default:
+            throw new IllegalArgumentException("Unknown kind " + kind);
+        }
+    }
+
+    /** Load a map and the data saved for it by an earlier process.
+     * @return Whether the data was accepted and its file left as it was
+     */
+    private static boolean reload(String kind, String mapFile) throws IOException {
+        MapGraph map = new MapGraph();
+        GraphLoader.loadRoadMap(mapFile, map);
+        FrozenMapGraph graph = map.freeze();
+        String fileName = mapFile + fileExtension(kind);
+        byte[] before = Files.readAllBytes(new File(fileName).toPath());
+        boolean accepted = isFor(kind, mapFile, graph);
+        prepare(kind, mapFile, graph);
+        byte[] after = Files.readAllBytes(new File(fileName).toPath());
+        return accepted && Arrays.equals(before, after);
+    }
+
+    private static String fileExtension(String kind) {
+        switch (kind) {
+        case "landmarks":
+            return Landmarks.FILE_EXTENSION;
+        case "arcflags":
+            return ArcFlags.FILE_EXTENSION;
+        case "hubs":
+            return HubLabels.FILE_EXTENSION;
+        default:
+            throw new IllegalArgumentException("Unknown kind " + kind);
+        }
+    }
+
+    /** Save data for a map in this process and load it in another.
+     * @param i The test number
+     * @param file The map file in data/maps
+     * @param kind What to save
+     */
+    public void runTest(int i, String file, String kind) throws IOException, InterruptedException {
+        feedback += appendFeedback(i, "Saving " + kind + " for " + file + " and loading them in a new JVM");
+        Path dir = Files.createTempDirectory("persistence");
+        try {
+            String mapFile = dir.resolve(file).toString();
+            Files.copy(new File("data/maps/" + file).toPath(), dir.resolve(file), StandardCopyOption.REPLACE_EXISTING);
+            MapGraph map = new MapGraph();
+            GraphLoader.loadRoadMap(mapFile, map);
+            prepare(kind, mapFile, map.freeze());
+
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    PersistenceGrader.class.getName(), kind, mapFile).redirectErrorStream(true).start();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            String verdict = null;
+            while ((line = reader.readLine()) != null) {
+                verdict = line;
+            }
+            process.waitFor();
+            if ("ACCEPTED".equals(verdict)) {
+                feedback += "PASSED.";
+                correct++;
+            } else {
+                feedback += "FAILED. The new JVM answered " + verdict + ".";
+            }
+        } finally {
+            for (File f : dir.toFile().listFiles()) {
+                f.delete();
+            }
+            dir.toFile().delete();
+        }
+    }
+
+    /** Run the grader */
+    @Override
+    public void run() {
+        feedback = "";
+
+        correct = 0;
+
+        try {
+            runTest(1, "ucsd.map", "landmarks");
+
+            runTest(2, "san_diego.map", "landmarks");
+
+            runTest(3, "ucsd.map", "arcflags");
+
+            runTest(4, "san_diego.map", "arcflags");
+
+            runTest(5, "ucsd.map", "hubs");
+
+            runTest(6, "san_diego.map", "hubs");
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/**
+ * Times Dijkstra and A* with every QueueType on the maps listed in
+ * data/maps/mapfiles.list, so the decrease-key heaps can be compared with
+ * the old lazy-deletion PriorityQueue.  Run from the project directory:
+ *
+ * <pre>
+ * java roadgraph.QueueBenchmark [queries per map]
+ * </pre>
+ *
+ */
+public class QueueBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		List<String> maps = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader("data/maps/mapfiles.list"));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.trim().isEmpty()) {
+				maps.add(line.trim());
+			}
+		}
+		reader.close();
+
+		System.out.println(String.format("%-22s %-8s %-13s %12s %12s", "map", "search", "queue",
+				"us/query", "settled/q"));
+		for (String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap("data/maps/" + map, graph);
+			FrozenMapGraph frozen = graph.freeze();
+
+			Random random = new Random(42);
+			GeographicPoint[] from = new GeographicPoint[queries];
+			GeographicPoint[] to = new GeographicPoint[queries];
+			for (int i = 0; i < queries; i++) {
+				from[i] = frozen.getLocation(random.nextInt(frozen.getNumVertices()));
+				to[i] = frozen.getLocation(random.nextInt(frozen.getNumVertices()));
+			}
+
+			for (boolean aStar : new boolean[] { false, true }) {
+				for (QueueType type : QueueType.values()) {
+					long[] settled = new long[1];
+					for (int round = 0; round < WARMUP_ROUNDS; round++) {
+						run(frozen, from, to, aStar, type, new long[1]);
+					}
+					long begin = System.nanoTime();
+					run(frozen, from, to, aStar, type, settled);
+					long elapsed = System.nanoTime() - begin;
+					System.out.println(String.format("%-22s %-8s %-13s %12.1f %12.1f", map,
+							aStar ? "A*" : "Dijkstra", type, elapsed / 1000.0 / queries,
+							settled[0] / (double) queries));
+				}
+			}
+		}
+	}
+
+	private static void run(FrozenMapGraph graph, GeographicPoint[] from, GeographicPoint[] to,
+			boolean aStar, QueueType type, long[] settled) {
+		for (int i = 0; i < from.length; i++) {
+			if (aStar) {
+				graph.aStarSearch(from[i], to[i], (x) -> settled[0]++, type);
+			} else {
+				graph.dijkstra(from[i], to[i], (x) -> settled[0]++, type);
+			}
+		}
+	}
+}
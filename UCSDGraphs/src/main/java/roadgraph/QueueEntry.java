@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * A vertex waiting in a priority queue, ordered by the key it had when it
+ * was added.  The key is copied into the entry so that searches never
+ * have to store distances on the shared graph nodes.
+ *
+ */
+class QueueEntry implements Comparable<QueueEntry> {
+	final int vertex;
+	final double key;
+
+	QueueEntry(int vertex, double key) {
+		this.vertex = vertex;
+		this.key = key;
+	}
+
+	public int compareTo(QueueEntry o) {
+		return Double.compare(key, o.key);
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * The priority queues a search can run with.
+ *
+ */
+public enum QueueType {
+
+	/**
+	 * java.util.PriorityQueue with a new entry for every improvement and
+	 * stale entries skipped when polled.  This is how the searches used to
+	 * work, and is kept for comparison.
+	 */
+	LAZY_BINARY,
+
+	/** Indexed 4-ary heap with a real decrease-key */
+	INDEXED_4ARY,
+
+	/** Pairing heap with a real decrease-key */
+	PAIRING;
+
+	/** The queue searches use when none is asked for */
+	public static final QueueType DEFAULT = INDEXED_4ARY;
+
+	/**
+	 * Create an empty queue of this type
+	 *
+	 * @param capacity
+	 *            One more than the largest vertex id that will be queued
+	 * @return The queue
+	 */
+	VertexQueue create(int capacity) {
+		switch (this) {
+		case LAZY_BINARY:
+			return new LazyVertexQueue();
+		case PAIRING:
+			return new PairingHeap(capacity);
+		default:
+			return new IndexedDaryHeap(4, capacity);
+		}
+	}
+}
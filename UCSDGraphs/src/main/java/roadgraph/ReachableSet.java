@@ -0,0 +1,75 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import geography.GeographicPoint;
+
+/**
+ * The result of a reachability (isochrone) query: every intersection that
+ * can be reached from the start within the budget, with its cost, and
+ * optionally the points where the budget runs out part way along an
+ * edge.  Walking those boundary points in order of their angle around the
+ * start gives the outline of the isochrone.
+ *
+ * The arrays are handed out as they are, without copying; treat them as
+ * read-only.
+ *
+ */
+public class ReachableSet {
+
+	private final int[] vertices;
+	private final double[] costs;
+	private final int[] boundaryEdges;
+	private final double[] boundaryLatitudes;
+	private final double[] boundaryLongitudes;
+	private final FrozenMapGraph graph;
+
+	ReachableSet(FrozenMapGraph graph, int[] vertices, double[] costs, int[] boundaryEdges,
+			double[] boundaryLatitudes, double[] boundaryLongitudes) {
+		this.graph = graph;
+		this.vertices = vertices;
+		this.costs = costs;
+		this.boundaryEdges = boundaryEdges;
+		this.boundaryLatitudes = boundaryLatitudes;
+		this.boundaryLongitudes = boundaryLongitudes;
+	}
+
+	/** Return the number of reachable intersections */
+	public int size() {
+		return vertices.length;
+	}
+
+	/** Return the reachable vertex ids, in order of increasing cost */
+	public int[] getVertices() {
+		return vertices;
+	}
+
+	/** Return the cost of every reachable vertex, parallel to getVertices() */
+	public double[] getCosts() {
+		return costs;
+	}
+
+	/** Return the location of the i-th reachable vertex */
+	public GeographicPoint getLocation(int i) {
+		return graph.getLocation(vertices[i]);
+	}
+
+	/**
+	 * Return the edges the budget runs out on, or null if the boundary was
+	 * not asked for
+	 */
+	public int[] getBoundaryEdges() {
+		return boundaryEdges;
+	}
+
+	/** Return the latitude of the budget point on every boundary edge */
+	public double[] getBoundaryLatitudes() {
+		return boundaryLatitudes;
+	}
+
+	/** Return the longitude of the budget point on every boundary edge */
+	public double[] getBoundaryLongitudes() {
+		return boundaryLongitudes;
+	}
+}
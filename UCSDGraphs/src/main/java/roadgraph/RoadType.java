@@ -0,0 +1,69 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The classes of road a map file can name in its road type column.  The
+ * maps are OpenStreetMap extracts, so these are the OSM highway values,
+ * plus the types older hand-made maps used.
+ *
+ * Graphs resolve each distinct road type string once, when the graph is
+ * built, so routing profiles look up speeds by ordinal instead of
+ * comparing strings on every edge.
+ *
+ */
+public enum RoadType {
+	MOTORWAY("motorway"),
+	MOTORWAY_LINK("motorway_link"),
+	TRUNK("trunk"),
+	TRUNK_LINK("trunk_link"),
+	PRIMARY("primary"),
+	PRIMARY_LINK("primary_link"),
+	SECONDARY("secondary"),
+	SECONDARY_LINK("secondary_link"),
+	TERTIARY("tertiary"),
+	TERTIARY_LINK("tertiary_link"),
+	UNCLASSIFIED("unclassified"),
+	RESIDENTIAL("residential"),
+	LIVING_STREET("living_street"),
+	SERVICE("service"),
+	CITY_STREET("city street"),
+	CONNECTOR("connector"),
+
+	/** Any road type not listed above */
+	OTHER("");
+
+	private static final Map<String, RoadType> BY_NAME = new HashMap<String, RoadType>();
+	static {
+		for (RoadType type : values()) {
+			BY_NAME.put(type.name, type);
+		}
+	}
+
+	private final String name;
+
+	private RoadType(String name) {
+		this.name = name;
+	}
+
+	/** Return the road type as it is written in map files */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Look up the class of a road type string from a map file
+	 * 
+	 * @param roadType
+	 *            The road type, e.g. "residential"
+	 * @return Its class, OTHER if it is not a known one
+	 */
+	public static RoadType of(String roadType) {
+		RoadType type = roadType == null ? null : BY_NAME.get(roadType);
+		return type == null ? OTHER : type;
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * One of several candidate routes between two intersections: the edges it
+ * takes, the intersections along it and its total cost under the edge
+ * costs it was found with.
+ *
+ */
+public class Route {
+
+	private final FrozenMapGraph graph;
+	private final int[] edges;
+	private final double cost;
+	private final List<GeographicPoint> path;
+
+	Route(FrozenMapGraph graph, int start, int[] edges, double cost) {
+		this.graph = graph;
+		this.edges = edges;
+		this.cost = cost;
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>(edges.length + 1);
+		points.add(graph.getLocation(start));
+		for (int e : edges) {
+			points.add(graph.getLocation(graph.target[e]));
+		}
+		this.path = Collections.unmodifiableList(points);
+	}
+
+	/** Return the intersections from start to goal */
+	public List<GeographicPoint> getPath() {
+		return path;
+	}
+
+	/** Return the total cost of the edges of the route */
+	public double getCost() {
+		return cost;
+	}
+
+	/** Return the number of edges the route takes */
+	public int getNumEdges() {
+		return edges.length;
+	}
+
+	/** Return the id of the i-th edge of the route */
+	public int getEdge(int i) {
+		return edges[i];
+	}
+
+	/** Return the graph whose edges the route takes */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	// The edges, for the algorithms that extend routes; never modified
+	int[] edges() {
+		return edges;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Route)) {
+			return false;
+		}
+		Route other = (Route) o;
+		return graph == other.graph && Arrays.equals(edges, other.edges);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(edges);
+	}
+
+	@Override
+	public String toString() {
+		return "Route of " + edges.length + " edges, cost " + cost;
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * How fast a mode of transport moves on each class of road.  Edge costs
+ * under a profile are travel times in hours: length / speed.  A speed of
+ * 0 closes that class of road to the profile.
+ *
+ * Profiles are immutable; withSpeed() makes an adjusted copy.  The cost
+ * of every edge of a FrozenMapGraph under a profile is computed once, by
+ * weights(), and kept with the graph.  Profiles with the same name and
+ * speeds share those arrays.
+ *
+ */
+public final class RoutingProfile {
+
+	private static final RoadType[] TYPES = RoadType.values();
+
+	/** Driving, on the speed limits of typical urban roads */
+	public static final RoutingProfile CAR = new RoutingProfile("car", 40)
+			.withSpeed(RoadType.MOTORWAY, 110)
+			.withSpeed(RoadType.MOTORWAY_LINK, 60)
+			.withSpeed(RoadType.TRUNK, 90)
+			.withSpeed(RoadType.TRUNK_LINK, 50)
+			.withSpeed(RoadType.PRIMARY, 70)
+			.withSpeed(RoadType.PRIMARY_LINK, 50)
+			.withSpeed(RoadType.SECONDARY, 60)
+			.withSpeed(RoadType.SECONDARY_LINK, 45)
+			.withSpeed(RoadType.TERTIARY, 50)
+			.withSpeed(RoadType.TERTIARY_LINK, 40)
+			.withSpeed(RoadType.UNCLASSIFIED, 40)
+			.withSpeed(RoadType.RESIDENTIAL, 60)
+			.withSpeed(RoadType.LIVING_STREET, 10)
+			.withSpeed(RoadType.SERVICE, 20)
+			.withSpeed(RoadType.CITY_STREET, 80)
+			.withSpeed(RoadType.CONNECTOR, 40);
+
+	/** Like a car, but slower on the fast roads */
+	public static final RoutingProfile BUS = CAR.withName("bus")
+			.withSpeed(RoadType.MOTORWAY, 90)
+			.withSpeed(RoadType.TRUNK, 80);
+
+	/** Walking at 7.2 km/h, off the motorways */
+	public static final RoutingProfile WALK = new RoutingProfile("walk", 7.2)
+			.withSpeed(RoadType.MOTORWAY, 0)
+			.withSpeed(RoadType.MOTORWAY_LINK, 0);
+
+	/** Cycling at 18 km/h, off the motorways */
+	public static final RoutingProfile BIKE = new RoutingProfile("bike", 18)
+			.withSpeed(RoadType.MOTORWAY, 0)
+			.withSpeed(RoadType.MOTORWAY_LINK, 0);
+
+	/** Flying along the roads at 900 km/h */
+	public static final RoutingProfile FLIGHT = new RoutingProfile("flight", 900);
+
+	private final String name;
+
+	// km/h by RoadType ordinal
+	private final double[] speeds;
+
+	// 1 / speed, or infinity for closed roads
+	private final double[] hoursPerKm;
+
+	/**
+	 * Create a profile with the same speed on every class of road
+	 * 
+	 * @param name
+	 *            The name of the profile
+	 * @param speed
+	 *            The speed in km/h
+	 */
+	public RoutingProfile(String name, double speed) {
+		this(name, filled(speed));
+	}
+
+	private RoutingProfile(String name, double[] speeds) {
+		this.name = name;
+		this.speeds = speeds;
+		hoursPerKm = new double[speeds.length];
+		for (int i = 0; i < speeds.length; i++) {
+			hoursPerKm[i] = speeds[i] > 0 ? 1 / speeds[i] : Double.POSITIVE_INFINITY;
+		}
+	}
+
+	private static double[] filled(double speed) {
+		double[] speeds = new double[TYPES.length];
+		Arrays.fill(speeds, checkSpeed(speed));
+		return speeds;
+	}
+
+	private static double checkSpeed(double speed) {
+		if (!(speed >= 0) || Double.isInfinite(speed)) {
+			throw new IllegalArgumentException("Invalid speed: " + speed);
+		}
+		return speed;
+	}
+
+	/**
+	 * Return a copy of this profile with a different speed on one class of
+	 * road
+	 * 
+	 * @param type
+	 *            The class of road
+	 * @param speed
+	 *            The speed in km/h, 0 to close the road to this profile
+	 * @return The new profile
+	 */
+	public RoutingProfile withSpeed(RoadType type, double speed) {
+		double[] copy = speeds.clone();
+		copy[type.ordinal()] = checkSpeed(speed);
+		return new RoutingProfile(name, copy);
+	}
+
+	/** Return a copy of this profile under another name */
+	public RoutingProfile withName(String name) {
+		return new RoutingProfile(name, speeds);
+	}
+
+	/**
+	 * Look up one of the built-in profiles by the name used for a
+	 * transportation tool elsewhere in MapGraph
+	 * 
+	 * @param transTool
+	 *            "car", "bus", "walk", "bike" or "flight"
+	 * @return The profile
+	 * @throws IllegalArgumentException
+	 *             If there is no such profile
+	 */
+	public static RoutingProfile forName(String transTool) {
+		for (RoutingProfile profile : new RoutingProfile[] { CAR, BUS, WALK, BIKE, FLIGHT }) {
+			if (profile.name.equals(transTool)) {
+				return profile;
+			}
+		}
+		throw new IllegalArgumentException("Unknown transportation tool: " + transTool);
+	}
+
+	/** Return the name of the profile */
+	public String getName() {
+		return name;
+	}
+
+	/** Return the speed in km/h on a class of road, 0 if it is closed */
+	public double getSpeed(RoadType type) {
+		return speeds[type.ordinal()];
+	}
+
+	/** Return the highest speed on any class of road, in km/h */
+	public double getMaxSpeed() {
+		double max = 0;
+		for (double speed : speeds) {
+			max = Math.max(max, speed);
+		}
+		return max;
+	}
+
+	/**
+	 * Return the travel time over a road
+	 * 
+	 * @param length
+	 *            The length of the road in km
+	 * @param type
+	 *            Its class
+	 * @return The time in hours, infinite if the road is closed
+	 */
+	public double cost(double length, RoadType type) {
+		return length * hoursPerKm[type.ordinal()];
+	}
+
+	/**
+	 * Return the travel time over every edge of a graph, computed on the
+	 * first call for this graph and shared afterwards.  Callers must not
+	 * modify the array.
+	 * 
+	 * @param graph
+	 *            The graph
+	 * @return The cost in hours of edge e at index e
+	 */
+	public float[] weights(FrozenMapGraph graph) {
+		return graph.derivedWeights(this, () -> {
+			float[] weights = new float[graph.numEdges];
+			for (int e = 0; e < weights.length; e++) {
+				weights[e] = (float) cost(graph.weight[e], graph.getRoadClass(e));
+			}
+			return weights;
+		});
+	}
+
+	/**
+	 * Return a lower bound on travel times under this profile: the
+	 * straight line distance at the highest speed of the profile.
+	 * 
+	 * @param graph
+	 *            The graph to measure on
+	 * @return The heuristic
+	 */
+	public Heuristic heuristic(FrozenMapGraph graph) {
+		double maxSpeed = getMaxSpeed();
+		return new GreatCircleHeuristic(graph, maxSpeed > 0 ? 1 / maxSpeed : 0);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RoutingProfile)) {
+			return false;
+		}
+		RoutingProfile other = (RoutingProfile) o;
+		return name.equals(other.name) && Arrays.equals(speeds, other.speeds);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode() * 31 + Arrays.hashCode(speeds);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
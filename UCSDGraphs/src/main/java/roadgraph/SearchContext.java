@@ -0,0 +1,184 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Scratch state for one graph search: tentative distances, parents and
+ * settled flags, indexed by vertex id.
+ *
+ * Rather than resetting every vertex before a query, each entry carries
+ * the epoch it was last written in.  Starting a new query just bumps the
+ * epoch, so a search only ever touches the vertices it actually reaches,
+ * and the graph itself is never written to.  That is what lets several
+ * threads route on the same MapGraph or FrozenMapGraph at once.
+ *
+ * Contexts are pooled per thread:
+ *
+ * <pre>
+ * SearchContext ctx = SearchContext.acquire(numVertices);
+ * try {
+ *     ...
+ * } finally {
+ *     ctx.release();
+ * }
+ * </pre>
+ *
+ */
+final class SearchContext {
+
+	// Free contexts of the current thread.  A deque rather than a single
+	// context so that searches which need two at once (or which run a
+	// search from inside another one) still get distinct instances.
+	private static final ThreadLocal<ArrayDeque<SearchContext>> POOL =
+			ThreadLocal.withInitial(ArrayDeque::new);
+
+	private int epoch;
+
+	// reached[v] == epoch means dist, parent and parentEdge of v are valid
+	private int[] reached;
+
+	// settled[v] == epoch means v has been settled in this query
+	private int[] settled;
+
+	private double[] dist;
+	private int[] parent;
+	private int[] parentEdge;
+
+	// scratch space for searches that need a plain int queue or stack
+	private int[] buffer;
+
+	// one lazily created priority queue per QueueType, sized like the arrays
+	private final VertexQueue[] queues = new VertexQueue[QueueType.values().length];
+
+	private SearchContext(int size) {
+		reached = new int[size];
+		settled = new int[size];
+		dist = new double[size];
+		parent = new int[size];
+		parentEdge = new int[size];
+		buffer = new int[size];
+	}
+
+	/**
+	 * Take a context from the current thread's pool and start a new query
+	 * on it.
+	 *
+	 * @param size
+	 *            The number of vertices the query may touch
+	 * @return A context with every vertex unreached
+	 */
+	static SearchContext acquire(int size) {
+		SearchContext ctx = POOL.get().pollFirst();
+		if (ctx == null) {
+			ctx = new SearchContext(size);
+		}
+		ctx.begin(size);
+		return ctx;
+	}
+
+	/** Give this context back to the current thread's pool. */
+	void release() {
+		POOL.get().addFirst(this);
+	}
+
+	/**
+	 * Forget the previous query.  This is O(1) except when the arrays have
+	 * to grow or, once every 2^31 queries, when the epoch wraps around.
+	 */
+	void begin(int size) {
+		if (reached.length < size) {
+			int newSize = Math.max(size, reached.length + (reached.length >> 1));
+			reached = new int[newSize];
+			settled = new int[newSize];
+			dist = new double[newSize];
+			parent = new int[newSize];
+			parentEdge = new int[newSize];
+			buffer = new int[newSize];
+			Arrays.fill(queues, null);
+			epoch = 0;
+		}
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			epoch = 0;
+		}
+		epoch++;
+	}
+
+	/** Return whether v has a tentative distance in this query */
+	boolean isReached(int v) {
+		return reached[v] == epoch;
+	}
+
+	/** Return the tentative distance of v, or infinity if unreached */
+	double distance(int v) {
+		return reached[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+	}
+
+	/** Return the vertex v was reached from, or -1 if unreached */
+	int parent(int v) {
+		return reached[v] == epoch ? parent[v] : -1;
+	}
+
+	/** Return the edge v was reached through, or -1 if unreached */
+	int parentEdge(int v) {
+		return reached[v] == epoch ? parentEdge[v] : -1;
+	}
+
+	/**
+	 * Record a (better) tentative distance for v
+	 *
+	 * @param v
+	 *            The vertex
+	 * @param distance
+	 *            Its distance from the start
+	 * @param from
+	 *            The vertex it was reached from
+	 * @param edge
+	 *            The edge it was reached through, or -1 if not tracked
+	 */
+	void update(int v, double distance, int from, int edge) {
+		reached[v] = epoch;
+		dist[v] = distance;
+		parent[v] = from;
+		parentEdge[v] = edge;
+	}
+
+	/** Mark v as settled */
+	void settle(int v) {
+		settled[v] = epoch;
+	}
+
+	/** Return whether v has been settled in this query */
+	boolean isSettled(int v) {
+		return settled[v] == epoch;
+	}
+
+	/**
+	 * Return an empty priority queue of the given type, big enough for
+	 * every vertex of the query.  The same instance is handed out again
+	 * by later queries on this context.
+	 */
+	VertexQueue queue(QueueType type) {
+		VertexQueue queue = queues[type.ordinal()];
+		if (queue == null) {
+			queue = type.create(reached.length);
+			queues[type.ordinal()] = queue;
+		} else {
+			queue.clear();
+		}
+		return queue;
+	}
+
+	/**
+	 * Return an int array at least as long as the query size.  Its contents
+	 * are whatever the previous query left there.
+	 */
+	int[] buffer() {
+		return buffer;
+	}
+}
@@ -0,0 +1,339 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Packed k-d tree over the intersections of a FrozenMapGraph, for snapping
+ * GPS coordinates to the road network.
+ *
+ * Points are projected onto a plane with the equirectangular projection
+ * around the middle of the map (x = longitude * cos(middle latitude),
+ * y = latitude, both in km), which for city-sized maps is within a
+ * fraction of a percent of the great circle distance.  The tree is stored
+ * implicitly: the points are reordered so that the median of every range
+ * sits at its middle index, splitting on alternating axes, so there are
+ * no node objects and no pointers.
+ *
+ * The three flat arrays are kept as buffers, so a MappedMapGraph can store
+ * them in its snapshot and query them in place without rebuilding.
+ *
+ * Nearest and k-nearest queries take O(log n) on average, radius queries
+ * O(log n + results).
+ *
+ */
+public class SpatialIndex {
+
+	// km per degree of latitude on a sphere of radius 6373 km, the radius
+	// GeographicPoint uses
+	private static final double KM_PER_DEGREE = 6373 * Math.PI / 180;
+
+	private final double lonScale;
+
+	// projected coordinates and vertex ids, in tree order
+	private final DoubleBuffer x;
+	private final DoubleBuffer y;
+	private final IntBuffer ids;
+
+	/**
+	 * Build the index over the given vertex locations
+	 * 
+	 * @param lat
+	 *            The latitude of every vertex, by vertex id
+	 * @param lon
+	 *            The longitude of every vertex, by vertex id
+	 */
+	SpatialIndex(double[] lat, double[] lon) {
+		int n = lat.length;
+		double minLat = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY;
+		for (double l : lat) {
+			minLat = Math.min(minLat, l);
+			maxLat = Math.max(maxLat, l);
+		}
+		lonScale = n == 0 ? KM_PER_DEGREE : KM_PER_DEGREE * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+		Tree tree = new Tree(n);
+		for (int v = 0; v < n; v++) {
+			tree.x[v] = lon[v] * lonScale;
+			tree.y[v] = lat[v] * KM_PER_DEGREE;
+			tree.ids[v] = v;
+		}
+		tree.build(0, n, 0);
+		x = DoubleBuffer.wrap(tree.x);
+		y = DoubleBuffer.wrap(tree.y);
+		ids = IntBuffer.wrap(tree.ids);
+	}
+
+	/**
+	 * Wrap an index that was already built, such as one mapped from a
+	 * snapshot
+	 * 
+	 * @param lonScale
+	 *            The km per degree of longitude the coordinates were
+	 *            projected with
+	 * @param x
+	 *            The projected x coordinates, in tree order
+	 * @param y
+	 *            The projected y coordinates, in tree order
+	 * @param ids
+	 *            The vertex ids, in tree order
+	 */
+	SpatialIndex(double lonScale, DoubleBuffer x, DoubleBuffer y, IntBuffer ids) {
+		this.lonScale = lonScale;
+		this.x = x;
+		this.y = y;
+		this.ids = ids;
+	}
+
+	// The arrays of an index while it is built
+	private static final class Tree {
+		final double[] x;
+		final double[] y;
+		final int[] ids;
+
+		Tree(int n) {
+			x = new double[n];
+			y = new double[n];
+			ids = new int[n];
+		}
+
+		// Put the median of [from, to) on the given axis at the middle,
+		// smaller before it and larger after, then recurse on both halves
+		void build(int from, int to, int axis) {
+			if (to - from <= 1) {
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			select(from, to - 1, mid, axis == 0 ? x : y);
+			build(from, mid, axis ^ 1);
+			build(mid + 1, to, axis ^ 1);
+		}
+
+		// Quickselect on keys[lo..hi] so that position k holds its sorted
+		// value
+		private void select(int lo, int hi, int k, double[] keys) {
+			while (hi > lo) {
+				double pivot = keys[(lo + hi) >>> 1];
+				int i = lo;
+				int j = hi;
+				while (i <= j) {
+					while (keys[i] < pivot) {
+						i++;
+					}
+					while (keys[j] > pivot) {
+						j--;
+					}
+					if (i <= j) {
+						swap(i++, j--);
+					}
+				}
+				if (k <= j) {
+					hi = j;
+				} else if (k >= i) {
+					lo = i;
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void swap(int i, int j) {
+			double tx = x[i];
+			x[i] = x[j];
+			x[j] = tx;
+			double ty = y[i];
+			y[i] = y[j];
+			y[j] = ty;
+			int t = ids[i];
+			ids[i] = ids[j];
+			ids[j] = t;
+		}
+	}
+
+	/** Return the number of indexed vertices */
+	public int size() {
+		return ids.capacity();
+	}
+
+	// The projection and the flat arrays, for writing the index into a
+	// snapshot
+	double getLonScale() {
+		return lonScale;
+	}
+
+	DoubleBuffer getX() {
+		return x.duplicate();
+	}
+
+	DoubleBuffer getY() {
+		return y.duplicate();
+	}
+
+	IntBuffer getIds() {
+		return ids.duplicate();
+	}
+
+	/**
+	 * Find the vertex closest to a location
+	 * 
+	 * @param latitude
+	 *            The latitude of the location
+	 * @param longitude
+	 *            The longitude of the location
+	 * @return The vertex id, or -1 if the index is empty
+	 */
+	public int nearestVertex(double latitude, double longitude) {
+		int[] nearest = kNearest(latitude, longitude, 1);
+		return nearest.length == 0 ? -1 : nearest[0];
+	}
+
+	/**
+	 * Find the k vertices closest to a location
+	 * 
+	 * @param latitude
+	 *            The latitude of the location
+	 * @param longitude
+	 *            The longitude of the location
+	 * @param k
+	 *            How many vertices to return
+	 * @return Up to k vertex ids, nearest first
+	 */
+	public int[] kNearest(double latitude, double longitude, int k) {
+		k = Math.min(k, ids.capacity());
+		if (k <= 0) {
+			return new int[0];
+		}
+		Candidates best = new Candidates(k);
+		nearest(0, ids.capacity(), 0, longitude * lonScale, latitude * KM_PER_DEGREE, best);
+		return best.sorted();
+	}
+
+	private void nearest(int from, int to, int axis, double qx, double qy, Candidates best) {
+		if (from >= to) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		double dx = x.get(mid) - qx;
+		double dy = y.get(mid) - qy;
+		best.offer(ids.get(mid), dx * dx + dy * dy);
+		double split = axis == 0 ? dx : dy;
+		// split > 0: the query is on the low side of the median
+		if (split > 0) {
+			nearest(from, mid, axis ^ 1, qx, qy, best);
+			if (split * split < best.bound()) {
+				nearest(mid + 1, to, axis ^ 1, qx, qy, best);
+			}
+		} else {
+			nearest(mid + 1, to, axis ^ 1, qx, qy, best);
+			if (split * split < best.bound()) {
+				nearest(from, mid, axis ^ 1, qx, qy, best);
+			}
+		}
+	}
+
+	/**
+	 * Find every vertex within a radius of a location
+	 * 
+	 * @param latitude
+	 *            The latitude of the location
+	 * @param longitude
+	 *            The longitude of the location
+	 * @param radius
+	 *            The radius in km
+	 * @return The vertex ids, in no particular order
+	 */
+	public int[] withinRadius(double latitude, double longitude, double radius) {
+		IntList found = new IntList();
+		within(0, ids.capacity(), 0, longitude * lonScale, latitude * KM_PER_DEGREE, radius, found);
+		return found.toArray();
+	}
+
+	private void within(int from, int to, int axis, double qx, double qy, double radius,
+			IntList found) {
+		if (from >= to) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		double dx = x.get(mid) - qx;
+		double dy = y.get(mid) - qy;
+		if (dx * dx + dy * dy <= radius * radius) {
+			found.add(ids.get(mid));
+		}
+		double split = axis == 0 ? dx : dy;
+		if (split >= -radius) {
+			within(from, mid, axis ^ 1, qx, qy, radius, found);
+		}
+		if (split <= radius) {
+			within(mid + 1, to, axis ^ 1, qx, qy, radius, found);
+		}
+	}
+
+	// The k best (id, squared distance) pairs seen so far, as a max-heap on
+	// distance so the worst one is at the root
+	private static final class Candidates {
+		private final int[] id;
+		private final double[] dist;
+		private int size;
+
+		Candidates(int k) {
+			id = new int[k];
+			dist = new double[k];
+		}
+
+		// The squared distance a new point has to beat
+		double bound() {
+			return size < id.length ? Double.POSITIVE_INFINITY : dist[0];
+		}
+
+		void offer(int v, double d) {
+			if (size < id.length) {
+				int i = size++;
+				while (i > 0 && dist[(i - 1) / 2] < d) {
+					id[i] = id[(i - 1) / 2];
+					dist[i] = dist[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				id[i] = v;
+				dist[i] = d;
+			} else if (d < dist[0]) {
+				siftDown(v, d, size);
+			}
+		}
+
+		// Replace the root by (v, d) within the first n entries
+		private void siftDown(int v, double d, int n) {
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= n) {
+					break;
+				}
+				if (child + 1 < n && dist[child + 1] > dist[child]) {
+					child++;
+				}
+				if (dist[child] <= d) {
+					break;
+				}
+				id[i] = id[child];
+				dist[i] = dist[child];
+				i = child;
+			}
+			id[i] = v;
+			dist[i] = d;
+		}
+
+		// Empty the heap into an array, nearest first
+		int[] sorted() {
+			int[] result = new int[size];
+			for (int n = size; n > 0; n--) {
+				result[n - 1] = id[0];
+				siftDown(id[n - 1], dist[n - 1], n - 1);
+			}
+			size = 0;
+			return result;
+		}
+	}
+}
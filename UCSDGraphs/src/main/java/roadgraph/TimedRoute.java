@@ -0,0 +1,50 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * The result of a time-dependent route query: the intersections along
+ * the route and the time each of them is reached, in hours since
+ * midnight of the day of departure.
+ *
+ */
+public class TimedRoute {
+
+	private final List<GeographicPoint> path;
+	private final double[] times;
+
+	TimedRoute(List<GeographicPoint> path, double[] times) {
+		this.path = path;
+		this.times = times;
+	}
+
+	/** Return the intersections from start to goal */
+	public List<GeographicPoint> getPath() {
+		return path;
+	}
+
+	/** Return the time the i-th intersection of the path is reached */
+	public double getTime(int i) {
+		return times[i];
+	}
+
+	/** Return the departure time */
+	public double getDepartureTime() {
+		return times[0];
+	}
+
+	/** Return the arrival time at the goal */
+	public double getArrivalTime() {
+		return times[times.length - 1];
+	}
+
+	/** Return the travel time in hours */
+	public double getDuration() {
+		return getArrivalTime() - getDepartureTime();
+	}
+}
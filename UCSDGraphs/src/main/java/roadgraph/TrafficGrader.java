@@ -0,0 +1,133 @@
+package roadgraph;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/**
+ * Checks time-dependent routing under traffic profiles for every mode of
+ * transport, in particular that roads a mode may not use, such as
+ * motorways for walking and cycling, do not fail the FIFO check.
+ */
+public class TrafficGrader implements Runnable {
+    public String feedback;
+
+    public int correct;
+
+    private static final int TESTS = 4;
+
+    // a rush hour profile on the motorways of the map
+    private static final String PROFILES = String.join("\n",
+            "profile rush 0=1 7=1 8=1.8 9.5=1.2 16=1.2 17.5=1.9 19=1",
+            "type MOTORWAY rush",
+            "type MOTORWAY_LINK rush");
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        TrafficGrader grader = new TrafficGrader();
+
+        // Infinite loop detection
+        Thread thread = new Thread(grader);
+        thread.start();
+        long endTime = System.currentTimeMillis() + 10000;
+        boolean infinite = false;
+        while(thread.isAlive()) {
+            // Stop thread after 10 seconds
+            if (System.currentTimeMillis() > endTime) {
+                thread.stop();
+                infinite = true;
+                break;
+            }
+        }
+        if (infinite) {
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+        }
+    }
+
+    /** Route under the traffic profiles and check a route is found.
+     * @param i The test number
+     * @param map The graph, with the profiles loaded
+     * @param profile The mode of transport
+     * @param start The starting location
+     * @param goal The goal location
+     * @param departureTime The time of leaving, in hours since midnight
+     */
+    public void runTest(int i, MapGraph map, RoutingProfile profile, GeographicPoint start,
+            GeographicPoint goal, double departureTime) {
+        feedback += appendFeedback(i, "Routing by " + profile.getName() + " at " + departureTime + " h");
+        TimedRoute route;
+        try {
+            route = map.route(start, goal, departureTime, profile);
+        } catch (IllegalArgumentException e) {
+            feedback += "FAILED. The route was rejected: " + e.getMessage();
+            return;
+        }
+        if (route == null) {
+            feedback += "FAILED. No route was found.";
+        } else if (!route.getPath().get(0).equals(start)
+                || !route.getPath().get(route.getPath().size() - 1).equals(goal)) {
+            feedback += "FAILED. The route does not go from start to goal.";
+        } else if (!(route.getArrivalTime() > departureTime)
+                || Double.isInfinite(route.getArrivalTime())) {
+            feedback += "FAILED. The arrival time " + route.getArrivalTime() + " is wrong.";
+        } else {
+            feedback += "PASSED.";
+            correct++;
+        }
+    }
+
+    /** Run the grader */
+    @Override
+    public void run() {
+        feedback = "";
+
+        correct = 0;
+
+        try {
+            MapGraph map = new MapGraph();
+            GraphLoader.loadRoadMap("data/maps/san_diego.map", map);
+            Path file = Files.createTempFile("rush", TrafficProfiles.FILE_EXTENSION);
+            try {
+                Files.write(file, Arrays.asList(PROFILES), StandardCharsets.UTF_8);
+                map.loadTrafficProfiles(file.toString());
+            } finally {
+                Files.delete(file);
+            }
+            GeographicPoint start = new GeographicPoint(32.7115368, -117.1722017);
+            GeographicPoint goal = new GeographicPoint(32.70628, -117.146698);
+
+            runTest(1, map, RoutingProfile.CAR, start, goal, 8);
+
+            runTest(2, map, RoutingProfile.WALK, start, goal, 8);
+
+            runTest(3, map, RoutingProfile.BIKE, start, goal, 17.5);
+
+            runTest(4, map, RoutingProfile.BUS, goal, start, 12);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
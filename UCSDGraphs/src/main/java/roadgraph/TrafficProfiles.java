@@ -0,0 +1,335 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * Time-dependent travel times for the edges of a FrozenMapGraph.
+ *
+ * A traffic profile is a piecewise-linear function over the day that
+ * multiplies an edge's free-flow travel time: 1 is free flow, 2 takes
+ * twice as long.  It is given by breakpoints (hour of day, factor), and
+ * wraps around midnight from the last breakpoint to the first.  Many
+ * edges share one profile, so profiles live once in a pool (identical
+ * ones are merged) and every edge stores only the index of its profile,
+ * or -1 for a constant factor of 1.
+ *
+ * Time-dependent search needs the FIFO property: leaving later never
+ * means arriving earlier.  With factor f(t) and free-flow time w that
+ * holds as long as w * f'(t) >= -1, i.e. traffic never clears faster than
+ * the edge can be driven.  checkFifo() verifies this for a set of
+ * free-flow times before they are searched with.
+ *
+ * Profiles are read from a text file, one statement per line:
+ *
+ * <pre>
+ * profile rush 0=1 7=1 8=1.8 9.5=1.2 16=1.2 17.5=1.9 19=1
+ * type PRIMARY rush
+ * edge fromLat fromLon toLat toLon rush
+ * </pre>
+ *
+ * "profile" defines a profile by hour=factor breakpoints in increasing
+ * hour order, "type" assigns one to every road of a RoadType, and
+ * "edge" to the roads from one intersection to another, taking
+ * precedence over "type".  Blank lines and lines starting with # are
+ * ignored.
+ *
+ */
+public final class TrafficProfiles {
+
+	/** Conventional extension of traffic profile files */
+	public static final String FILE_EXTENSION = ".traffic";
+
+	/** Length of the period the profiles repeat over, in hours */
+	public static final double DAY = 24;
+
+	private final FrozenMapGraph graph;
+
+	// breakpoints of profile p are hours[firstPoint[p]] .. hours[firstPoint[p+1] - 1]
+	private final int[] firstPoint;
+	private final float[] hours;
+	private final float[] factors;
+
+	// profile of every edge, -1 for none
+	private final int[] edgeProfile;
+
+	// smallest factor of any edge, for lower bounds
+	private final double minFactor;
+
+	// steepest fall of every profile, in factor per hour
+	private final double[] maxDecrease;
+
+	// the last free-flow times checkFifo() accepted
+	private volatile float[] checkedWeights;
+
+	private TrafficProfiles(FrozenMapGraph graph, int[] firstPoint, float[] hours, float[] factors,
+			int[] edgeProfile) {
+		this.graph = graph;
+		this.firstPoint = firstPoint;
+		this.hours = hours;
+		this.factors = factors;
+		this.edgeProfile = edgeProfile;
+		int count = firstPoint.length - 1;
+		maxDecrease = new double[count];
+		boolean[] used = new boolean[count];
+		for (int p : edgeProfile) {
+			if (p >= 0) {
+				used[p] = true;
+			}
+		}
+		// edges without a profile have factor 1
+		double min = 1;
+		for (int p = 0; p < count; p++) {
+			int first = firstPoint[p];
+			int last = firstPoint[p + 1] - 1;
+			for (int i = first; i <= last; i++) {
+				int j = i == last ? first : i + 1;
+				double span = i == last ? hours[first] + DAY - hours[last] : hours[j] - hours[i];
+				if (span > 0) {
+					maxDecrease[p] = Math.max(maxDecrease[p], (factors[i] - factors[j]) / span);
+				}
+				if (used[p]) {
+					min = Math.min(min, factors[i]);
+				}
+			}
+		}
+		minFactor = min;
+	}
+
+	/**
+	 * Read traffic profiles from a file
+	 * 
+	 * @param fileName
+	 *            The file, in the format described above
+	 * @param graph
+	 *            The graph whose edges the profiles are assigned to
+	 * @return The profiles
+	 * @throws IOException
+	 *             If the file cannot be read, or a line is malformed or
+	 *             names a profile, road type or road that does not exist
+	 */
+	public static TrafficProfiles load(String fileName, FrozenMapGraph graph) throws IOException {
+		HashMap<String, Integer> byName = new HashMap<String, Integer>();
+		HashMap<String, Integer> byShape = new HashMap<String, Integer>();
+		List<float[]> shapes = new ArrayList<float[]>();
+		int[] typeProfile = new int[RoadType.values().length];
+		Arrays.fill(typeProfile, -1);
+		int[] edgeProfile = new int[graph.numEdges];
+		Arrays.fill(edgeProfile, -1);
+		List<int[]> edgeAssignments = new ArrayList<int[]>();
+
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String where = fileName + ":" + lineNumber + ": ";
+				String[] tokens = line.split("\\s+");
+				try {
+					if (tokens[0].equals("profile") && tokens.length >= 3) {
+						float[] shape = parseShape(tokens, where);
+						String key = Arrays.toString(shape);
+						Integer id = byShape.get(key);
+						if (id == null) {
+							id = shapes.size();
+							shapes.add(shape);
+							byShape.put(key, id);
+						}
+						byName.put(tokens[1], id);
+					} else if (tokens[0].equals("type") && tokens.length == 3) {
+						typeProfile[RoadType.valueOf(tokens[1]).ordinal()] = profile(byName, tokens[2], where);
+					} else if (tokens[0].equals("edge") && tokens.length == 6) {
+						int from = graph.getVertexId(new GeographicPoint(Double.parseDouble(tokens[1]),
+								Double.parseDouble(tokens[2])));
+						int to = graph.getVertexId(new GeographicPoint(Double.parseDouble(tokens[3]),
+								Double.parseDouble(tokens[4])));
+						int p = profile(byName, tokens[5], where);
+						int found = 0;
+						if (from >= 0 && to >= 0) {
+							for (int e = graph.firstEdge[from]; e < graph.firstEdge[from + 1]; e++) {
+								if (graph.target[e] == to) {
+									edgeAssignments.add(new int[] { e, p });
+									found++;
+								}
+							}
+						}
+						if (found == 0) {
+							throw new IOException(where + "no such road");
+						}
+					} else {
+						throw new IOException(where + "cannot parse " + line);
+					}
+				} catch (IllegalArgumentException e) {
+					throw new IOException(where + e.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		for (int e = 0; e < graph.numEdges; e++) {
+			edgeProfile[e] = typeProfile[graph.getRoadClass(e).ordinal()];
+		}
+		for (int[] assignment : edgeAssignments) {
+			edgeProfile[assignment[0]] = assignment[1];
+		}
+
+		int[] firstPoint = new int[shapes.size() + 1];
+		for (int p = 0; p < shapes.size(); p++) {
+			firstPoint[p + 1] = firstPoint[p] + shapes.get(p).length / 2;
+		}
+		float[] hours = new float[firstPoint[shapes.size()]];
+		float[] factors = new float[hours.length];
+		for (int p = 0; p < shapes.size(); p++) {
+			float[] shape = shapes.get(p);
+			for (int i = 0; i < shape.length / 2; i++) {
+				hours[firstPoint[p] + i] = shape[2 * i];
+				factors[firstPoint[p] + i] = shape[2 * i + 1];
+			}
+		}
+		return new TrafficProfiles(graph, firstPoint, hours, factors, edgeProfile);
+	}
+
+	// hour=factor breakpoints as hour, factor, hour, factor, ...
+	private static float[] parseShape(String[] tokens, String where) throws IOException {
+		float[] shape = new float[2 * (tokens.length - 2)];
+		for (int i = 2; i < tokens.length; i++) {
+			int eq = tokens[i].indexOf('=');
+			if (eq < 0) {
+				throw new IOException(where + "expected hour=factor, found " + tokens[i]);
+			}
+			float hour = Float.parseFloat(tokens[i].substring(0, eq));
+			float factor = Float.parseFloat(tokens[i].substring(eq + 1));
+			int k = 2 * (i - 2);
+			if (!(hour >= 0 && hour < DAY) || (k > 0 && !(hour > shape[k - 2])) || !(factor > 0)
+					|| Float.isInfinite(factor)) {
+				throw new IOException(where + "invalid breakpoint " + tokens[i]);
+			}
+			shape[k] = hour;
+			shape[k + 1] = factor;
+		}
+		return shape;
+	}
+
+	private static int profile(HashMap<String, Integer> byName, String name, String where) throws IOException {
+		Integer id = byName.get(name);
+		if (id == null) {
+			throw new IOException(where + "unknown profile " + name);
+		}
+		return id;
+	}
+
+	/**
+	 * Return the factor on the free-flow travel time of an edge at a time
+	 * 
+	 * @param edge
+	 *            The edge id
+	 * @param time
+	 *            The time in hours since midnight of the first day; larger
+	 *            values wrap around to the following days
+	 * @return The factor
+	 */
+	public double factor(int edge, double time) {
+		int p = edgeProfile[edge];
+		if (p < 0) {
+			return 1;
+		}
+		int first = firstPoint[p];
+		int last = firstPoint[p + 1] - 1;
+		double t = time - Math.floor(time / DAY) * DAY;
+		if (first == last) {
+			return factors[first];
+		}
+		// the breakpoint at or before t, wrapping to the last one before the
+		// first breakpoint of the day
+		int i = Arrays.binarySearch(hours, first, last + 1, (float) t);
+		if (i < 0) {
+			i = -i - 2;
+		}
+		int from;
+		int to;
+		double span;
+		double offset;
+		if (i < first || i == last) {
+			from = last;
+			to = first;
+			span = hours[first] + DAY - hours[last];
+			offset = i < first ? t + DAY - hours[last] : t - hours[last];
+		} else {
+			from = i;
+			to = i + 1;
+			span = hours[to] - hours[from];
+			offset = t - hours[from];
+		}
+		return factors[from] + (factors[to] - factors[from]) * (offset / span);
+	}
+
+	/**
+	 * Return the travel time over an edge when entering it at a time
+	 * 
+	 * @param edge
+	 *            The edge id
+	 * @param freeFlow
+	 *            Its free-flow travel time, in hours
+	 * @param time
+	 *            The time of entering it, in hours
+	 * @return The travel time in hours
+	 */
+	public double travelTime(int edge, double freeFlow, double time) {
+		return freeFlow * factor(edge, time);
+	}
+
+	/** Return the smallest factor any edge ever has */
+	public double getMinFactor() {
+		return minFactor;
+	}
+
+	/** Return the number of distinct profiles in the pool */
+	public int size() {
+		return firstPoint.length - 1;
+	}
+
+	/** Return the graph these profiles were assigned on */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Check that every edge keeps the FIFO property with the given
+	 * free-flow times.  Edges with an infinite time, which the mode of
+	 * transport may not use, are never entered and are skipped.
+	 * 
+	 * @param weights
+	 *            The free-flow time of every edge, in hours
+	 * @throws IllegalArgumentException
+	 *             If some edge could be overtaken by leaving later
+	 */
+	public void checkFifo(float[] weights) {
+		if (weights == checkedWeights) {
+			return;
+		}
+		for (int e = 0; e < edgeProfile.length; e++) {
+			int p = edgeProfile[e];
+			if (p >= 0 && !Float.isInfinite(weights[e]) && weights[e] * maxDecrease[p] > 1) {
+				throw new IllegalArgumentException("Edge " + e + " takes " + weights[e]
+						+ " h, too long for its traffic profile to keep FIFO order");
+			}
+		}
+		checkedWeights = weights;
+	}
+}
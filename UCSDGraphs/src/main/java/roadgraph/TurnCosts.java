@@ -0,0 +1,212 @@
+/**
+ * 
+ */
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+import geography.GeographicPoint;
+
+/**
+ * What it costs to turn from one edge of a FrozenMapGraph onto the next,
+ * for turnAwareSearch.
+ *
+ * Only the exceptions are stored: a fixed penalty for every U-turn (an
+ * edge followed by one that leads straight back to where it came from),
+ * and a sorted table of explicit turns, each a pair of edge ids packed
+ * into a long with the cost of the turn next to it.  A forbidden turn
+ * costs infinity.  Every other turn is free.  Looking a turn up is a
+ * binary search, so the store takes 12 bytes per restriction and nothing
+ * per edge, and the search never builds the line graph it walks.
+ *
+ * Costs are in the unit of the edge costs they are combined with: hours
+ * for the travel times of a RoutingProfile, km for plain edge lengths.
+ *
+ * Restrictions are loaded from a text file, usually next to the map
+ * (map file name + ".turns"), with one turn per line:
+ *
+ * <pre>
+ * fromLat fromLon viaLat viaLon toLat toLon cost
+ * </pre>
+ *
+ * meaning that driving from the intersection at from to the one at via
+ * and on to the one at to costs cost extra, or is not allowed if cost is
+ * "no".  Blank lines and lines starting with # are ignored.
+ *
+ */
+public final class TurnCosts {
+
+	/** Conventional extension of turn restriction files */
+	public static final String FILE_EXTENSION = ".turns";
+
+	private final FrozenMapGraph graph;
+	private final float uTurnCost;
+
+	// sorted (incoming edge << 32 | outgoing edge), and the cost of each
+	private final long[] turns;
+	private final float[] costs;
+
+	/**
+	 * Create turn costs with only a U-turn penalty
+	 * 
+	 * @param graph
+	 *            The graph whose edges are turned between
+	 * @param uTurnCost
+	 *            The cost of a U-turn, infinite to forbid them
+	 */
+	public TurnCosts(FrozenMapGraph graph, double uTurnCost) {
+		this(graph, uTurnCost, new long[0], new float[0]);
+	}
+
+	private TurnCosts(FrozenMapGraph graph, double uTurnCost, long[] turns, float[] costs) {
+		if (!(uTurnCost >= 0)) {
+			throw new IllegalArgumentException("Invalid U-turn cost: " + uTurnCost);
+		}
+		this.graph = graph;
+		this.uTurnCost = (float) uTurnCost;
+		this.turns = turns;
+		this.costs = costs;
+	}
+
+	/**
+	 * Read turn restrictions from a file
+	 * 
+	 * @param fileName
+	 *            The file, in the format described above
+	 * @param graph
+	 *            The graph the turns are on
+	 * @param uTurnCost
+	 *            The cost of any U-turn the file does not mention
+	 * @return The turn costs
+	 * @throws IOException
+	 *             If the file cannot be read, or a line is malformed or names
+	 *             a turn between roads the graph does not have
+	 */
+	public static TurnCosts load(String fileName, FrozenMapGraph graph, double uTurnCost) throws IOException {
+		Builder builder = new Builder();
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] tokens = line.split("\\s+");
+				if (tokens.length != 7) {
+					throw new IOException(fileName + ":" + lineNumber + ": expected 7 fields");
+				}
+				try {
+					int from = vertex(graph, tokens, 0);
+					int via = vertex(graph, tokens, 2);
+					int to = vertex(graph, tokens, 4);
+					float cost = tokens[6].equals("no") ? Float.POSITIVE_INFINITY : Float.parseFloat(tokens[6]);
+					if (from < 0 || via < 0 || to < 0 || !(cost >= 0)) {
+						throw new IOException(fileName + ":" + lineNumber + ": no such turn");
+					}
+					if (builder.addTurns(graph, from, via, to, cost) == 0) {
+						throw new IOException(fileName + ":" + lineNumber + ": no such roads");
+					}
+				} catch (NumberFormatException e) {
+					throw new IOException(fileName + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return builder.build(graph, uTurnCost);
+	}
+
+	private static int vertex(FrozenMapGraph graph, String[] tokens, int i) {
+		return graph.getVertexId(new GeographicPoint(Double.parseDouble(tokens[i]), Double.parseDouble(tokens[i + 1])));
+	}
+
+	/**
+	 * Return the cost of turning from one edge onto the next
+	 * 
+	 * @param in
+	 *            The edge arriving at the intersection
+	 * @param out
+	 *            The edge leaving it
+	 * @return The cost, infinite if the turn is forbidden
+	 */
+	public double cost(int in, int out) {
+		if (turns.length > 0) {
+			int i = Arrays.binarySearch(turns, ((long) in << 32) | out);
+			if (i >= 0) {
+				return costs[i];
+			}
+		}
+		return graph.target[out] == graph.source[in] ? uTurnCost : 0;
+	}
+
+	/** Return the number of explicitly listed turns */
+	public int size() {
+		return turns.length;
+	}
+
+	/** Return the graph these turn costs were made for */
+	public FrozenMapGraph getGraph() {
+		return graph;
+	}
+
+	// Collects turns in any order, keeping the highest cost of duplicates
+	private static final class Builder {
+		private long[] turns = new long[16];
+		private float[] costs = new float[16];
+		private int size;
+
+		// Add every pair of edges from-via, via-to.  Returns how many.
+		int addTurns(FrozenMapGraph graph, int from, int via, int to, float cost) {
+			int added = 0;
+			for (int in = graph.firstEdge[from]; in < graph.firstEdge[from + 1]; in++) {
+				if (graph.target[in] != via) {
+					continue;
+				}
+				for (int out = graph.firstEdge[via]; out < graph.firstEdge[via + 1]; out++) {
+					if (graph.target[out] == to) {
+						add(((long) in << 32) | out, cost);
+						added++;
+					}
+				}
+			}
+			return added;
+		}
+
+		private void add(long turn, float cost) {
+			if (size == turns.length) {
+				turns = Arrays.copyOf(turns, size * 2);
+				costs = Arrays.copyOf(costs, size * 2);
+			}
+			turns[size] = turn;
+			costs[size] = cost;
+			size++;
+		}
+
+		TurnCosts build(FrozenMapGraph graph, double uTurnCost) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Long.compare(turns[a], turns[b]));
+			long[] sortedTurns = new long[size];
+			float[] sortedCosts = new float[size];
+			int n = 0;
+			for (int i : order) {
+				if (n > 0 && sortedTurns[n - 1] == turns[i]) {
+					sortedCosts[n - 1] = Math.max(sortedCosts[n - 1], costs[i]);
+				} else {
+					sortedTurns[n] = turns[i];
+					sortedCosts[n] = costs[i];
+					n++;
+				}
+			}
+			return new TurnCosts(graph, uTurnCost, Arrays.copyOf(sortedTurns, n), Arrays.copyOf(sortedCosts, n));
+		}
+	}
+}
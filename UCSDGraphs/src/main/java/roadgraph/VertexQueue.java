@@ -0,0 +1,42 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * A min priority queue of vertex ids, used by the shortest path searches.
+ *
+ * Implementations that track where each vertex sits in the queue lower
+ * its key in place.  The lazy implementation instead adds another entry,
+ * so callers must always be ready to poll a vertex they have already
+ * settled and skip it.
+ *
+ */
+public interface VertexQueue {
+
+	/** Return whether the queue holds no vertices */
+	boolean isEmpty();
+
+	/** Return the number of entries in the queue */
+	int size();
+
+	/**
+	 * Add v with the given key, or lower the key of v if it is already in
+	 * the queue with a larger one.
+	 *
+	 * @param v
+	 *            The vertex id, less than the capacity of the queue
+	 * @param key
+	 *            Its priority; smaller keys come out first
+	 */
+	void insertOrDecrease(int v, double key);
+
+	/** Return the smallest key in the queue */
+	double peekKey();
+
+	/** Remove the vertex with the smallest key and return it */
+	int poll();
+
+	/** Remove every entry, ready for the next search */
+	void clear();
+}
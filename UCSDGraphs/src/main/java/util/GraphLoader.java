@@ -7,6 +7,7 @@
 package util;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -17,13 +18,13 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import basicgraph.Graph;
 import geography.GeographicPoint;
 import geography.RoadSegment;
-import roadgraph.MapGraph;
 
 
 public class GraphLoader 
@@ -125,6 +126,10 @@ public class GraphLoader
 	 * This method will collapse the points so that only intersections 
 	 * are represented as nodes in the graph.
 	 * 
+	 * The result of finding the intersections and tracing the edges is
+	 * cached next to the map file (filename + ".mapbin") and reused for as
+	 * long as the map file does not change.
+	 * 
 	 * @param filename The file containing the road data, in the format 
 	 *   described.
 	 * @param map The graph to load the map into.  The graph is
@@ -133,23 +138,62 @@ public class GraphLoader
 	public static void loadRoadMap(String filename, roadgraph.MapGraph map,  
 			HashMap<GeographicPoint,HashSet<RoadSegment>> segments, 
 			Set<GeographicPoint> intersectionsToLoad)
+	{
+		loadRoadMap(filename, map, segments, intersectionsToLoad, true);
+	}
+
+	// loadRoadMap with or without the .mapbin cache
+	static void loadRoadMap(String filename, roadgraph.MapGraph map,  
+			HashMap<GeographicPoint,HashSet<RoadSegment>> segments, 
+			Set<GeographicPoint> intersectionsToLoad, boolean useCache)
+	{
+		RoadMapData data;
+		try {
+			data = useCache ? MapBinaryCache.load(filename) : readRoadMap(filename);
+		} catch (IOException e) {
+			System.err.println("Problem loading dictionary file: " + filename);
+			e.printStackTrace();
+			data = new RoadMapData();
+		}
+		data.addTo(map, segments, intersectionsToLoad);
+		
+		// build the search arrays and the spatial index now rather than on
+		// the first query
+		map.freeze();
+	}
+
+	// Parse a .map file, find the intersections and trace the edges
+	// between them.  Large files are read by ParallelMapReader when there
+	// is more than one core to read them on.  Either way an unreadable or
+	// malformed file is an IOException, never a partial result.
+	static RoadMapData readRoadMap(String filename) throws IOException
+	{
+		if (ForkJoinPool.getCommonPoolParallelism() > 1 
+				&& new File(filename).length() >= ParallelMapReader.MIN_PARALLEL_BYTES) {
+			return ParallelMapReader.read(filename, ForkJoinPool.commonPool());
+		}
+		return readRoadMapSequentially(filename);
+	}
+
+	// readRoadMap on the calling thread alone
+	static RoadMapData readRoadMapSequentially(String filename) throws IOException
 	{
 		Collection<GeographicPoint> nodes = new HashSet<GeographicPoint>();
         HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
-        		buildPointMapOneWay(filename);
+        		readPointMapOneWay(filename);
 		
         // Add the nodes to the graph
+		RoadMapData data = new RoadMapData();
+		HashMap<GeographicPoint,Integer> index = new HashMap<GeographicPoint,Integer>();
 		List<GeographicPoint> intersections = findIntersections(pointMap);
 		for (GeographicPoint pt : intersections) {
-			map.addVertex(pt);
-			if (intersectionsToLoad != null) {
-				intersectionsToLoad.add(pt);
-			}
+			index.put(pt, data.addVertex(pt));
 			nodes.add(pt);
 		}
 		
 		
-		addEdgesAndSegments(nodes, pointMap, map, segments);
+		addEdgesAndSegments(nodes, pointMap, data, index);
+		return data;
 	}
 
 	
@@ -320,12 +364,11 @@ public class GraphLoader
 
 	
 	// Once you have built the pointMap and added the Nodes, 
-	// add the edges and build the road segments if the segments
-	// map is not null.
+	// add the edges along with their road geometry.
 	private static void addEdgesAndSegments(Collection<GeographicPoint> nodes, 
 			HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
-			MapGraph map, 
-			HashMap<GeographicPoint,HashSet<RoadSegment>> segments)
+			RoadMapData data, 
+			HashMap<GeographicPoint,Integer> index)
 	{
 	
 		// Now we need to add the edges
@@ -343,27 +386,8 @@ public class GraphLoader
 						findPointsOnEdge(pointMap, info, nodes);
 				GeographicPoint end = pointsOnEdge.remove(pointsOnEdge.size()-1);
 				double length = getRoadLength(pt, end, pointsOnEdge);
-				map.addEdge(pt, end, info.roadName, info.roadType, length);
-
-				// If the segments variable is not null, then we 
-				// save the road geometry
-				if (segments != null) {
-					// Now create road Segments for each edge
-					HashSet<RoadSegment> segs = segments.get(pt);
-					if (segs == null) {
-						segs = new HashSet<RoadSegment>();
-						segments.put(pt,segs);
-					}
-					RoadSegment seg = new RoadSegment(pt, end, pointsOnEdge, 
-							info.roadName, info.roadType, length);
-					segs.add(seg);
-					segs = segments.get(end);
-					if (segs == null) {
-						segs = new HashSet<RoadSegment>();
-						segments.put(end,segs);
-					}
-					segs.add(seg);
-				}
+				data.addEdge(index.get(pt), index.get(end), info.roadName, info.roadType,
+						length, pointsOnEdge);
 			}
 		}
 	}
@@ -371,7 +395,7 @@ public class GraphLoader
 	
 	// Calculate the length of this road segment taking into account all of the 
 	// intermediate geographic points.
-	private static double getRoadLength(GeographicPoint start, GeographicPoint end,
+	static double getRoadLength(GeographicPoint start, GeographicPoint end,
 			List<GeographicPoint> path)
 	{
 		double dist = 0.0;
@@ -384,7 +408,7 @@ public class GraphLoader
 		return dist;
 	}
 	
-	private static List<GeographicPoint>
+	static List<GeographicPoint>
 	findPointsOnEdge(HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
 		RoadLineInfo info, Collection<GeographicPoint> nodes) 
 	{
@@ -456,62 +480,67 @@ public class GraphLoader
 		// match the roads out.
 		List<GeographicPoint> intersections = new LinkedList<GeographicPoint>();
 		for (GeographicPoint pt : pointMap.keySet()) {
-			List<LinkedList<RoadLineInfo>> roadsInAndOut = pointMap.get(pt);
-			LinkedList<RoadLineInfo> roadsOut = roadsInAndOut.get(0);
-			LinkedList<RoadLineInfo> roadsIn = roadsInAndOut.get(1);
-			
-			boolean isNode = true;
-			
-			if (roadsIn.size() == 1 && roadsOut.size() == 1) {
-				// If these are the reverse of each other, then this is
-				// and intersection (dead end)
-				if (!(roadsIn.get(0).point1.equals(roadsOut.get(0).point2) &&
-						roadsIn.get(0).point2.equals(roadsOut.get(0).point1))
-						&& roadsIn.get(0).roadName.equals(roadsOut.get(0).roadName)) {
-					isNode = false;
-				}
+			if (isIntersection(pointMap.get(pt))) {
+				intersections.add(pt);
 			}
-			if (roadsIn.size() == 2 && roadsOut.size() == 2) {
-				// If all the road segments have the same name, 
-				// And there are two pairs of reversed nodes, then 
-				// this is not an intersection because the roads pass
-				// through.
-			
-				String name = roadsIn.get(0).roadName;
-				boolean sameName = true;
-				for (RoadLineInfo info : roadsIn) {
-					if (!info.roadName.equals(name)) {
-						sameName = false;
-					}
+		}
+		return intersections;
+	}
+	
+	// Whether the point with these roads in and out is an intersection
+	static boolean isIntersection(List<LinkedList<RoadLineInfo>> roadsInAndOut)
+	{
+		LinkedList<RoadLineInfo> roadsOut = roadsInAndOut.get(0);
+		LinkedList<RoadLineInfo> roadsIn = roadsInAndOut.get(1);
+		
+		boolean isNode = true;
+		
+		if (roadsIn.size() == 1 && roadsOut.size() == 1) {
+			// If these are the reverse of each other, then this is
+			// and intersection (dead end)
+			if (!(roadsIn.get(0).point1.equals(roadsOut.get(0).point2) &&
+					roadsIn.get(0).point2.equals(roadsOut.get(0).point1))
+					&& roadsIn.get(0).roadName.equals(roadsOut.get(0).roadName)) {
+				isNode = false;
+			}
+		}
+		if (roadsIn.size() == 2 && roadsOut.size() == 2) {
+			// If all the road segments have the same name, 
+			// And there are two pairs of reversed nodes, then 
+			// this is not an intersection because the roads pass
+			// through.
+		
+			String name = roadsIn.get(0).roadName;
+			boolean sameName = true;
+			for (RoadLineInfo info : roadsIn) {
+				if (!info.roadName.equals(name)) {
+					sameName = false;
 				}
-				for (RoadLineInfo info : roadsOut) {
-					if (!info.roadName.equals(name)) {
-						sameName = false;
-					}
+			}
+			for (RoadLineInfo info : roadsOut) {
+				if (!info.roadName.equals(name)) {
+					sameName = false;
 				}
+			}
+			
+			RoadLineInfo in1 = roadsIn.get(0);
+			RoadLineInfo in2 = roadsIn.get(1);
+			RoadLineInfo out1 = roadsOut.get(0);
+			RoadLineInfo out2 = roadsOut.get(1);
+	
+			boolean passThrough = false;
+			if ((in1.isReverse(out1) && in2.isReverse(out2)) ||
+					(in1.isReverse(out2) && in2.isReverse(out1))) {
 				
-				RoadLineInfo in1 = roadsIn.get(0);
-				RoadLineInfo in2 = roadsIn.get(1);
-				RoadLineInfo out1 = roadsOut.get(0);
-				RoadLineInfo out2 = roadsOut.get(1);
-		
-				boolean passThrough = false;
-				if ((in1.isReverse(out1) && in2.isReverse(out2)) ||
-						(in1.isReverse(out2) && in2.isReverse(out1))) {
-					
-					passThrough = true;
-				} 
-				
-				if (sameName && passThrough) {
-					isNode = false;
-				} 
-
+				passThrough = true;
 			} 
-			if (isNode) {
-				intersections.add(pt);
-			}
-		}
-		return intersections;
+			
+			if (sameName && passThrough) {
+				isNode = false;
+			} 
+
+		} 
+		return isNode;
 	}
 		
 	// Build the map from points to lists of lists of lines.
@@ -519,32 +548,40 @@ public class GraphLoader
 	// are lists of length two where each entry in the list is a list.
 	// The first list stores the outgoing roads while the second 
 	// stores the outgoing roads.
-	private static HashMap<GeographicPoint, List<LinkedList<RoadLineInfo>>>
+	static HashMap<GeographicPoint, List<LinkedList<RoadLineInfo>>>
 	buildPointMapOneWay(String filename)
 	{
-		BufferedReader reader = null;
-        HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
-        		new HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>();
 		try {
-            String nextLine;
-            reader = new BufferedReader(new FileReader(filename));
-            // Read the lines out of the file and put them in a HashMap by points
-            while ((nextLine = reader.readLine()) != null) {
-            	RoadLineInfo line = splitInputString(nextLine);
-            	addToPointsMapOneWay(line, pointMap);
-            }
-            reader.close();
+			return readPointMapOneWay(filename);
         } catch (IOException e) {
             System.err.println("Problem loading dictionary file: " + filename);
             e.printStackTrace();
+            return new HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>();
+        }
+	}
+
+	// buildPointMapOneWay, passing on the error if the file cannot be read
+	private static HashMap<GeographicPoint, List<LinkedList<RoadLineInfo>>>
+	readPointMapOneWay(String filename) throws IOException
+	{
+        HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
+        		new HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>();
+        // Read the lines out of the file and put them in a HashMap by points.
+        // The tokenizer works on the mapped bytes, so no String is made
+        // per line.
+        MapFileTokenizer tokens = new MapFileTokenizer(MapFileTokenizer.map(filename));
+        while (tokens.next()) {
+        	GeographicPoint p1 = new GeographicPoint(tokens.lat1, tokens.lon1);
+        	GeographicPoint p2 = new GeographicPoint(tokens.lat2, tokens.lon2);
+        	RoadLineInfo line = new RoadLineInfo(p1, p2, tokens.roadName, tokens.roadType);
+        	addToPointsMapOneWay(line, pointMap);
         }
-		
 		return pointMap;
 	}
 
 
 	// Add the next line read from the file to the points map.
-	private static void 
+	static void 
 	addToPointsMapOneWay(RoadLineInfo line,
 						HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> map)
 	{
@@ -570,8 +607,9 @@ public class GraphLoader
 		
 	}
 	
-	// Split the input string into the line information
-	private static RoadLineInfo splitInputString(String input)
+	// Split the input string into the line information.  No longer used for
+	// loading; kept as the reference LoaderBenchmark compares against.
+	static RoadLineInfo splitInputString(String input)
 	{	
 		
 		ArrayList<String> tokens = new ArrayList<String>();
@@ -613,104 +651,4 @@ public class GraphLoader
 
 	}
 	
-}	
-	
-
-// A class to store information about the lines in the road files.
-class RoadLineInfo
-{
-	GeographicPoint point1;
-	GeographicPoint point2;
-	
-	String roadName;
-	String roadType;
-	
-	/** Create a new RoadLineInfo object to store information about the line 
-	 * read from the file
-	 * @param p1 One of the points
-	 * @param p2 The other point
-	 * @param roadName The name of the road
-	 * @param roadType The type of the road
-	 */
-	RoadLineInfo(GeographicPoint p1, GeographicPoint p2, String roadName, String roadType) 
-	{
-		point1 = p1;
-		point2 = p2;
-		this.roadName = roadName;
-		this.roadType = roadType;
-	}
-	
-	
-	/** Get the other point from this roadLineInfo */
-	public GeographicPoint getOtherPoint(GeographicPoint pt)
-	{
-		if (pt == null) throw new IllegalArgumentException();
-		if (pt.equals(point1)) {
-			return point2;
-		}
-		else if (pt.equals(point2)) {
-			return point1;
-		}
-		else throw new IllegalArgumentException();
-	}
-	
-	/** Two RoadLineInfo objects are considered equal if they have the same
-	 * two points and the same roadName and roadType.
-	 */
-	public boolean equals(Object o)
-	{
-		if (o == null || !(o instanceof RoadLineInfo))
-		{
-			return false;
-		}
-		RoadLineInfo info = (RoadLineInfo)o;
-		return info.point1.equals(this.point1) && info.point2.equals(this.point2)  &&
-				info.roadType.equals(this.roadType) && info.roadName.equals(this.roadName);
-				
-	}
-	
-	/** Calculate the hashCode based on the hashCodes of the two points
-	 * @return The hashcode for this object.
-	 */
-	public int hashCode()
-	{
-		return point1.hashCode() + point2.hashCode();
-		
-	}
-	
-	/** Returns whether these segments are part of the same road in terms of
-	 * road name and road type.
-	 * @param info The RoadLineInfo to compare against.
-	 * @return true if these represent the same road, false otherwise.
-	 */
-	public boolean sameRoad(RoadLineInfo info)
-	{
-		return info.roadName.equals(this.roadName) && info.roadType.equals(this.roadType);
-	}
-	
-	/** Return a copy of this LineInfo in the other direction */
-	public RoadLineInfo getReverseCopy()
-	{
-		return new RoadLineInfo(this.point2, this.point1, this.roadName, this.roadType);
-	}
-	
-	/** Return true if this road is the same segment as other, but in reverse
-	 *   Otherwise return false.
-	 */
-	public boolean isReverse(RoadLineInfo other)
-	{
-		return this.point1.equals(other.point2) && this.point2.equals(other.point1) &&
-				this.roadName.equals(other.roadName) && this.roadType.equals(other.roadType);
-	}
-	
-	/** Return the string representation of this LineInfo. */
-	public String toString()
-	{
-		return this.point1 + " " + this.point2 + " " + this.roadName + " " + this.roadType;
-		
-	}
-	
-	
-	
-	
 }
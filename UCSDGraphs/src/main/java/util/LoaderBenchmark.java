@@ -0,0 +1,196 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+import roadgraph.MapGraph;
+
+/**
+ * Compares the old line parser (BufferedReader, a regular expression and
+ * Double.parseDouble on substrings) with MapFileTokenizer on the maps listed
+ * in data/maps/mapfiles.list, and checks that both read the same lines.
+ * Then times a whole loadRoadMap from the text file against one from its
+ * .mapbin cache, and the sequential text reader against ParallelMapReader
+ * on a pool with one thread per core.  Run from the project directory:
+ *
+ * <pre>
+ * java util.LoaderBenchmark [passes over each map]
+ * </pre>
+ */
+public class LoaderBenchmark
+{
+	private static final int WARMUP_PASSES = 5;
+
+	public static void main(String[] args) throws IOException
+	{
+		int passes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		List<String> maps = new ArrayList<String>();
+		BufferedReader list = new BufferedReader(new FileReader("data/maps/mapfiles.list"));
+		String name;
+		while ((name = list.readLine()) != null) {
+			if (!name.trim().isEmpty()) {
+				maps.add(name.trim());
+			}
+		}
+		list.close();
+
+		System.out.println(String.format("%-22s %8s %14s %14s %8s %10s", "map", "lines",
+				"regex lines/s", "bytes lines/s", "speedup", "identical"));
+		for (String map : maps) {
+			String file = "data/maps/" + map;
+			List<RoadLineInfo> expected = new ArrayList<RoadLineInfo>();
+			List<RoadLineInfo> actual = new ArrayList<RoadLineInfo>();
+			readWithRegex(file, expected);
+			readWithTokenizer(file, actual);
+
+			for (int i = 0; i < WARMUP_PASSES; i++) {
+				readWithRegex(file, null);
+				readWithTokenizer(file, null);
+			}
+			long begin = System.nanoTime();
+			long lines = 0;
+			for (int i = 0; i < passes; i++) {
+				lines += readWithRegex(file, null);
+			}
+			double regexRate = lines / ((System.nanoTime() - begin) / 1e9);
+			begin = System.nanoTime();
+			lines = 0;
+			for (int i = 0; i < passes; i++) {
+				lines += readWithTokenizer(file, null);
+			}
+			double tokenizerRate = lines / ((System.nanoTime() - begin) / 1e9);
+
+			System.out.println(String.format("%-22s %8d %14.0f %14.0f %7.1fx %10s", map, expected.size(),
+					regexRate, tokenizerRate, tokenizerRate / regexRate, identical(expected, actual)));
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-22s %12s %12s %8s %10s", "map", "text ms", ".mapbin ms",
+				"speedup", "identical"));
+		for (String map : maps) {
+			String file = "data/maps/" + map;
+			// make sure the cache exists and is fresh
+			GraphLoader.loadRoadMap(file, new MapGraph());
+			for (int i = 0; i < WARMUP_PASSES; i++) {
+				load(file, false);
+				load(file, true);
+			}
+			long begin = System.nanoTime();
+			for (int i = 0; i < passes; i++) {
+				load(file, false);
+			}
+			double textMillis = (System.nanoTime() - begin) / 1e6 / passes;
+			begin = System.nanoTime();
+			for (int i = 0; i < passes; i++) {
+				load(file, true);
+			}
+			double cacheMillis = (System.nanoTime() - begin) / 1e6 / passes;
+
+			System.out.println(String.format("%-22s %12.2f %12.2f %7.1fx %10s", map, textMillis, cacheMillis,
+					textMillis / cacheMillis, load(file, false).equals(load(file, true))));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		System.out.println();
+		System.out.println(String.format("%-22s %12s %12s %8s %10s   (%d threads)", "map", "sequential ms",
+				"parallel ms", "speedup", "same", pool.getParallelism()));
+		for (String map : maps) {
+			String file = "data/maps/" + map;
+			for (int i = 0; i < WARMUP_PASSES; i++) {
+				GraphLoader.readRoadMapSequentially(file);
+				ParallelMapReader.read(file, pool);
+			}
+			long begin = System.nanoTime();
+			for (int i = 0; i < passes; i++) {
+				GraphLoader.readRoadMapSequentially(file);
+			}
+			double sequentialMillis = (System.nanoTime() - begin) / 1e6 / passes;
+			begin = System.nanoTime();
+			for (int i = 0; i < passes; i++) {
+				ParallelMapReader.read(file, pool);
+			}
+			double parallelMillis = (System.nanoTime() - begin) / 1e6 / passes;
+
+			System.out.println(String.format("%-22s %12.2f %12.2f %7.1fx %10s", map, sequentialMillis,
+					parallelMillis, sequentialMillis / parallelMillis,
+					describe(GraphLoader.readRoadMapSequentially(file)).equals(describe(ParallelMapReader.read(file, pool)))));
+		}
+		pool.shutdown();
+	}
+
+	// The vertices and edge count of the graph the data builds.  Vertices
+	// may be numbered differently, so they are compared as a set.
+	private static String describe(RoadMapData data)
+	{
+		MapGraph graph = new MapGraph();
+		data.addTo(graph, null, null);
+		return graph.getNumVertices() + " " + graph.getNumEdges() + " " 
+				+ new HashSet<GeographicPoint>(graph.getVertices());
+	}
+
+	// Load a map with its road segments, as the application does, and
+	// describe the result
+	private static String load(String file, boolean useCache)
+	{
+		MapGraph graph = new MapGraph();
+		HashMap<GeographicPoint,HashSet<RoadSegment>> segments = new HashMap<GeographicPoint,HashSet<RoadSegment>>();
+		HashSet<GeographicPoint> intersections = new HashSet<GeographicPoint>();
+		GraphLoader.loadRoadMap(file, graph, segments, intersections, useCache);
+		return graph.getNumVertices() + " " + graph.getNumEdges() + " " + graph.getVertices() + " "
+				+ segments.size() + " " + intersections;
+	}
+
+	// The loop buildPointMapOneWay used to run
+	private static int readWithRegex(String file, List<RoadLineInfo> out) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		int count = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			RoadLineInfo info = GraphLoader.splitInputString(line);
+			if (out != null) {
+				out.add(info);
+			}
+			count++;
+		}
+		reader.close();
+		return count;
+	}
+
+	private static int readWithTokenizer(String file, List<RoadLineInfo> out) throws IOException
+	{
+		MapFileTokenizer tokens = new MapFileTokenizer(MapFileTokenizer.map(file));
+		int count = 0;
+		while (tokens.next()) {
+			RoadLineInfo info = new RoadLineInfo(new GeographicPoint(tokens.lat1, tokens.lon1),
+					new GeographicPoint(tokens.lat2, tokens.lon2), tokens.roadName, tokens.roadType);
+			if (out != null) {
+				out.add(info);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	// Same points to the last bit, same names and types, same order
+	private static boolean identical(List<RoadLineInfo> expected, List<RoadLineInfo> actual)
+	{
+		if (expected.size() != actual.size()) {
+			return false;
+		}
+		for (int i = 0; i < expected.size(); i++) {
+			if (!expected.get(i).equals(actual.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,142 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The .mapbin cache: the result of parsing a .map file, tracing its
+ * intersections and edges, saved next to it in binary.
+ *
+ * A cache file starts with a magic number, the format version and the
+ * SHA-256 hash of the .map file it was built from.  It is only used while
+ * both still match, so editing the map or changing the format simply
+ * rebuilds it on the next load.
+ */
+final class MapBinaryCache
+{
+	/** Extension of the cache file, appended to the map file name */
+	static final String EXTENSION = ".mapbin";
+
+	private static final int MAGIC = 0x4d415042; // "MAPB"
+	private static final int VERSION = 1;
+
+	private MapBinaryCache()
+	{
+	}
+
+	/**
+	 * Read the map through its cache, rebuilding the cache if it is missing
+	 * or stale.  Problems with the cache are reported and otherwise ignored.
+	 * The cache is only written once the map has been read without error.
+	 * @param filename The .map file
+	 * @return The contents of the map
+	 * @throws IOException If the map file cannot be read or parsed
+	 */
+	static RoadMapData load(String filename) throws IOException
+	{
+		byte[] hash;
+		try {
+			hash = contentHash(filename);
+		}
+		catch (IOException e) {
+			// let the text loader report the missing file
+			return GraphLoader.readRoadMap(filename);
+		}
+
+		File cache = new File(filename + EXTENSION);
+		if (cache.exists()) {
+			try {
+				RoadMapData data = read(cache, hash);
+				if (data != null) {
+					return data;
+				}
+			}
+			catch (IOException e) {
+				System.err.println("Problem loading graph cache: " + cache + " (" + e.getMessage() + ")");
+			}
+		}
+
+		RoadMapData data = GraphLoader.readRoadMap(filename);
+		try {
+			write(cache, hash, data);
+		}
+		catch (IOException e) {
+			System.err.println("Problem saving graph cache: " + cache + " (" + e.getMessage() + ")");
+		}
+		return data;
+	}
+
+	// Return the cached data, or null if it belongs to another version of
+	// the map or of the format
+	private static RoadMapData read(File cache, byte[] hash) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			byte[] stored = new byte[hash.length];
+			in.readFully(stored);
+			if (!Arrays.equals(stored, hash)) {
+				return null;
+			}
+			return RoadMapData.read(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	// Write to a temporary file first, so that a concurrent load never
+	// sees half a cache
+	private static void write(File cache, byte[] hash, RoadMapData data) throws IOException
+	{
+		File temp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.write(hash);
+				data.write(out);
+			}
+			finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Return the SHA-256 hash of a file's contents.
+	 * @param filename The file
+	 * @return The hash
+	 * @throws IOException If the file cannot be read
+	 */
+	static byte[] contentHash(String filename) throws IOException
+	{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		digest.update(MapFileTokenizer.map(filename));
+		return digest.digest();
+	}
+}
@@ -0,0 +1,330 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a .map file straight from its bytes.
+ *
+ * Each line holds
+ * <pre>
+ * lat1 lon1 lat2 lon2 "road name" roadType
+ * </pre>
+ * Tokens are split the way GraphLoader's regular expression
+ * <code>[^\s"']+|"([^"]*)"</code> splits them: runs of characters other than
+ * white space and quotes, or anything between a pair of double quotes.
+ *
+ * The coordinates are parsed from the bytes without going through a
+ * String.  Plain decimals whose digits fit in 53 bits (which is what
+ * every map file holds) are converted as one exact integer divided by one
+ * exact power of ten, which rounds exactly like Double.parseDouble.  Anything
+ * else falls back to Double.parseDouble.  Road names and types repeat on
+ * many lines, so each distinct one is decoded once and then shared.
+ *
+ * Usage:
+ * <pre>
+ * MapFileTokenizer tokens = new MapFileTokenizer(MapFileTokenizer.map(fileName));
+ * while (tokens.next()) {
+ *     ... tokens.lat1, tokens.lon1, ..., tokens.roadType
+ * }
+ * </pre>
+ */
+final class MapFileTokenizer
+{
+	// exact powers of ten as doubles
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	// largest integer every smaller one of which a double holds exactly
+	private static final long MAX_EXACT = 1L << 53;
+
+	private final ByteBuffer buffer;
+	private final int end;
+	private int pos;
+	private int lineNumber;
+
+	// the current token, without quotes
+	private int tokenStart;
+	private int tokenEnd;
+
+	private final StringTable strings = new StringTable();
+
+	/** The fields of the current line */
+	double lat1;
+	double lon1;
+	double lat2;
+	double lon2;
+	String roadName;
+	String roadType;
+
+	/**
+	 * Tokenize the bytes from the buffer's position to its limit.
+	 * @param buffer The file contents
+	 */
+	MapFileTokenizer(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		this.pos = buffer.position();
+		this.end = buffer.limit();
+	}
+
+	/**
+	 * Map a whole file read-only into memory.
+	 * @param fileName The file to map
+	 * @return The contents of the file
+	 * @throws IOException If the file cannot be read
+	 */
+	static ByteBuffer map(String fileName) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(fileName + " is too large to map");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/** Return the number of the current line, counting from 1 */
+	int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	/**
+	 * Move to the next line that has any tokens on it.
+	 * @return false at the end of the input
+	 * @throws IOException If the line does not have four coordinates, a road
+	 *   name and a road type
+	 */
+	boolean next() throws IOException
+	{
+		while (pos < end) {
+			lineNumber++;
+			if (!nextToken()) {
+				pos++; // blank line
+				continue;
+			}
+			lat1 = number();
+			lon1 = nextNumber();
+			lat2 = nextNumber();
+			lon2 = nextNumber();
+			roadName = nextString();
+			roadType = nextString();
+			// ignore anything else on the line, like the regular expression did
+			while (pos < end && buffer.get(pos) != '\n') {
+				pos++;
+			}
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private double nextNumber() throws IOException
+	{
+		if (!nextToken()) {
+			throw malformed();
+		}
+		return number();
+	}
+
+	private String nextString() throws IOException
+	{
+		if (!nextToken()) {
+			throw malformed();
+		}
+		return strings.get(buffer, tokenStart, tokenEnd);
+	}
+
+	private IOException malformed()
+	{
+		return new IOException("Line " + lineNumber + " needs four coordinates, a road name and a road type");
+	}
+
+	// Find the next token on the current line.  Returns false, positioned on
+	// the newline (or the end), if there is none.
+	private boolean nextToken()
+	{
+		while (pos < end) {
+			byte b = buffer.get(pos);
+			if (b == '\n') {
+				return false;
+			}
+			if (b == '"') {
+				int close = pos + 1;
+				while (close < end && buffer.get(close) != '"' && buffer.get(close) != '\n') {
+					close++;
+				}
+				if (close < end && buffer.get(close) == '"') {
+					tokenStart = pos + 1;
+					tokenEnd = close;
+					pos = close + 1;
+					return true;
+				}
+				// an unmatched quote is skipped
+				pos++;
+			}
+			else if (isSeparator(b)) {
+				pos++;
+			}
+			else {
+				tokenStart = pos;
+				while (pos < end && !isSeparator(buffer.get(pos)) && buffer.get(pos) != '"') {
+					pos++;
+				}
+				tokenEnd = pos;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// White space as \s matches it, and the single quote
+	private static boolean isSeparator(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B || b == '\'';
+	}
+
+	// Parse the current token as a double
+	private double number() throws IOException
+	{
+		int i = tokenStart;
+		boolean negative = false;
+		if (i < tokenEnd && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int scale = 0;
+		int digits = 0;
+		boolean point = false;
+		for (; i < tokenEnd; i++) {
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (point) {
+					scale++;
+				}
+				if (mantissa >= MAX_EXACT) {
+					return slowNumber();
+				}
+			}
+			else if (b == '.' && !point) {
+				point = true;
+			}
+			else {
+				return slowNumber();
+			}
+		}
+		if (digits == 0 || scale >= POWERS_OF_TEN.length) {
+			return slowNumber();
+		}
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	// Exponents, very long numbers and anything unusual
+	private double slowNumber() throws IOException
+	{
+		byte[] bytes = new byte[tokenEnd - tokenStart];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(tokenStart + i);
+		}
+		String token = new String(bytes, StandardCharsets.UTF_8);
+		try {
+			return Double.parseDouble(token);
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Line " + lineNumber + ": " + token + " is not a number");
+		}
+	}
+
+	// Open addressing table from byte ranges to the Strings they decode to
+	private static final class StringTable
+	{
+		private byte[][] keys = new byte[64][];
+		private String[] values = new String[64];
+		private int size;
+
+		String get(ByteBuffer buffer, int from, int to)
+		{
+			int hash = 0;
+			for (int i = from; i < to; i++) {
+				hash = 31 * hash + buffer.get(i);
+			}
+			int mask = keys.length - 1;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			byte[] key;
+			while ((key = keys[slot]) != null) {
+				if (matches(key, buffer, from, to)) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			key = new byte[to - from];
+			for (int i = 0; i < key.length; i++) {
+				key[i] = buffer.get(from + i);
+			}
+			String value = new String(key, StandardCharsets.UTF_8);
+			keys[slot] = key;
+			values[slot] = value;
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+			return value;
+		}
+
+		private static boolean matches(byte[] key, ByteBuffer buffer, int from, int to)
+		{
+			if (key.length != to - from) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (key[i] != buffer.get(from + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void grow()
+		{
+			byte[][] oldKeys = keys;
+			String[] oldValues = values;
+			keys = new byte[oldKeys.length * 2][];
+			values = new String[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				byte[] key = oldKeys[i];
+				if (key == null) {
+					continue;
+				}
+				int hash = 0;
+				for (byte b : key) {
+					hash = 31 * hash + b;
+				}
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
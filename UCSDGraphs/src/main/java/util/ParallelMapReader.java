@@ -0,0 +1,247 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import geography.GeographicPoint;
+
+/**
+ * Reads a .map file the way GraphLoader.readRoadMap does, in stages that
+ * each run as parallel tasks on a fork/join pool:
+ *
+ * <ol>
+ * <li>The mapped file is cut into byte ranges that end on line boundaries,
+ * and each range is tokenized into a point map of its own.</li>
+ * <li>The partial point maps are merged in file order, so every point's
+ * lists of roads in and out are in the same order as when the file is
+ * read from start to end.</li>
+ * <li>The points are tested for being intersections in parallel.</li>
+ * <li>The edges leaving each intersection are traced in parallel and then
+ * added to the RoadMapData in intersection order.</li>
+ * </ol>
+ *
+ * The result has the same intersections and edges as the sequential
+ * reader; only the order the intersections are numbered in can differ,
+ * because it follows the iteration order of the merged point map.
+ */
+final class ParallelMapReader
+{
+	/** Files shorter than this are not worth splitting */
+	static final long MIN_PARALLEL_BYTES = 1 << 20;
+
+	// Work is cut into this many pieces per thread, so that a slow piece
+	// does not hold up the whole stage
+	private static final int PIECES_PER_THREAD = 4;
+
+	private ParallelMapReader()
+	{
+	}
+
+	/**
+	 * Parse a .map file, find the intersections and trace the edges between
+	 * them.
+	 * @param filename The map file
+	 * @param pool The pool to run the stages on
+	 * @return The intersections and edges
+	 * @throws IOException If the file cannot be read or has a malformed line
+	 */
+	static RoadMapData read(String filename, ForkJoinPool pool) throws IOException
+	{
+		int pieces = pool.getParallelism() * PIECES_PER_THREAD;
+		HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap =
+				buildPointMap(MapFileTokenizer.map(filename), pieces, pool);
+		List<GeographicPoint> intersections = findIntersections(pointMap, pieces, pool);
+		return traceEdges(intersections, pointMap, pieces, pool);
+	}
+
+	// Stages 1 and 2: tokenize byte ranges into partial point maps, then
+	// merge them
+	static HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>
+	buildPointMap(ByteBuffer bytes, int pieces, ForkJoinPool pool) throws IOException
+	{
+		int[] bounds = lineBounds(bytes, pieces);
+		List<Callable<HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>>> tasks =
+				new ArrayList<Callable<HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>>>();
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			ByteBuffer range = bytes.duplicate();
+			range.limit(bounds[i + 1]).position(bounds[i]);
+			tasks.add(() -> {
+				HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> partial =
+						new HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>();
+				MapFileTokenizer tokens = new MapFileTokenizer(range);
+				while (tokens.next()) {
+					GeographicPoint p1 = new GeographicPoint(tokens.lat1, tokens.lon1);
+					GeographicPoint p2 = new GeographicPoint(tokens.lat2, tokens.lon2);
+					GraphLoader.addToPointsMapOneWay(
+							new RoadLineInfo(p1, p2, tokens.roadName, tokens.roadType), partial);
+				}
+				return partial;
+			});
+		}
+		List<HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>> partials = invokeAll(pool, tasks);
+
+		// merge into the first map, appending each later range's roads
+		HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = partials.get(0);
+		for (int i = 1; i < partials.size(); i++) {
+			for (Map.Entry<GeographicPoint,List<LinkedList<RoadLineInfo>>> entry : partials.get(i).entrySet()) {
+				List<LinkedList<RoadLineInfo>> inAndOut = pointMap.putIfAbsent(entry.getKey(), entry.getValue());
+				if (inAndOut != null) {
+					inAndOut.get(0).addAll(entry.getValue().get(0));
+					inAndOut.get(1).addAll(entry.getValue().get(1));
+				}
+			}
+		}
+		return pointMap;
+	}
+
+	// Split [position, limit) of the buffer into at most pieces ranges of
+	// about equal size, each ending just after a line break (or at the
+	// end).  Range i is [bounds[i], bounds[i+1]).
+	static int[] lineBounds(ByteBuffer bytes, int pieces)
+	{
+		int start = bytes.position();
+		int end = bytes.limit();
+		int[] bounds = new int[pieces + 1];
+		int count = 0;
+		bounds[count++] = start;
+		for (int i = 1; i < pieces; i++) {
+			int cut = (int) (start + (long) (end - start) * i / pieces);
+			cut = Math.max(cut, bounds[count - 1]);
+			while (cut < end && bytes.get(cut) != '\n') {
+				cut++;
+			}
+			if (cut < end) {
+				cut++;
+			}
+			if (cut > bounds[count - 1] && cut < end) {
+				bounds[count++] = cut;
+			}
+		}
+		bounds[count++] = end;
+		int[] trimmed = new int[count];
+		System.arraycopy(bounds, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	// Stage 3: test the points for being intersections, each piece of
+	// the key set on its own
+	static List<GeographicPoint>
+	findIntersections(HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
+			int pieces, ForkJoinPool pool) throws IOException
+	{
+		GeographicPoint[] points = pointMap.keySet().toArray(new GeographicPoint[pointMap.size()]);
+		boolean[] isNode = new boolean[points.length];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < pieces; i++) {
+			int from = (int) ((long) points.length * i / pieces);
+			int to = (int) ((long) points.length * (i + 1) / pieces);
+			tasks.add(() -> {
+				for (int p = from; p < to; p++) {
+					isNode[p] = GraphLoader.isIntersection(pointMap.get(points[p]));
+				}
+				return null;
+			});
+		}
+		invokeAll(pool, tasks);
+
+		List<GeographicPoint> intersections = new ArrayList<GeographicPoint>();
+		for (int p = 0; p < points.length; p++) {
+			if (isNode[p]) {
+				intersections.add(points[p]);
+			}
+		}
+		return intersections;
+	}
+
+	// Stage 4: trace the edges out of every intersection in parallel, then
+	// add vertices and edges in intersection order
+	static RoadMapData traceEdges(List<GeographicPoint> intersections,
+			HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
+			int pieces, ForkJoinPool pool) throws IOException
+	{
+		HashSet<GeographicPoint> nodes = new HashSet<GeographicPoint>(intersections);
+		TracedEdge[][] traced = new TracedEdge[intersections.size()][];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < pieces; i++) {
+			int from = (int) ((long) traced.length * i / pieces);
+			int to = (int) ((long) traced.length * (i + 1) / pieces);
+			tasks.add(() -> {
+				for (int v = from; v < to; v++) {
+					GeographicPoint pt = intersections.get(v);
+					LinkedList<RoadLineInfo> outgoing = pointMap.get(pt).get(0);
+					TracedEdge[] edges = new TracedEdge[outgoing.size()];
+					int e = 0;
+					for (RoadLineInfo info : outgoing) {
+						List<GeographicPoint> pointsOnEdge = GraphLoader.findPointsOnEdge(pointMap, info, nodes);
+						GeographicPoint end = pointsOnEdge.remove(pointsOnEdge.size() - 1);
+						edges[e++] = new TracedEdge(info, end, pointsOnEdge,
+								GraphLoader.getRoadLength(pt, end, pointsOnEdge));
+					}
+					traced[v] = edges;
+				}
+				return null;
+			});
+		}
+		invokeAll(pool, tasks);
+
+		RoadMapData data = new RoadMapData();
+		HashMap<GeographicPoint,Integer> index = new HashMap<GeographicPoint,Integer>();
+		for (GeographicPoint pt : intersections) {
+			index.put(pt, data.addVertex(pt));
+		}
+		for (int v = 0; v < traced.length; v++) {
+			for (TracedEdge edge : traced[v]) {
+				data.addEdge(v, index.get(edge.end), edge.info.roadName, edge.info.roadType,
+						edge.length, edge.geometry);
+			}
+		}
+		return data;
+	}
+
+	// Run the tasks on the pool and return their results in task order
+	private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws IOException
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading map", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		return results;
+	}
+
+	// An edge traced from an intersection, before it is numbered
+	private static final class TracedEdge
+	{
+		final RoadLineInfo info;
+		final GeographicPoint end;
+		final List<GeographicPoint> geometry;
+		final double length;
+
+		TracedEdge(RoadLineInfo info, GeographicPoint end, List<GeographicPoint> geometry, double length)
+		{
+			this.info = info;
+			this.end = end;
+			this.geometry = geometry;
+			this.length = length;
+		}
+	}
+}
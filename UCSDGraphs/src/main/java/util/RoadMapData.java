@@ -0,0 +1,267 @@
+package util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+import roadgraph.MapGraph;
+
+/**
+ * Everything loadRoadMap extracts from a .map file, in flat arrays: the
+ * intersections, and for every edge its ends, road name and type, length
+ * and the intermediate points of its geometry.
+ *
+ * The order of vertices and edges is the order they are added to the
+ * MapGraph in, so a graph rebuilt from this data (for example from the
+ * .mapbin cache) is identical to one loaded from the text file.
+ */
+final class RoadMapData
+{
+	private int vertexCount;
+	private double[] vertexLat = new double[16];
+	private double[] vertexLon = new double[16];
+
+	private int edgeCount;
+	private int[] edgeFrom = new int[16];
+	private int[] edgeTo = new int[16];
+	private int[] edgeName = new int[16];
+	private int[] edgeType = new int[16];
+	private double[] edgeLength = new double[16];
+
+	// geometry of edge e: points firstPoint[e] .. firstPoint[e+1] - 1
+	private int[] firstPoint = new int[17];
+	private int pointCount;
+	private double[] pointLat = new double[16];
+	private double[] pointLon = new double[16];
+
+	// road names and types
+	private final List<String> strings = new ArrayList<String>();
+	private final HashMap<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+	/** Return the number of intersections */
+	int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	/** Return the number of edges */
+	int getEdgeCount()
+	{
+		return edgeCount;
+	}
+
+	/**
+	 * Add an intersection.
+	 * @return Its index
+	 */
+	int addVertex(GeographicPoint pt)
+	{
+		if (vertexCount == vertexLat.length) {
+			vertexLat = Arrays.copyOf(vertexLat, vertexCount * 2);
+			vertexLon = Arrays.copyOf(vertexLon, vertexCount * 2);
+		}
+		vertexLat[vertexCount] = pt.getX();
+		vertexLon[vertexCount] = pt.getY();
+		return vertexCount++;
+	}
+
+	/**
+	 * Add an edge between two intersections added before.
+	 * @param from The index of the start intersection
+	 * @param to The index of the end intersection
+	 * @param roadName The name of the road
+	 * @param roadType The type of the road
+	 * @param length The length in km
+	 * @param geometry The points between the two ends
+	 */
+	void addEdge(int from, int to, String roadName, String roadType, double length,
+			List<GeographicPoint> geometry)
+	{
+		if (edgeCount == edgeFrom.length) {
+			int capacity = edgeCount * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+			edgeTo = Arrays.copyOf(edgeTo, capacity);
+			edgeName = Arrays.copyOf(edgeName, capacity);
+			edgeType = Arrays.copyOf(edgeType, capacity);
+			edgeLength = Arrays.copyOf(edgeLength, capacity);
+			firstPoint = Arrays.copyOf(firstPoint, capacity + 1);
+		}
+		edgeFrom[edgeCount] = from;
+		edgeTo[edgeCount] = to;
+		edgeName[edgeCount] = intern(roadName);
+		edgeType[edgeCount] = intern(roadType);
+		edgeLength[edgeCount] = length;
+		for (GeographicPoint pt : geometry) {
+			if (pointCount == pointLat.length) {
+				pointLat = Arrays.copyOf(pointLat, pointCount * 2);
+				pointLon = Arrays.copyOf(pointLon, pointCount * 2);
+			}
+			pointLat[pointCount] = pt.getX();
+			pointLon[pointCount] = pt.getY();
+			pointCount++;
+		}
+		edgeCount++;
+		firstPoint[edgeCount] = pointCount;
+	}
+
+	private int intern(String s)
+	{
+		Integer index = stringIndex.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.add(s);
+			stringIndex.put(s, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Add the intersections and edges to a graph, the way loadRoadMap always
+	 * has.
+	 * @param map The graph
+	 * @param segments If not null, receives the RoadSegments by end point
+	 * @param intersectionsToLoad If not null, receives the intersections
+	 */
+	void addTo(MapGraph map, HashMap<GeographicPoint,HashSet<RoadSegment>> segments,
+			Set<GeographicPoint> intersectionsToLoad)
+	{
+		GeographicPoint[] points = new GeographicPoint[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			points[v] = new GeographicPoint(vertexLat[v], vertexLon[v]);
+			map.addVertex(points[v]);
+			if (intersectionsToLoad != null) {
+				intersectionsToLoad.add(points[v]);
+			}
+		}
+		for (int e = 0; e < edgeCount; e++) {
+			GeographicPoint pt = points[edgeFrom[e]];
+			GeographicPoint end = points[edgeTo[e]];
+			String roadName = strings.get(edgeName[e]);
+			String roadType = strings.get(edgeType[e]);
+			map.addEdge(pt, end, roadName, roadType, edgeLength[e]);
+
+			// If the segments variable is not null, then we 
+			// save the road geometry
+			if (segments != null) {
+				List<GeographicPoint> pointsOnEdge = new ArrayList<GeographicPoint>();
+				for (int i = firstPoint[e]; i < firstPoint[e + 1]; i++) {
+					pointsOnEdge.add(new GeographicPoint(pointLat[i], pointLon[i]));
+				}
+				RoadSegment seg = new RoadSegment(pt, end, pointsOnEdge, 
+						roadName, roadType, edgeLength[e]);
+				HashSet<RoadSegment> segs = segments.get(pt);
+				if (segs == null) {
+					segs = new HashSet<RoadSegment>();
+					segments.put(pt,segs);
+				}
+				segs.add(seg);
+				segs = segments.get(end);
+				if (segs == null) {
+					segs = new HashSet<RoadSegment>();
+					segments.put(end,segs);
+				}
+				segs.add(seg);
+			}
+		}
+	}
+
+	/**
+	 * Write the data; read() reads it back.
+	 * @param out The stream to write to
+	 * @throws IOException If writing fails
+	 */
+	void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+		out.writeInt(vertexCount);
+		for (int v = 0; v < vertexCount; v++) {
+			out.writeDouble(vertexLat[v]);
+			out.writeDouble(vertexLon[v]);
+		}
+		out.writeInt(edgeCount);
+		out.writeInt(pointCount);
+		for (int e = 0; e < edgeCount; e++) {
+			out.writeInt(edgeFrom[e]);
+			out.writeInt(edgeTo[e]);
+			out.writeInt(edgeName[e]);
+			out.writeInt(edgeType[e]);
+			out.writeDouble(edgeLength[e]);
+			out.writeInt(firstPoint[e + 1] - firstPoint[e]);
+			for (int i = firstPoint[e]; i < firstPoint[e + 1]; i++) {
+				out.writeDouble(pointLat[i]);
+				out.writeDouble(pointLon[i]);
+			}
+		}
+	}
+
+	/**
+	 * Read data written by write().
+	 * @param in The stream to read from
+	 * @return The data
+	 * @throws IOException If reading fails or the data is inconsistent
+	 */
+	static RoadMapData read(DataInputStream in) throws IOException
+	{
+		RoadMapData data = new RoadMapData();
+		int stringCount = in.readInt();
+		for (int i = 0; i < stringCount; i++) {
+			data.intern(in.readUTF());
+		}
+		int vertices = in.readInt();
+		data.vertexLat = new double[Math.max(vertices, 1)];
+		data.vertexLon = new double[Math.max(vertices, 1)];
+		for (int v = 0; v < vertices; v++) {
+			data.vertexLat[v] = in.readDouble();
+			data.vertexLon[v] = in.readDouble();
+		}
+		data.vertexCount = vertices;
+		int edges = in.readInt();
+		int points = in.readInt();
+		data.edgeFrom = new int[Math.max(edges, 1)];
+		data.edgeTo = new int[data.edgeFrom.length];
+		data.edgeName = new int[data.edgeFrom.length];
+		data.edgeType = new int[data.edgeFrom.length];
+		data.edgeLength = new double[data.edgeFrom.length];
+		data.firstPoint = new int[data.edgeFrom.length + 1];
+		data.pointLat = new double[Math.max(points, 1)];
+		data.pointLon = new double[data.pointLat.length];
+		for (int e = 0; e < edges; e++) {
+			data.edgeFrom[e] = checkIndex(in.readInt(), vertices);
+			data.edgeTo[e] = checkIndex(in.readInt(), vertices);
+			data.edgeName[e] = checkIndex(in.readInt(), stringCount);
+			data.edgeType[e] = checkIndex(in.readInt(), stringCount);
+			data.edgeLength[e] = in.readDouble();
+			int count = in.readInt();
+			if (count < 0 || data.pointCount + count > points) {
+				throw new IOException("Corrupt edge geometry");
+			}
+			for (int i = 0; i < count; i++) {
+				data.pointLat[data.pointCount] = in.readDouble();
+				data.pointLon[data.pointCount] = in.readDouble();
+				data.pointCount++;
+			}
+			data.firstPoint[e + 1] = data.pointCount;
+		}
+		data.edgeCount = edges;
+		return data;
+	}
+
+	private static int checkIndex(int index, int size) throws IOException
+	{
+		if (index < 0 || index >= size) {
+			throw new IOException("Index " + index + " out of range");
+		}
+		return index;
+	}
+}